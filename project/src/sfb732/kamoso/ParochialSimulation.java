@@ -1,11 +1,7 @@
 package sfb732.kamoso;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -13,8 +9,7 @@ import org.apache.logging.log4j.Logger;
 import sfb732.kamoso.conf.Configuration;
 import sfb732.kamoso.net.EpochStatistics;
 import sfb732.kamoso.net.Network;
-import sfb732.kamoso.pop.Agent;
-import sfb732.kamoso.pop.AgentStatisticsRaw;
+import sfb732.kamoso.pop.AgentDumpWriter;
 import sfb732.kamoso.pop.Interaction;
 
 
@@ -48,10 +43,12 @@ public class ParochialSimulation {
 
 		EpochStatistics epochStats = null;
 		Interaction interaction = null;
+		AgentDumpWriter dumper = null;
 
 		try {
 			epochStats = new EpochStatistics(conf, new File(outDir, String.format("%s%s", pfx, Configuration.FILE_SUFFIX_EPOCHS)));
-			interaction = new Interaction(conf.getInteractionType(), pop);
+			interaction = new Interaction(conf, pop);
+			dumper = new AgentDumpWriter(conf, outDir, pfx);
 
 			int wait    = 0;
 			int maxWait = conf.getSimulationMaxWait();
@@ -62,9 +59,9 @@ public class ParochialSimulation {
 			boolean doDump = dumpAInterval > 0 || dumpLInterval > 0;
 
 			if( conf.getOutputAgentDumpFirst() ){
-				dumpAgentStats(conf, outDir, pfx, epoch, pop, conf.getOutputLexiconDumpFirst());
+				dumper.dump(epoch, pop, conf.getOutputLexiconDumpFirst());
 			} else if (conf.getOutputLexiconDumpFirst()) {
-				dumpAgentStats(conf, outDir, pfx, epoch, pop, true);
+				dumper.dump(epoch, pop, true);
 			}
 
 			boolean dumpLastA = conf.getOutputAgentDumpLast();
@@ -87,7 +84,7 @@ public class ParochialSimulation {
 					wait++;
 					if(wait==1) {
 						if(doDump){
-							dumpAgentStats(conf, outDir, pfx, epoch, pop, true);
+							dumper.dump(epoch, pop, true);
 						}
 					}
 					else if(wait==maxWait){
@@ -100,22 +97,22 @@ public class ParochialSimulation {
 
 				if(dumpA==0) {
 					if(dumpL==0){
-						dumpAgentStats(conf, outDir, pfx, epoch, pop, true);
+						dumper.dump(epoch, pop, true);
 						dumpL = dumpLInterval;
 					} else {
-						dumpAgentStats(conf, outDir, pfx, epoch, pop, false);
+						dumper.dump(epoch, pop, false);
 					}
 					dumpA = dumpAInterval;
 				} else if(dumpL==0) {
-					dumpAgentStats(conf, outDir, pfx, epoch, pop, true);
+					dumper.dump(epoch, pop, true);
 					dumpL = dumpLInterval;
 				}
 
 				if(epoch==lastDump) {
 					if(dumpLastA) {
-						dumpAgentStats(conf, outDir, pfx, epoch, pop, dumpLastL);
+						dumper.dump(epoch, pop, dumpLastL);
 					} else if(dumpLastL) {
-						dumpAgentStats(conf, outDir, pfx, epoch, pop, true);
+						dumper.dump(epoch, pop, true);
 					}
 				}
 
@@ -133,42 +130,15 @@ public class ParochialSimulation {
 			if(null!=interaction) {
 				interaction.shutdown();
 			}
-		}
-	}
-
-
-	/**
-	 * Dump agent information to CSV file.
-	 * @param outDir
-	 * @param pfx
-	 * @param epoch
-	 * @param pop
-	 * @throws IOException
-	 */
-	private static void dumpAgentStats(Configuration conf, File outDir, String pfx, int epoch, Network pop, boolean dumpLexicon) throws IOException
-	{
-		LOG.debug("Writing agent information to zipped CSV...");
-
-		File lexZip = new File(outDir, String.format("%s%05d.zip", pfx, epoch));
-		ZipOutputStream zipOut = new ZipOutputStream(new FileOutputStream(lexZip));
-		AgentStatisticsRaw agentStats = new AgentStatisticsRaw(conf);
-		Iterator<Agent> it = pop.iterator();
-		while(it.hasNext()) {
-			Agent a = it.next();
-			agentStats.addRow(epoch, a);
-			if(dumpLexicon) {
-				ZipEntry e = new ZipEntry( String.format("%09d_lexicon.csv", a.getId()) );
-				zipOut.putNextEntry(e);
-				a.writeToStream(zipOut);
-				zipOut.closeEntry();
+			if(null!=dumper) {
+				// wait for pending dumps
+				try {
+					dumper.close();
+				} catch (IOException e) {
+					LOG.error("Could not write agent dumps", e);
+				}
 			}
 		}
-		ZipEntry ae = new ZipEntry( "agents.csv" );
-		zipOut.putNextEntry(ae);
-		agentStats.writeToStream(zipOut);
-		zipOut.closeEntry();
-		zipOut.close();
-
 	}
 
 }
@@ -13,7 +13,7 @@ import java.util.Date;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Properties;
-import java.util.Random;
+import java.util.zip.Deflater;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -25,8 +25,12 @@ import sfb732.kamoso.mem.Perception;
 import sfb732.kamoso.net.NetworkType;
 import sfb732.kamoso.pop.Agent;
 import sfb732.kamoso.pop.Agent.Gender;
+import sfb732.kamoso.pop.AgentDump;
 import sfb732.kamoso.pop.AgentTools;
 import sfb732.kamoso.pop.Interaction;
+import sfb732.kamoso.util.FastExp;
+import sfb732.kamoso.util.ParallelZipWriter;
+import sfb732.kamoso.util.RandomStream;
 
 
 /**
@@ -128,11 +132,23 @@ public final class Configuration {
 	protected static final String KEY_OUT_DUMP_LEX_FIRST = "out.dump.lexicon.first";
 	protected static final String KEY_OUT_DUMP_LEX_LAST  = "out.dump.lexicon.last";
 
+	protected static final String KEY_OUT_DUMP_FORMAT  = "out.dump.format";
+	protected static final String KEY_OUT_DUMP_THREADS = "out.dump.threads";
+	protected static final String KEY_OUT_DUMP_QUEUE   = "out.dump.queue";
+	protected static final String KEY_OUT_DUMP_ZIP_LEVEL   = "out.dump.zip.level";
+	protected static final String KEY_OUT_DUMP_ZIP_THREADS = "out.dump.zip.threads";
+	protected static final String KEY_OUT_DUMP_DELTA_BASE  = "out.dump.delta.base";
+
 
 	// Simulation parameters ---------------------------------------------
 
 	protected static final String KEY_SIM_MAX_WAIT = "sim.max.wait";
 
+	protected static final String KEY_SIM_EPOCH_MODE = "sim.epoch.mode";
+
+	/** number of worker threads, 0 for one per available processor */
+	protected static final String KEY_SIM_THREADS = "sim.threads";
+
 
 	// Network parameters ------------------------------------------------
 
@@ -154,6 +170,12 @@ public final class Configuration {
 
 	protected static final String KEY_NET_MAX_SW         = "net.sw.maxtry";
 
+	/** file to memory-map the node distances from; empty to keep them on the heap */
+	protected static final String KEY_NET_DIST_FILE      = "net.dist.file";
+
+	/** directory of cached distances and distance indices; empty to disable the cache */
+	protected static final String KEY_NET_CACHE_DIR      = "net.cache.dir";
+
 	// Exemplar and Memory parameters ------------------------------------
 
 	protected static final String KEY_EX_PROTO_FILE      = "x.proto.file";
@@ -175,6 +197,9 @@ public final class Configuration {
 
 	protected static final String KEY_EX_DELTA_THRESHOLD = "x.delta.th";
 
+	/** approximate exp() in similarities and scores (see {@link FastExp}) */
+	protected static final String KEY_EX_FASTMATH        = "x.fastmath";
+
 	protected static final String KEY_EX_NOISE_FACTOR    = "x.noise.factor";
 
 	protected static final String KEY_EX_NOISE_MAX       = "x.noise.max";
@@ -241,6 +266,26 @@ public final class Configuration {
 	}
 
 
+	/**
+	 * Initialize a configuration from a configuration file (or the default
+	 * configuration if the file is <code>null</code>) and override some of
+	 * its properties.
+	 * @param confFile  -- configuration properties file
+	 * @param outDir    -- the current output directory
+	 * @param overrides -- properties replacing those read from file
+	 * @return a new {@link Configuration} instance
+	 */
+	public static Configuration init(File confFile, File outDir, Properties overrides)
+	{
+		Properties prop = readProperties(confFile);
+		for(String key : overrides.stringPropertyNames()) {
+			prop.setProperty(key, overrides.getProperty(key));
+		}
+		Configuration conf = new Configuration(outDir, prop);
+		return conf;
+	}
+
+
 	/**
 	 * Initialize a configuration for a given set of properties.
 	 * @param prop
@@ -331,7 +376,7 @@ public final class Configuration {
 	 * uniform distribution in the range <code>[0.0 1.0)</code>
 	 * @return a random integer
 	 */
-	public double randomDouble(){
+	public synchronized double randomDouble(){
 		return this.rand.nextDouble();
 	}
 
@@ -340,7 +385,7 @@ public final class Configuration {
 	 * Generate a pseudo-random, uniformly distributed integer.
 	 * @return a random integer
 	 */
-	public int randomInt(){
+	public synchronized int randomInt(){
 		return this.rand.nextInt();
 	}
 
@@ -351,7 +396,7 @@ public final class Configuration {
 	 * @param n
 	 * @return a random integer between 0 (inclusive) and n (exclusive)
 	 */
-	public int randomInt(int n){
+	public synchronized int randomInt(int n){
 		return this.rand.nextInt(n);
 	}
 
@@ -362,8 +407,8 @@ public final class Configuration {
 	 * @param max
 	 * @return a random integer
 	 */
-	public int randomInt(int min, int max) {
-		return this.rand.nextInt((max - min) + 1) + min;
+	public synchronized int randomInt(int min, int max) {
+		return this.rand.nextInt(min, max);
 	}
 
 	/**
@@ -378,7 +423,26 @@ public final class Configuration {
 	 * @return a random double
 	 */
 	public double randomNoise() {
-		double n = this.rand.nextGaussian() * this.noiseFactor;
+		double g;
+		synchronized (this) {
+			g = this.rand.nextGaussian();
+		}
+		return this.scaleNoise(g);
+	}
+
+
+	/**
+	 * Same as {@link #randomNoise()} but drawing from the given stream.
+	 * @param rand
+	 * @return a random double
+	 */
+	public double randomNoise(RandomStream rand) {
+		return this.scaleNoise(rand.nextGaussian());
+	}
+
+
+	private double scaleNoise(double g) {
+		double n = g * this.noiseFactor;
 		if(n > this.noiseMax || n < this.noiseMin){
 			n = 0.0;
 		}
@@ -386,6 +450,30 @@ public final class Configuration {
 	}
 
 
+	/**
+	 * Get a random stream for the work of one agent within one epoch. The
+	 * stream is derived from the random seed of this configuration, the epoch
+	 * and the agent's ID only, i.e. it is the same regardless of the thread
+	 * that uses it or of the order in which agents are processed.
+	 * @param epoch
+	 * @param agentId
+	 * @return a new {@link RandomStream} (not thread-safe)
+	 */
+	public RandomStream getRandomStream(int epoch, long agentId) {
+		return new RandomStream(this.seed, epoch, agentId);
+	}
+
+
+	/**
+	 * Get a new random stream seeded from the global random number generator
+	 * of this configuration.
+	 * @return a new {@link RandomStream} (not thread-safe)
+	 */
+	public synchronized RandomStream getRandomStream() {
+		return new RandomStream(this.rand.nextLong());
+	}
+
+
 	protected double getNoiseFactor() {
 		return this.noiseFactor;
 	}
@@ -429,6 +517,68 @@ public final class Configuration {
 		return Boolean.parseBoolean(this.prop.getProperty(KEY_OUT_DUMP_LEX_LAST, "false"));
 	}
 
+	/**
+	 * @return the file format of agent and lexicon dumps
+	 */
+	public AgentDump.Format getOutputDumpFormat() {
+		return AgentDump.Format.valueOf(this.prop.getProperty(KEY_OUT_DUMP_FORMAT, AgentDump.Format.csv.toString()).trim());
+	}
+
+	/**
+	 * @return number of background threads writing agent dumps (0: dumps
+	 *   are written synchronously by the simulation thread)
+	 */
+	public int getOutputDumpThreads() {
+		return Integer.parseInt(this.prop.getProperty(KEY_OUT_DUMP_THREADS, "1").trim());
+	}
+
+	/**
+	 * @return maximum number of agent dumps waiting for a writer thread
+	 */
+	public int getOutputDumpQueueSize() {
+		return Integer.parseInt(this.prop.getProperty(KEY_OUT_DUMP_QUEUE, "2").trim());
+	}
+
+	/**
+	 * @return compression level of zipped CSV dumps: 0-9,
+	 *   {@link Deflater#DEFAULT_COMPRESSION} ("default") or
+	 *   {@link ParallelZipWriter#STORE} ("store", no compression)
+	 */
+	public int getOutputDumpZipLevel() {
+		String level = this.prop.getProperty(KEY_OUT_DUMP_ZIP_LEVEL, "default").trim();
+		if(level.equals("store")) {
+			return ParallelZipWriter.STORE;
+		} else if(level.equals("default")) {
+			return Deflater.DEFAULT_COMPRESSION;
+		}
+		int l = Integer.parseInt(level);
+		if(l < 0 || l > 9) {
+			throw new IllegalArgumentException(String.format("%s must be 'store', 'default' or 0-9: %s", KEY_OUT_DUMP_ZIP_LEVEL, level));
+		}
+		return l;
+	}
+
+	/**
+	 * @return number of threads compressing the entries of zipped CSV dumps
+	 *   (0: number of available processors)
+	 */
+	public int getOutputDumpZipThreads() {
+		int t = Integer.parseInt(this.prop.getProperty(KEY_OUT_DUMP_ZIP_THREADS, "0").trim());
+		if(t <= 0) {
+			t = Runtime.getRuntime().availableProcessors();
+		}
+		return t;
+	}
+
+	/**
+	 * @return number of lexicon dumps written as deltas of the previous
+	 *   lexicon dump before the next complete dump (0: no deltas); binary
+	 *   format only
+	 */
+	public int getOutputDumpDeltaBase() {
+		return Integer.parseInt(this.prop.getProperty(KEY_OUT_DUMP_DELTA_BASE, "0").trim());
+	}
+
 
 
 
@@ -441,6 +591,30 @@ public final class Configuration {
 	}
 
 
+	/**
+	 * Get the way speaking and listening are scheduled within one epoch.
+	 * @return instance of {@link Interaction.Mode}, defaults to
+	 *   {@link Interaction.Mode#twoPhase}
+	 */
+	public Interaction.Mode getEpochMode() {
+		return Interaction.Mode.valueOf(this.prop.getProperty(KEY_SIM_EPOCH_MODE, Interaction.Mode.twoPhase.toString()).trim());
+	}
+
+
+	/**
+	 * Get number of worker threads for the interactions within one epoch.
+	 * @return an integer &gt; 0; if the configured value is not positive, the
+	 *   number of available processors is returned
+	 */
+	public int getSimulationThreads() {
+		int t = Integer.parseInt(this.prop.getProperty(KEY_SIM_THREADS, "0").trim());
+		if(t <= 0) {
+			t = Runtime.getRuntime().availableProcessors();
+		}
+		return t;
+	}
+
+
 	// ===================================================================
 	//                                                       NETWORK SETUP
 	// ===================================================================
@@ -460,6 +634,35 @@ public final class Configuration {
 	}
 
 
+	/**
+	 * Get the file to memory-map the distances between network nodes from.
+	 * @return <code>null</code> if the distances are kept on the heap
+	 */
+	public File getNetworkDistanceFile() {
+		File f = null;
+		String file = this.prop.getProperty(KEY_NET_DIST_FILE, "");
+		if(!file.trim().isEmpty()) {
+			f = new File(file.trim());
+		}
+		return f;
+	}
+
+
+	/**
+	 * Get the directory of the topology cache, which keeps the distances
+	 * between network nodes and the distance index across runs.
+	 * @return <code>null</code> if the cache is disabled
+	 */
+	public File getNetworkCacheDir() {
+		File f = null;
+		String dir = this.prop.getProperty(KEY_NET_CACHE_DIR, "");
+		if(!dir.trim().isEmpty()) {
+			f = new File(dir.trim());
+		}
+		return f;
+	}
+
+
 	/**
 	 * Get network type
 	 * @return instance of {@link NetworkType}
@@ -487,7 +690,9 @@ public final class Configuration {
 
 
 	/**
-	 * @return maximum number of attempts to re-wire small-world network
+	 * @return maximum number of attempts to re-wire small-world network;
+	 *   no longer used, since small-world networks are repaired instead of
+	 *   re-wired from scratch (kept for existing configuration files)
 	 */
 	public int getMaxSWAttempts() {
 		return Integer.parseInt(this.prop.getProperty(KEY_NET_MAX_SW));
@@ -595,6 +800,27 @@ public final class Configuration {
 	}
 
 
+	/**
+	 * Check whether exemplar similarities and scores are computed with the
+	 * approximated exponential function of {@link FastExp} instead of
+	 * {@link Math#exp(double)}.
+	 * @return <code>false</code> by default
+	 */
+	public boolean isFastMath() {
+		return Boolean.parseBoolean(this.prop.getProperty(KEY_EX_FASTMATH, "false").trim());
+	}
+
+
+	/**
+	 * Get the shared approximation of exp(-x) on the range of the exemplar
+	 * distance threshold.
+	 * @return <code>null</code> unless {@link #isFastMath()}
+	 */
+	public FastExp getFastExp() {
+		return this.et.getFastExp();
+	}
+
+
 	/**
 	 * @return the perception type
 	 */
@@ -655,11 +881,12 @@ public final class Configuration {
 	 * are deleted by this method.
 	 * @param speaker
 	 * @param orig
+	 * @param rand -- random stream of the calling thread
 	 * @return
 	 */
-	public Exemplar getNoisyCopy(Agent speaker, Exemplar orig)
+	public Exemplar getNoisyCopy(Agent speaker, Exemplar orig, RandomStream rand)
 	{
-		return this.et.getNoisyCopy(speaker, orig);
+		return this.et.getNoisyCopy(speaker, orig, rand);
 	}
 
 	public Exemplar getNoisyCopy(Exemplar orig)
@@ -682,6 +909,34 @@ public final class Configuration {
 	}
 
 
+	/**
+	 * Compute the score of a candidate exemplar from its phonetic distance to
+	 * the reference exemplar.
+	 *
+	 * @param distance     -- phonetic distance between candidate and reference
+	 * @param socialScores -- pre-computed social scores of the candidate
+	 * @return a score in the range [0.0 ... 1.0]
+	 */
+	public double getScore(double distance, double socialScores)
+	{
+		return this.et.getScore(distance, socialScores);
+	}
+
+
+	/**
+	 * Compute the score of a candidate exemplar from its squared phonetic
+	 * distance to the reference exemplar (see {@link ExemplarTools#getScoreSq(double, double)}).
+	 *
+	 * @param distanceSq   -- squared phonetic distance between candidate and reference
+	 * @param socialScores -- pre-computed social scores of the candidate
+	 * @return a score in the range [0.0 ... 1.0]
+	 */
+	public double getScoreSq(double distanceSq, double socialScores)
+	{
+		return this.et.getScoreSq(distanceSq, socialScores);
+	}
+
+
 	public double getSocialSchores(double status, double closeness) {
 		return this.et.getSocialSchores(status, closeness);
 	}
@@ -734,7 +989,8 @@ public final class Configuration {
 	private final AgentTools at;
 	private final ExemplarTools et;
 
-	private final Random rand;
+	private final long seed;
+	private final RandomStream rand;
 
 	private final double noiseFactor;
 	private final double noiseMax;
@@ -772,7 +1028,8 @@ public final class Configuration {
 			seedL = System.nanoTime();
 			LOG.debug(String.format("Setting random seed from system time: %d", seedL));
 		}
-		this.rand = new Random(seedL);
+		this.seed = seedL;
+		this.rand = new RandomStream(seedL);
 
 		// set properties:
 		this.prop.setProperty(KEY_LOCALE, DEFAULT_LOCALE.toString());
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.PrintStream;
 import java.util.Properties;
 
+import sfb732.kamoso.pop.AgentDump;
 import sfb732.kamoso.pop.Interaction;
 
 
@@ -80,11 +81,21 @@ public class ConfigurationDefault {
 		p.setProperty(Configuration.KEY_OUT_DUMP_LEX_EVRY, "-1");
 		p.setProperty(Configuration.KEY_OUT_DUMP_LEX_FIRST, "false");
 		p.setProperty(Configuration.KEY_OUT_DUMP_LEX_LAST, "false");
+		p.setProperty(Configuration.KEY_OUT_DUMP_FORMAT, AgentDump.Format.csv.toString());
+		p.setProperty(Configuration.KEY_OUT_DUMP_THREADS, "1");
+		p.setProperty(Configuration.KEY_OUT_DUMP_QUEUE, "2");
+		p.setProperty(Configuration.KEY_OUT_DUMP_ZIP_LEVEL, "default");
+		p.setProperty(Configuration.KEY_OUT_DUMP_ZIP_THREADS, "0");
+		p.setProperty(Configuration.KEY_OUT_DUMP_DELTA_BASE, "0");
 
 		p.setProperty(Configuration.KEY_SIM_MAX_WAIT, "15");
+		p.setProperty(Configuration.KEY_SIM_EPOCH_MODE, Interaction.Mode.twoPhase.toString());
+		p.setProperty(Configuration.KEY_SIM_THREADS, "0");
 
 		p.setProperty(Configuration.KEY_NET_FILE, "");// no default
 		p.setProperty(Configuration.KEY_NET_MAX_SW, "3");
+		p.setProperty(Configuration.KEY_NET_DIST_FILE, "");// keep distances on the heap
+		p.setProperty(Configuration.KEY_NET_CACHE_DIR, "");// no cache
 
 		p.setProperty(Configuration.KEY_EX_PERCEPTION, "magnet");
 		p.setProperty(Configuration.KEY_EX_SIM, "global");
@@ -95,6 +106,7 @@ public class ConfigurationDefault {
 		p.setProperty(Configuration.KEY_EX_GAMMA, "1.0");
 
 		p.setProperty(Configuration.KEY_EX_DELTA_THRESHOLD, "13.0");
+		p.setProperty(Configuration.KEY_EX_FASTMATH, "false");
 		p.setProperty(Configuration.KEY_EX_MIN_SIM, "0.001");
 
 		p.setProperty(Configuration.KEY_EX_NOISE_FACTOR, "5.0");
@@ -0,0 +1,341 @@
+package sfb732.kamoso.junit;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sfb732.kamoso.conf.Configuration;
+import sfb732.kamoso.mem.Exemplar;
+import sfb732.kamoso.mem.Lexicon;
+import sfb732.kamoso.mem.LexiconSnapshot;
+import sfb732.kamoso.net.Network;
+import sfb732.kamoso.pop.Agent;
+import sfb732.kamoso.pop.AgentDump;
+import sfb732.kamoso.pop.AgentDumpReader;
+import sfb732.kamoso.pop.AgentDumpWriter;
+import sfb732.kamoso.pop.PopulationFactory;
+import sfb732.kamoso.pop.PopulationSnapshot;
+import sfb732.kamoso.util.ParallelZipWriter;
+
+public class TestAgentDump {
+
+	private File outDir;
+
+	@Before
+	public final void init()
+	{
+		System.out.println("**** TestAgentDump.init ****");
+
+		this.outDir = new File(Configuration.DEFAULT_OUPUT_DIR);
+		if(! this.outDir.exists()) {
+			System.out.printf("Creating output directory: %s", this.outDir.getAbsolutePath());
+			this.outDir.mkdir();
+		}
+	}
+
+
+	@Test
+	public void testBinaryRoundTrip() throws IOException
+	{
+		System.out.println("**** TestAgentDump.testBinaryRoundTrip ****");
+
+		Configuration conf = Configuration.init();
+		Network net = Network.readEdgelistCSV(conf, new File("testdata/edges_par_4x3x2.csv"));
+		Exemplar[] lex = Lexicon.readCSV(conf, new File("testdata/exemplar_prototypes.csv"), 2);
+		Agent[] pop = PopulationFactory.readCSV(conf, new File("testdata/agents_0-23_set001.csv"), lex[0], lex[1]);
+		net.setAgents(pop);
+
+		for(boolean dumpLexicon : new boolean[] {true, false}) {
+			File csvFile = new File(this.outDir, "TestAgentDump_csv.zip");
+			File binFile = new File(this.outDir, "TestAgentDump.kdump");
+			File expFile = new File(this.outDir, "TestAgentDump_exported.zip");
+
+			PopulationSnapshot snapshot = PopulationSnapshot.take(conf, 7, net, dumpLexicon);
+			AgentDump.writeCSV(snapshot, csvFile);
+			AgentDump.writeBinary(snapshot, binFile);
+
+			AgentDumpReader reader = new AgentDumpReader(binFile);
+			try {
+				PopulationSnapshot agents = reader.getAgents();
+				assertEquals(7, reader.getEpoch());
+				assertEquals(24, reader.size());
+				assertEquals(conf.getExemplarPhonDim(), agents.getDimensions());
+				assertEquals(conf.getTimestamp(), agents.getTimestamp());
+				assertEquals(dumpLexicon, reader.hasLexicons());
+
+				int i = 0;
+				long numExemplars = 0;
+				Iterator<Agent> it = net.iterator();
+				while(it.hasNext()) {
+					Agent a = it.next();
+					assertEquals(a.getId(), agents.getAgentId(i));
+					assertEquals(a.getNodeId(), agents.getNodeId(i));
+					assertEquals(a.getGender(), agents.getGender(i));
+					assertEquals(a.getStatus(), agents.getStatus(i), 0.0);
+					assertEquals(a.getVariantARatio(), agents.getVariantARatio(i), 0.0);
+					assertEquals(a.getLexiconSize(), agents.getLexiconSize(i));
+					if(dumpLexicon) {
+						assertEquals(a.getLexiconSize(), reader.getLexicon(i).size());
+						numExemplars += a.getLexiconSize();
+					}
+					i++;
+				}
+				assertEquals(numExemplars, reader.getNumberOfExemplars());
+				assertTrue(numExemplars > 0 || !dumpLexicon);
+
+				reader.exportCSV(expFile);
+			} finally {
+				reader.close();
+			}
+
+			HashMap<String, byte[]> expected = readEntries(csvFile);
+			HashMap<String, byte[]> actual = readEntries(expFile);
+			assertEquals(dumpLexicon ? 25 : 1, expected.size());
+			assertEquals(expected.keySet(), actual.keySet());
+			for(String name : expected.keySet()) {
+				assertEquals(name, new String(expected.get(name)), new String(actual.get(name)));
+			}
+		}
+	}
+
+
+	@Test
+	public void testDumpWriter() throws IOException
+	{
+		System.out.println("**** TestAgentDump.testDumpWriter ****");
+
+		File dumpDir = new File(this.outDir, "TestAgentDump_writer");
+		dumpDir.mkdirs();
+		for(File f : dumpDir.listFiles()) {
+			f.delete();
+		}
+
+		Properties prop = new Properties();
+		prop.setProperty("out.dump.format", "binary");
+		prop.setProperty("out.dump.threads", "2");
+		prop.setProperty("out.dump.queue", "1");
+		Configuration conf = Configuration.init(null, this.outDir, prop);
+		Network net = Network.readEdgelistCSV(conf, new File("testdata/edges_par_4x3x2.csv"));
+		Exemplar[] lex = Lexicon.readCSV(conf, new File("testdata/exemplar_prototypes.csv"), 2);
+		Agent[] pop = PopulationFactory.readCSV(conf, new File("testdata/agents_0-23_set001.csv"), lex[0], lex[1]);
+		net.setAgents(pop);
+
+		// snapshots must not change while the population ages
+		AgentDumpWriter dumper = new AgentDumpWriter(conf, dumpDir, "w_");
+		int[][] ages = new int[10][net.size()];
+		for(int epoch=0; epoch<10; epoch++) {
+			if(epoch == 9) {
+				// the same epoch twice: the last dump wins
+				dumper.dump(epoch, net, false);
+			}
+			Iterator<Agent> it = net.iterator();
+			for(int i=0; it.hasNext(); i++) {
+				ages[epoch][i] = it.next().getAge();
+			}
+			dumper.dump(epoch, net, epoch % 3 == 0);
+			net.incrementEpoch();
+		}
+		dumper.close();
+
+		assertEquals(10, dumpDir.listFiles().length);
+		for(int epoch=0; epoch<10; epoch++) {
+			AgentDumpReader reader = new AgentDumpReader(new File(dumpDir, String.format("w_%05d.kdump", epoch)));
+			try {
+				assertEquals(epoch, reader.getEpoch());
+				assertEquals(epoch % 3 == 0, reader.hasLexicons());
+				PopulationSnapshot agents = reader.read();
+				assertEquals(24, agents.size());
+				for(int i=0; i<agents.size(); i++) {
+					assertEquals(ages[epoch][i], agents.getAge(i));
+				}
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+
+	@Test
+	public void testDeltaDumps() throws IOException
+	{
+		System.out.println("**** TestAgentDump.testDeltaDumps ****");
+
+		File dumpDir = new File(this.outDir, "TestAgentDump_delta");
+		dumpDir.mkdirs();
+		for(File f : dumpDir.listFiles()) {
+			f.delete();
+		}
+
+		Properties prop = new Properties();
+		prop.setProperty("out.dump.format", "binary");
+		prop.setProperty("out.dump.delta.base", "3");
+		Configuration conf = Configuration.init(null, this.outDir, prop);
+		Network net = Network.readEdgelistCSV(conf, new File("testdata/edges_par_4x3x2.csv"));
+		Exemplar[] lex = Lexicon.readCSV(conf, new File("testdata/exemplar_prototypes.csv"), 2);
+		Agent[] pop = PopulationFactory.readCSV(conf, new File("testdata/agents_0-23_set001.csv"), lex[0], lex[1]);
+		net.setAgents(pop);
+
+		// agents die and are replaced, some lexicons are overwritten completely
+		AgentDumpWriter dumper = new AgentDumpWriter(conf, dumpDir, "d_");
+		PopulationSnapshot[] expected = new PopulationSnapshot[10];
+		for(int epoch=0; epoch<10; epoch++) {
+			Iterator<Agent> it = net.iterator();
+			for(int i=0; it.hasNext(); i++) {
+				Agent a = it.next();
+				int n = (i == 5 && epoch == 6) ? 450 : (7*i + 13*epoch) % 60;
+				for(int k=0; k<n; k++) {
+					a.listen(lex[k % lex.length], 1.0);
+				}
+			}
+			expected[epoch] = PopulationSnapshot.take(conf, epoch, net, true);
+			dumper.dump(epoch, net, true);
+			net.incrementEpoch();
+		}
+		dumper.close();
+
+		for(int epoch=0; epoch<10; epoch++) {
+			File dump = new File(dumpDir, String.format("d_%05d.kdump", epoch));
+			AgentDumpReader reader = new AgentDumpReader(dump);
+			try {
+				assertEquals(epoch % 4 != 0, reader.isDelta());
+				if(reader.isDelta()) {
+					assertEquals(epoch - 1, reader.getAgents().getBaseEpoch());
+					assertEquals(new File(dumpDir, String.format("d_%05d.kdump", epoch-1)), reader.getBaseFile());
+				}
+			} finally {
+				reader.close();
+			}
+
+			PopulationSnapshot actual = AgentDumpReader.readComplete(dump);
+			assertFalse(actual.isDelta());
+			assertEquals(expected[epoch].size(), actual.size());
+			for(int i=0; i<actual.size(); i++) {
+				assertEquals(expected[epoch].getAgentId(i), actual.getAgentId(i));
+				LexiconSnapshot e = expected[epoch].getLexicon(i);
+				LexiconSnapshot a = actual.getLexicon(i);
+				assertTrue(a.isComplete());
+				assertEquals(e.size(), a.size());
+				for(int x=0; x<e.size(); x++) {
+					assertEquals(e.getType(x), a.getType(x));
+					assertEquals(e.getGender(x), a.getGender(x));
+					assertEquals(e.getStatus(x), a.getStatus(x), 0.0);
+					assertEquals(e.getCloseness(x), a.getCloseness(x), 0.0);
+					for(int d=0; d<e.getDimensions(); d++) {
+						assertEquals(e.getFeature(x, d), a.getFeature(x, d), 0.0);
+					}
+				}
+			}
+		}
+		// deltas hold only the new exemplars
+		assertTrue(new File(dumpDir, "d_00001.kdump").length() < new File(dumpDir, "d_00000.kdump").length());
+
+		// the exported CSV equals a dump of the complete lexicons
+		File csvFile = new File(this.outDir, "TestAgentDump_delta_csv.zip");
+		File expFile = new File(this.outDir, "TestAgentDump_delta_exported.zip");
+		AgentDump.writeCSV(expected[9], csvFile);
+		AgentDumpReader reader = new AgentDumpReader(new File(dumpDir, "d_00009.kdump"));
+		try {
+			reader.exportCSV(expFile);
+		} finally {
+			reader.close();
+		}
+		HashMap<String, byte[]> csv = readEntries(csvFile);
+		HashMap<String, byte[]> exported = readEntries(expFile);
+		assertEquals(csv.keySet(), exported.keySet());
+		for(String name : csv.keySet()) {
+			assertEquals(name, new String(csv.get(name)), new String(exported.get(name)));
+		}
+	}
+
+
+	@Test
+	public void testParallelZip() throws IOException
+	{
+		System.out.println("**** TestAgentDump.testParallelZip ****");
+
+		Configuration conf = Configuration.init();
+		Network net = Network.readEdgelistCSV(conf, new File("testdata/edges_par_4x3x2.csv"));
+		Exemplar[] lex = Lexicon.readCSV(conf, new File("testdata/exemplar_prototypes.csv"), 2);
+		Agent[] pop = PopulationFactory.readCSV(conf, new File("testdata/agents_0-23_set001.csv"), lex[0], lex[1]);
+		net.setAgents(pop);
+		PopulationSnapshot snapshot = PopulationSnapshot.take(conf, 3, net, true);
+
+		File refFile = new File(this.outDir, "TestAgentDump_ref.zip");
+		AgentDump.writeCSV(snapshot, refFile);
+		HashMap<String, byte[]> expected = readEntries(refFile);
+		assertEquals(25, expected.size());
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			for(int level : new int[] {ParallelZipWriter.STORE, Deflater.BEST_SPEED, Deflater.BEST_COMPRESSION}) {
+				File zipFile = new File(this.outDir, "TestAgentDump_parallel.zip");
+				AgentDump.writeCSV(snapshot, zipFile, level, executor);
+
+				HashMap<String, byte[]> actual = readEntries(zipFile);
+				assertEquals(expected.keySet(), actual.keySet());
+				for(String name : expected.keySet()) {
+					assertEquals(name, new String(expected.get(name)), new String(actual.get(name)));
+				}
+
+				// streaming readers see the entries in node order
+				ZipInputStream in = new ZipInputStream(new FileInputStream(zipFile));
+				try {
+					Iterator<Agent> it = net.iterator();
+					while(it.hasNext()) {
+						ZipEntry e = in.getNextEntry();
+						assertEquals(String.format("%09d_lexicon.csv", it.next().getId()), e.getName());
+						assertEquals(level == ParallelZipWriter.STORE ? ZipEntry.STORED : ZipEntry.DEFLATED, e.getMethod());
+					}
+					assertEquals("agents.csv", in.getNextEntry().getName());
+					assertNull(in.getNextEntry());
+				} finally {
+					in.close();
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+
+	private static HashMap<String, byte[]> readEntries(File zip) throws IOException
+	{
+		HashMap<String, byte[]> entries = new HashMap<String, byte[]>();
+		ZipFile zf = new ZipFile(zip);
+		try {
+			Enumeration<? extends ZipEntry> en = zf.entries();
+			byte[] buf = new byte[8192];
+			while(en.hasMoreElements()) {
+				ZipEntry e = en.nextElement();
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				InputStream in = zf.getInputStream(e);
+				for(int k=in.read(buf); k>=0; k=in.read(buf)) {
+					bytes.write(buf, 0, k);
+				}
+				in.close();
+				entries.put(e.getName(), bytes.toByteArray());
+			}
+		} finally {
+			zf.close();
+		}
+		return entries;
+	}
+
+}
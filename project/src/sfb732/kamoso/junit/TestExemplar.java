@@ -6,7 +6,9 @@ import static org.junit.Assert.fail;
 
 import org.junit.Test;
 
+import sfb732.kamoso.conf.Configuration;
 import sfb732.kamoso.mem.Exemplar;
+import sfb732.kamoso.pop.Agent;
 import sfb732.kamoso.util.MyMathHelper;
 
 
@@ -85,6 +87,20 @@ public class TestExemplar {
 		}
 	}
 
+	@Test
+	public void testGetCSV()
+	{
+		System.out.println("**** TestExemplar.testGetCSV ****");
+		double[] d1 = this.getRandomVector(-100.0, 100.0);
+		Exemplar e1 = new Exemplar(Exemplar.Type.A, 0.123456789, Agent.Gender.f, 1.0000005, d1, 0);
+		StringBuilder sb = new StringBuilder("A,0.123457,f,1.000001");
+		for(int i=0; i<d1.length; i++) {
+			sb.append(String.format(Configuration.DEFAULT_LOCALE, ",%f", d1[i]));
+		}
+		assertEquals(sb.toString(), e1.getCSV());
+		assertEquals("type,speaker_status,speaker_gender,closeness,phon_0,phon_1,phon_2,phon_3,phon_4", e1.getCSVHead());
+	}
+
 	@Test
 	public void testToString() {
 		System.out.println("**** TestExemplar.testToString ****");
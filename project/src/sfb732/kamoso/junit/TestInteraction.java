@@ -0,0 +1,112 @@
+package sfb732.kamoso.junit;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import sfb732.kamoso.conf.Configuration;
+import sfb732.kamoso.conf.ConfigurationDefault;
+import sfb732.kamoso.mem.Exemplar;
+import sfb732.kamoso.mem.Lexicon;
+import sfb732.kamoso.net.EpochStatistics;
+import sfb732.kamoso.net.Network;
+import sfb732.kamoso.pop.Agent;
+import sfb732.kamoso.pop.Interaction;
+import sfb732.kamoso.pop.PopulationFactory;
+
+public class TestInteraction {
+
+	private static final int EPOCHS = 8;
+
+	private File outDir;
+
+
+	@Before
+	public final void init()
+	{
+		System.out.println("**** TestInteraction.init ****");
+
+		this.outDir = new File(Configuration.DEFAULT_OUPUT_DIR);
+		if(! this.outDir.exists()) {
+			System.out.printf("Creating output directory: %s", this.outDir.getAbsolutePath());
+			this.outDir.mkdir();
+		}
+	}
+
+
+	@Test
+	public void testReproducibleAcrossThreads() throws IOException
+	{
+		System.out.println("**** TestInteraction.testReproducibleAcrossThreads ****");
+
+		for(Interaction.Type type : Interaction.Type.values()) {
+			for(Interaction.Mode mode : Interaction.Mode.values()) {
+				String[] ref = run(type, mode, 1, false);
+				String[] par = run(type, mode, 4, false);
+				assertArrayEquals(String.format("%s/%s", type, mode), ref, par);
+
+				String[] rep = run(type, mode, 3, false);
+				assertArrayEquals(String.format("%s/%s", type, mode), ref, rep);
+			}
+			// single-threaded two-phase interactions
+			String[] ref = run(type, Interaction.Mode.twoPhase, 2, false);
+			String[] seq = run(type, Interaction.Mode.twoPhase, 1, true);
+			assertArrayEquals(type.toString(), ref, seq);
+
+			// fused interactions yield the same lexicons as two-phase interactions
+			for(int threads : new int[]{1, 4}) {
+				assertArrayEquals(String.format("%s/%d threads", type, threads),
+						run(type, Interaction.Mode.twoPhase, threads, false), run(type, Interaction.Mode.fused, threads, false));
+			}
+		}
+	}
+
+
+	/**
+	 * Run a few epochs on the test network and return the lexicons of all
+	 * agents as CSV, followed by the number of exemplars each agent produced.
+	 */
+	private String[] run(Interaction.Type type, Interaction.Mode mode, int threads, boolean sequential) throws IOException
+	{
+		Properties prop = ConfigurationDefault.getDefaultConfiguration();
+		prop.setProperty("random.seed", "4711");
+		prop.setProperty("soc.interaction", type.toString());
+		prop.setProperty("sim.epoch.mode", mode.toString());
+		prop.setProperty("sim.threads", Integer.toString(threads));
+		Configuration conf = Configuration.init(prop, this.outDir);
+
+		Network net = Network.readEdgelistCSV(conf, new File("testdata/edges_par_4x3x2.csv"));
+		Exemplar[] lex = Lexicon.readCSV(conf, new File("testdata/exemplar_prototypes.csv"), 2);
+		Agent[] pop = PopulationFactory.readCSV(conf, new File("testdata/agents_0-23_set001.csv"), lex[0], lex[1]);
+		net.setAgents(pop);
+
+		EpochStatistics stats = new EpochStatistics(conf, new File(this.outDir, "TestInteraction_epochs.csv"));
+		Interaction interaction = new Interaction(conf, net);
+		for(int epoch=0; epoch<EPOCHS; epoch++) {
+			if(sequential) {
+				interaction.runInteractions(stats, epoch);
+			} else {
+				interaction.runInteractionsMT(stats, epoch);
+			}
+			// increment ages, i.e. replace agents as in a simulation
+			net.incrementEpoch();
+		}
+		interaction.shutdown();
+		stats.close();
+
+		String[] lexicons = new String[net.size()];
+		for(int i=0; i<lexicons.length; i++) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			net.getAgentAtNode(i).writeToStream(out);
+			lexicons[i] = out.toString("UTF-8") + net.getAgentAtNode(i).getProducedExemplars();
+		}
+		return lexicons;
+	}
+
+}
@@ -12,10 +12,13 @@ import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Properties;
 
 import org.junit.Test;
 
 import sfb732.kamoso.conf.Configuration;
+import sfb732.kamoso.conf.ConfigurationDefault;
+import sfb732.kamoso.mem.DistanceKernel;
 import sfb732.kamoso.mem.Exemplar;
 import sfb732.kamoso.mem.Exemplar.Type;
 import sfb732.kamoso.mem.Lexicon;
@@ -576,6 +579,179 @@ public class TestLexicon {
 
 
 
+	@Test
+	public final void testRunningAggregates()
+	{
+		System.out.println("**** TestLexicon.testRunningAggregates ****");
+
+		Configuration conf = Configuration.init();
+		int dim = conf.getExemplarPhonDim();
+		int capacity = 50;
+
+		Exemplar[] ex = new Exemplar[capacity];
+		for(int i=0; i<20; i++) {
+			ex[i] = getRandomExemplar(dim, i%3==0 ? Type.B : Type.A);
+		}
+		Lexicon lex = new Lexicon(conf, ex);
+
+		for(int i=0; i<500; i++) {
+			double r = MyMathHelper.randomDouble();
+			lex.addExemplar(getRandomExemplar(dim, r < 0.6 ? Type.A : (r < 0.95 ? Type.B : Type.undefined)));
+
+			int numA = 0;
+			int numB = 0;
+			double[] sumA = new double[dim];
+			double[] sumB = new double[dim];
+			Iterator<Exemplar> it = lex.iterator();
+			while(it.hasNext()) {
+				Exemplar e = it.next();
+				if(e.getType()==Type.undefined) {
+					continue;
+				}
+				double[] sum = e.getType()==Type.A ? sumA : sumB;
+				for(int d=0; d<dim; d++) {
+					sum[d] += e.getPhoneticFeature(d);
+				}
+				if(e.getType()==Type.A) {
+					numA++;
+				} else {
+					numB++;
+				}
+			}
+			assertEquals((double)numA/(double)lex.size(), lex.getVariantARatio(), 0.0);
+			assertEquals(lex.size()-numA>numA ? Type.B : Type.A, lex.getMajorityType());
+
+			Exemplar cA = lex.getCentroidA();
+			Exemplar cB = lex.getCentroidB();
+			for(int d=0; d<dim; d++) {
+				assertEquals(numA>0 ? sumA[d]/numA : 0.0, cA.getPhoneticFeature(d), 1e-9);
+				assertEquals(numB>0 ? sumB[d]/numB : 0.0, cB.getPhoneticFeature(d), 1e-9);
+			}
+		}
+	}
+
+
+	@Test
+	public final void testDistanceKernel()
+	{
+		System.out.println("**** TestLexicon.testDistanceKernel ****");
+
+		int dim = 7;
+		int n = 2*DistanceKernel.BLOCK + 13;
+		double[][] rows = new double[n][];
+		double[] matrix = new double[n*dim];
+		for(int i=0; i<n; i++) {
+			rows[i] = getRandomVector(dim);
+			for(int d=0; d<dim; d++) {
+				matrix[d*n + i] = rows[i][d];
+			}
+		}
+		double[] x = getRandomVector(dim);
+		double[] out = new double[DistanceKernel.BLOCK];
+		for(int from=0; from<n; from+=DistanceKernel.BLOCK) {
+			int len = Math.min(DistanceKernel.BLOCK, n-from);
+			DistanceKernel.squaredDistances(matrix, n, dim, from, len, x, out);
+			for(int b=0; b<len; b++) {
+				assertEquals(MyMathHelper.getEuclideanDistanceSq(x, rows[from+b]), out[b], 0.0);
+			}
+		}
+
+		// global similarity against the straightforward scalar computation
+		Configuration conf = Configuration.init();
+		int pdim = conf.getExemplarPhonDim();
+		double th = conf.getExemplarDeltaThreshold();
+		Exemplar[] ex = new Exemplar[300];
+		for(int i=0; i<250; i++) {
+			ex[i] = getRandomExemplar(pdim, i%4==0 ? Type.B : Type.A);
+		}
+		Lexicon lex = new Lexicon(conf, ex);
+		for(int i=0; i<500; i++) {
+			lex.addExemplar(getRandomExemplar(pdim, i%3==0 ? Type.B : Type.A));
+			if(i%50 != 0) {
+				continue;
+			}
+			Exemplar stimulus = getRandomExemplar(pdim, Type.A);
+			for(Type t : new Type[]{Type.A, Type.B}) {
+				double sim = 0.0;
+				int num = 0;
+				Iterator<Exemplar> it = lex.iterator();
+				while(it.hasNext()) {
+					Exemplar e = it.next();
+					if(e.getType()!=t) {
+						continue;
+					}
+					double d = e.getDistance(stimulus);
+					sim += d > th ? Math.exp(-th) : Math.exp(-d);
+					num++;
+				}
+				sim = sim / num;
+				double tol = 4 * num * Math.ulp(sim);
+				assertEquals(sim, lex.getSimilarityG(stimulus, t), tol);
+			}
+		}
+	}
+
+
+	@Test
+	public final void testEpsilonGrid()
+	{
+		System.out.println("**** TestLexicon.testEpsilonGrid ****");
+
+		double eps = 0.8;
+		Properties prop = ConfigurationDefault.getDefaultConfiguration();
+		prop.setProperty("x.sim", Lexicon.Similarity.epsilon.toString());
+		prop.setProperty("x.sim.eps", Double.toString(eps));
+		prop.setProperty("x.phon.dim", "2");
+		Configuration conf = Configuration.init(prop, new File(Configuration.DEFAULT_OUPUT_DIR));
+		assertEquals(2, conf.getExemplarPhonDim());
+
+		Exemplar[] ex = new Exemplar[1000];
+		for(int i=0; i<600; i++) {
+			ex[i] = getRandomExemplar(2, i%3==0 ? Type.B : Type.A);
+		}
+		Lexicon lex = new Lexicon(conf, ex);
+		for(int i=0; i<2500; i++) {
+			lex.addExemplar(getRandomExemplar(2, MyMathHelper.randomDouble() < 0.5 ? Type.A : Type.B));
+			if(i%25 != 0) {
+				continue;
+			}
+			Exemplar stimulus = getRandomExemplar(2, Type.A);
+			int nA = 0;
+			int nB = 0;
+			Iterator<Exemplar> it = lex.iterator();
+			while(it.hasNext()) {
+				Exemplar e = it.next();
+				if(e.getDistance(stimulus) <= eps) {
+					if(e.getType()==Type.A) {
+						nA++;
+					} else {
+						nB++;
+					}
+				}
+			}
+			double expA = nA+nB > 0 ? nA / (double)(nA+nB) : 0.0;
+			assertEquals(expA, lex.getSimilarity(stimulus, Type.A), 0.0);
+			assertEquals(expA, lex.getSimilarityN(stimulus, Type.A, eps), 0.0);
+		}
+	}
+
+
+	private Exemplar getRandomExemplar(int dim, Type type) {
+		return new Exemplar(type, 0, Gender.f, 0, getRandomVector(dim), 0);
+	}
+
+
+	private double[] getRandomVector(int dim) {
+		double[] phon = new double[dim];
+		for(int d=0; d<dim; d++) {
+			phon[d] = MyMathHelper.randomDouble(-10.0, 10.0);
+		}
+		return phon;
+	}
+
+
+
+
 	@Test
 	public final void compareSimilarity()
 	{
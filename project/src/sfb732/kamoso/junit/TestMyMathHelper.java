@@ -2,12 +2,18 @@ package sfb732.kamoso.junit;
 
 import static org.junit.Assert.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.Random;
 
 import org.junit.Test;
 
 import sfb732.kamoso.conf.Configuration;
+import sfb732.kamoso.util.AliasTable;
+import sfb732.kamoso.util.CSVEncoder;
+import sfb732.kamoso.util.FastExp;
 import sfb732.kamoso.util.MyMathHelper;
+import sfb732.kamoso.util.RandomStream;
 
 public class TestMyMathHelper {
 
@@ -146,4 +152,109 @@ public class TestMyMathHelper {
 
 	}
 
+
+
+	@Test
+	public void testFastExp()
+	{
+		System.out.println("**** TestMyMathHelper.testFastExp ****");
+		FastExp fe = new FastExp(13.0);
+		Random random = new Random(4711);
+
+		double maxErr = 0.0;
+		for(int i=0; i<1000000; i++) {
+			double x = random.nextDouble() * 14.0;
+			double exact = Math.exp(-x);
+			double err = Math.abs(fe.expNeg(x) - exact) / exact;
+			maxErr = Math.max(maxErr, err);
+		}
+		System.out.printf(Configuration.DEFAULT_LOCALE, "> max. relative error: %g\n", maxErr);
+		assertTrue(maxErr <= FastExp.MAX_REL_ERROR);
+
+		// exact at table nodes and outside the table
+		assertEquals(1.0, fe.expNeg(0.0), 0.0);
+		assertEquals(Math.exp(-0.5), fe.expNeg(0.5), 0.0);
+		assertEquals(Math.exp(-20.0), fe.expNeg(20.0), 0.0);
+		assertEquals(Math.exp(1.0), fe.expNeg(-1.0), 0.0);
+	}
+
+
+	@Test
+	public void testAliasTable()
+	{
+		System.out.println("**** TestMyMathHelper.testAliasTable ****");
+		double[] weights = new double[]{ 0.0, 3.0, 1.0, 0.0, 6.0, 0.0 };
+		AliasTable table = new AliasTable(weights);
+		assertEquals(weights.length, table.size());
+
+		RandomStream rand = new RandomStream(4711);
+		int iterations = 1000000;
+		int[] counts = new int[weights.length];
+		for(int i=0; i<iterations; i++) {
+			counts[table.sample(rand)]++;
+		}
+		for(int i=0; i<weights.length; i++) {
+			double p = weights[i] / 10.0;
+			System.out.printf(Configuration.DEFAULT_LOCALE, "> %d: %.4f (%.4f)\n", i, counts[i] / (double) iterations, p);
+			if(weights[i] == 0.0) {
+				assertEquals(0, counts[i]);
+			} else {
+				assertEquals(p, counts[i] / (double) iterations, 0.005);
+			}
+		}
+	}
+
+
+	@Test
+	public void testCSVEncoder() throws IOException
+	{
+		System.out.println("**** TestMyMathHelper.testCSVEncoder ****");
+		// doubles: same output as the Formatter, incl. values close to
+		// rounding ties and special values
+		Random rand = new Random(4711);
+		double[] special = new double[] { 0.0, -0.0, 1e-7, -1e-7, 5e-7, 0.0000005, 1.0005, 0.125, -3.5,
+				123456789.1234565, 1e20, -1e300, Double.MIN_VALUE, Double.MAX_VALUE,
+				Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+		for(int i=0; i<200000+special.length; i++) {
+			double v;
+			if(i < special.length) {
+				v = special[i];
+			} else {
+				switch (i % 4) {
+				case 0:  v = rand.nextDouble(); break;
+				case 1:  v = rand.nextGaussian() * 1000.0; break;
+				case 2:  v = (rand.nextInt(2000001) - 1000000) / 1e6 + 0.0000005; break;
+				default: v = (rand.nextInt(20001) - 10000) / 1e3 + 0.0005; break;
+				}
+			}
+			for(int d : new int[] {0, 3, 6, CSVEncoder.MAX_DECIMALS}) {
+				String expected = String.format(Configuration.DEFAULT_LOCALE, "%." + d + "f", v);
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				CSVEncoder enc = new CSVEncoder(out);
+				enc.appendFixed(v, d);
+				enc.finish();
+				assertEquals(expected, out.toString(Configuration.DEFAULT_ENCODING));
+				if(d == 6 && !Double.isNaN(v) && !Double.isInfinite(v)) {
+					// round trip up to the precision
+					assertEquals(v, Double.parseDouble(expected), 0.5e-6 + Math.ulp(v));
+				}
+			}
+		}
+
+		// integers, strings and more output than fits into the buffer
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		CSVEncoder enc = new CSVEncoder(out);
+		StringBuilder expected = new StringBuilder();
+		long[] longs = new long[] { 0L, -1L, 7L, Long.MAX_VALUE, Long.MIN_VALUE, Integer.MIN_VALUE, -1234567890123L };
+		for(int i=0; i<10000; i++) {
+			long l = longs[i % longs.length];
+			int n = rand.nextInt();
+			enc.append(l).append(',').append(n).append(',').append("x\u00e4").append('\n');
+			expected.append(l).append(',').append(n).append(',').append("x\u00e4").append('\n');
+		}
+		enc.finish();
+		assertTrue(out.size() > CSVEncoder.BUFFER_SIZE);
+		assertEquals(expected.toString(), out.toString(Configuration.DEFAULT_ENCODING));
+	}
+
 }
@@ -3,9 +3,15 @@ package sfb732.kamoso.junit;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.Properties;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -14,6 +20,8 @@ import sfb732.kamoso.conf.Configuration;
 import sfb732.kamoso.mem.Exemplar;
 import sfb732.kamoso.mem.Lexicon;
 import sfb732.kamoso.net.AdjacencyMatrix;
+import sfb732.kamoso.net.DistanceStore;
+import sfb732.kamoso.net.EdgeListReader;
 import sfb732.kamoso.net.Network;
 import sfb732.kamoso.net.NetworkFactory;
 import sfb732.kamoso.net.NetworkType;
@@ -87,6 +95,50 @@ public class TestNetwork {
 	}
 
 
+	@Test
+	public void testReadEdgelistCSVWeights() throws IOException
+	{
+		System.out.println("**** TestNetwork.testReadEdgelistCSVWeights ****");
+
+		File csvFile = new File(Configuration.DEFAULT_OUPUT_DIR, "TestNetwork_weights.csv");
+		OutputStreamWriter out = new OutputStreamWriter(new FileOutputStream(csvFile), Configuration.DEFAULT_ENCODING);
+		out.write("from,to,label,weight\r\n");
+		out.write("0,1,a,2\r\n");
+		out.write("\r\n");
+		out.write(" 1 , 0 ,b, 0.5 \r\n");
+		out.write("1,2,c,0\r\n");// no edge
+		out.write("2,3,d,\r\n");// weight 1
+		out.write("0,1,e,3\r\n");// last occurrence counts
+		out.write("3,2,f,1e-1");
+		out.close();
+
+		AdjacencyMatrix am = EdgeListReader.read(csvFile);
+		assertEquals(4, am.size());
+		assertEquals(4, am.getNumberOfEdges());
+		assertTrue(am.isWeighted());
+		assertTrue(am.isConnected(0, 1));
+		assertTrue(am.isConnected(1, 0));
+		assertFalse(am.isConnected(1, 2));
+		assertTrue(am.isConnected(2, 3));
+		assertEquals(3.0, am.getWeight(0, 0), 0.0);
+		assertEquals(0.5, am.getWeight(1, 0), 0.0);
+		assertEquals(1.0, am.getWeight(2, 0), 0.0);
+		assertEquals(0.1, am.getWeight(3, 0), 0.0);
+
+		// weights are written back
+		Configuration conf = Configuration.init();
+		Network net = new Network(conf, am, NetworkType.undefined);
+		File copy = new File(Configuration.DEFAULT_OUPUT_DIR, "TestNetwork_weights_copy.csv");
+		assertTrue(net.writeEdgelistCSV(copy));
+		assertEquals(am, EdgeListReader.read(copy));
+
+		// unweighted files
+		am = EdgeListReader.read(new File("testdata/edges_par_4x3x2.csv"));
+		assertFalse(am.isWeighted());
+		assertEquals(1.0, am.getWeight(0, 0), 0.0);
+	}
+
+
 	@Test
 	public void testNetwork() {
 		fail("Not yet implemented");
@@ -94,22 +146,198 @@ public class TestNetwork {
 
 	@Test
 	public void testIsConnected() {
-		fail("Not yet implemented");
+		System.out.println("**** TestNetwork.testIsConnected ****");
+
+		AdjacencyMatrix.Builder b = new AdjacencyMatrix.Builder(5);
+		b.connect(0, 3);
+		b.connect(0, 1);
+		b.connect(3, 4);
+		b.set(2, 4);// directed
+		b.connect(1, 4);
+		b.disconnect(1, 4);
+		assertTrue(b.isConnected(0, 1));
+		assertFalse(b.isConnected(1, 4));
+		assertEquals(3, b.nextNeighbor(0, 1));
+		assertEquals(-1, b.nextNeighbor(0, 3));
+
+		AdjacencyMatrix am = b.build();
+		assertEquals(5, am.size());
+		assertEquals(7, am.getNumberOfEdges());
+		int[][] dense = new int[5][5];
+		dense[0][1] = dense[1][0] = 1;
+		dense[0][3] = dense[3][0] = 1;
+		dense[3][4] = dense[4][3] = 1;
+		dense[2][4] = 1;
+		assertEquals(new AdjacencyMatrix(dense), am);
+		assertEquals(new AdjacencyMatrix(dense).hashCode(), am.hashCode());
+
+		for(int i=0; i<5; i++) {
+			int[] neighbors = am.getNeighbors(i);
+			assertEquals(neighbors.length, am.getDegree(i));
+			for(int k=0; k<neighbors.length; k++) {
+				assertEquals(neighbors[k], am.getNeighbor(i, k));
+			}
+			for(int j=0; j<5; j++) {
+				assertEquals(dense[i][j] != AdjacencyMatrix.NO_CONNECTION, am.isConnected(i, j));
+			}
+		}
+		assertArrayEquals(new int[]{1, 3}, am.getNeighbors(0));
+		assertArrayEquals(new int[]{4}, am.getNeighbors(2));
+
+		// builder initialized from a matrix
+		AdjacencyMatrix.Builder c = new AdjacencyMatrix.Builder(am);
+		c.disconnect(0, 1);
+		assertTrue(am.isConnected(0, 1));
+		assertFalse(c.build().isConnected(0, 1));
+		assertEquals(5, c.build().getNumberOfEdges());
 	}
 
 	@Test
 	public void testGetDistance() {
-		fail("Not yet implemented");
+		System.out.println("**** TestNetwork.testGetDistance ****");
+
+		Configuration conf = Configuration.init();
+		Network torus = Network.readEdgelistCSV(conf, new File("testdata/edges_regtorus_4x3.csv"));
+		int[] expected = new int[]{0, 1, 2, 1, 1, 2, 3, 2, 1, 2, 3, 2};
+		for(int j=0; j<expected.length; j++) {
+			assertEquals(expected[j], torus.getDistance(0, j));
+		}
+
+		Network par = Network.readEdgelistCSV(conf, new File("testdata/edges_par_4x3x2.csv"));
+		expected = new int[]{0, 1, 2, 1, 1, 2, 3, 2, 1, 2, 3, 2, 4, 5, 6, 5, 3, 4, 5, 4, 4, 5, 6, 5};
+		for(int j=0; j<expected.length; j++) {
+			assertEquals(expected[j], par.getDistance(0, j));
+		}
+		for(int i=0; i<par.size(); i++) {
+			for(int j=0; j<par.size(); j++) {
+				assertEquals(par.getDistance(i, j), par.getDistance(j, i));
+				if(i==j) {
+					assertEquals(AdjacencyMatrix.NO_CONNECTION, par.getDistance(i, j));
+				} else if(par.isConnected(i, j)) {
+					assertEquals(1, par.getDistance(i, j));
+				} else {
+					assertTrue(par.getDistance(i, j) > 1);
+				}
+			}
+		}
 	}
 
 	@Test
 	public void testGetMeanDistance() {
-		fail("Not yet implemented");
+		System.out.println("**** TestNetwork.testGetMeanDistance ****");
+
+		Configuration conf = Configuration.init();
+		Network torus = Network.readEdgelistCSV(conf, new File("testdata/edges_regtorus_4x3.csv"));
+		assertEquals(240.0 / 132.0, torus.getMeanDistance(), 1e-12);
+
+		Network par = Network.readEdgelistCSV(conf, new File("testdata/edges_par_4x3x2.csv"));
+		assertEquals(1728.0 / 552.0, par.getMeanDistance(), 1e-12);
 	}
 
 	@Test
 	public void testGetMaximumDistance() {
-		fail("Not yet implemented");
+		System.out.println("**** TestNetwork.testGetMaximumDistance ****");
+
+		Configuration conf = Configuration.init();
+		Network torus = Network.readEdgelistCSV(conf, new File("testdata/edges_regtorus_4x3.csv"));
+		assertEquals(3, torus.getMaximumDistance());
+
+		Network par = Network.readEdgelistCSV(conf, new File("testdata/edges_par_4x3x2.csv"));
+		assertEquals(7, par.getMaximumDistance());
+	}
+
+	@Test
+	public void testDistanceStore() {
+		System.out.println("**** TestNetwork.testDistanceStore ****");
+
+		// symmetric store with two bytes per entry
+		DistanceStore ds = new DistanceStore(400, true, 399, null);
+		assertEquals(2, ds.getWidth());
+		for(int i=0; i<400; i++) {
+			for(int j=i+1; j<400; j++) {
+				ds.set(i, j, j-i);
+			}
+		}
+		for(int i=0; i<400; i++) {
+			for(int j=0; j<400; j++) {
+				assertEquals(Math.abs(i-j), ds.get(i, j));
+			}
+		}
+
+		// chain of nodes, distances mapped from file
+		int n = 300;
+		AdjacencyMatrix.Builder b = new AdjacencyMatrix.Builder(n);
+		for(int i=1; i<n; i++) {
+			b.connect(i-1, i);
+		}
+		b.set(5, 5);// self-loop
+		AdjacencyMatrix am = b.build();
+		File file = new File(Configuration.DEFAULT_OUPUT_DIR, "TestNetwork_distances.bin");
+		am.computeDistances(file);
+		assertEquals(2L * n * (n-1) / 2, file.length());
+		for(int i=0; i<n; i++) {
+			for(int j=0; j<n; j++) {
+				int expected = i==j ? (i==5 ? 1 : AdjacencyMatrix.NO_CONNECTION) : Math.abs(i-j);
+				assertEquals(expected, am.getDistance(i, j));
+			}
+		}
+		assertEquals(n-1, am.getMaximumDistance());
+
+		// directed network: all entries are stored
+		b = new AdjacencyMatrix.Builder(3);
+		b.set(0, 1);
+		b.set(1, 2);
+		b.set(2, 0);
+		am = b.build();
+		assertEquals(1, am.getDistance(0, 1));
+		assertEquals(2, am.getDistance(1, 0));
+		assertEquals(2, am.getMaximumDistance());
+	}
+
+
+	@Test
+	public void testTopologyCache() throws IOException
+	{
+		System.out.println("**** TestNetwork.testTopologyCache ****");
+
+		File csvFile = new File("data/edges-parSW-5x10x8.csv");
+		File cacheDir = new File(Configuration.DEFAULT_OUPUT_DIR, "TestNetwork_cache");
+		if(cacheDir.isDirectory()) {
+			for(File f : cacheDir.listFiles()) {
+				f.delete();
+			}
+		}
+
+		Network reference = Network.readEdgelistCSV(Configuration.init(), csvFile);
+
+		Properties prop = new Properties();
+		prop.setProperty("net.cache.dir", cacheDir.getPath());
+		Configuration conf = Configuration.init(null, new File(Configuration.DEFAULT_OUPUT_DIR), prop);
+
+		// first run: computed and written; later runs: mapped from the cache
+		for(int run=0; run<3; run++) {
+			Network net = Network.readEdgelistCSV(conf, csvFile);
+			assertTrue(net.isEqualTopology(reference));
+			assertEquals(reference.getMaximumDistance(), net.getMaximumDistance());
+			assertEquals(reference.getMeanDistance(), net.getMeanDistance(), 1e-12);
+			for(int i=0; i<net.size(); i++) {
+				for(int j=0; j<net.size(); j++) {
+					assertEquals(reference.getDistance(i, j), net.getDistance(i, j));
+				}
+			}
+			File[] files = cacheDir.listFiles();
+			assertEquals(1, files.length);
+
+			if(run == 1) {
+				// truncated file: distances are computed and cached again
+				FileOutputStream out = new FileOutputStream(files[0], true);
+				try {
+					out.getChannel().truncate(files[0].length() / 2);
+				} finally {
+					out.close();
+				}
+			}
+		}
 	}
 
 	@Test
@@ -284,6 +512,26 @@ public class TestNetwork {
 			Arrays.toString(found);
 		}
 
+		System.out.println("--- status and closeness interaction iterator ---");
+
+		// status and distance interaction iterator
+		for(int i=0; i<24; i++)
+		{
+			foundSum = 0;
+			Agent listener = net.getAgentAtNode(i);
+			Iterator<Agent> it = net.getSpeakerIterator(listener, Type.byStatusAndDistance);
+			assertTrue(it.hasNext());
+			while(it.hasNext()) {
+				Agent speaker = it.next();
+				assertTrue( possibleSpeakers[speaker.getNodeId()] );
+				assertNotSame(listener, speaker);
+				assertTrue( speaker.getStatus() > 0.0 );
+				assertTrue( net.getSocialCloseness(listener, speaker) > 0.0 );
+				foundSum++;
+			}
+			assertEquals(numTeachers, foundSum);
+		}
+
 		System.out.println("--- closeness interaction iterator ---");
 
 		int maxDist = net.getMaximumDistance();
@@ -399,4 +647,115 @@ public class TestNetwork {
 		}
 	}
 
+
+	@Test
+	public void testSpeakerDistribution()
+	{
+		System.out.println("**** TestNetwork.testSpeakerDistribution ****");
+
+		Configuration conf = Configuration.init();
+
+		Network net = Network.readEdgelistCSV(conf, new File("testdata/edges_par_4x3x2.csv"));
+		Exemplar[] lex = Lexicon.readCSV(conf, new File("testdata/exemplar_prototypes.csv"), 2);
+		Agent[] pop = PopulationFactory.readCSV(conf, new File("testdata/agents_0-23_set001.csv"), lex[0], lex[1]);
+		net.setAgents(pop);
+
+		int draws = 20000;
+		for(Type type : new Type[]{Type.byDistance, Type.byStatusAndDistance}) {
+			for(int i : new int[]{0, 7}) {
+				Agent listener = net.getAgentAtNode(i);
+
+				// expected: closeness (times status) of all speakers
+				double[] expected = new double[24];
+				double sum = 0.0;
+				for(int j=0; j<24; j++) {
+					Agent a = net.getAgentAtNode(j);
+					if(j==i || a.getAge()==0) {
+						continue;
+					}
+					expected[j] = net.getSocialCloseness(listener, a);
+					if(type==Type.byStatusAndDistance) {
+						expected[j] *= Math.min(1.0, Math.max(0.0, a.getStatus()));
+					}
+					sum += expected[j];
+				}
+
+				double[] found = new double[24];
+				int total = 0;
+				for(int k=0; k<draws; k++) {
+					Iterator<Agent> it = net.getSpeakerIterator(listener, type);
+					while(it.hasNext()) {
+						found[it.next().getNodeId()]++;
+						total++;
+					}
+				}
+				for(int j=0; j<24; j++) {
+					if(expected[j] == 0.0) {
+						assertEquals(0.0, found[j], 0.0);
+					} else {
+						assertEquals(expected[j] / sum, found[j] / total, 0.01);
+					}
+				}
+			}
+		}
+	}
+
+
+	@Test
+	public void testSpeakerIndexChurn()
+	{
+		System.out.println("**** TestNetwork.testSpeakerIndexChurn ****");
+
+		Configuration conf = Configuration.init();
+
+		final Network net = Network.readEdgelistCSV(conf, new File("testdata/edges_par_4x3x2.csv"));
+		Exemplar[] lex = Lexicon.readCSV(conf, new File("testdata/exemplar_prototypes.csv"), 2);
+		Agent[] pop = PopulationFactory.readCSV(conf, new File("testdata/agents_0-23_set001.csv"), lex[0], lex[1]);
+		net.setAgents(pop);
+
+		// more than two lifespans: every agent is replaced and becomes a speaker again
+		int testEpochs = 2 * conf.getMaxLifespan() + 2;
+		for(int epoch=0; epoch<testEpochs; epoch++) {
+			for(int i=0; i<24; i++) {
+				final int listenerNode = i;
+				Agent listener = net.getAgentAtNode(i);
+
+				// expected order of byDistanceDet: speakers by distance and node ID
+				ArrayList<Integer> speakers = new ArrayList<Integer>();
+				for(int j=0; j<24; j++) {
+					if(j!=i && net.getAgentAtNode(j).getAge()>0) {
+						speakers.add(j);
+					}
+				}
+				Collections.sort(speakers, new Comparator<Integer>() {
+					@Override
+					public int compare(Integer a, Integer b) {
+						int c = net.getDistance(listenerNode, a) - net.getDistance(listenerNode, b);
+						return c!=0 ? c : a.compareTo(b);
+					}
+				});
+				Iterator<Agent> it = net.getSpeakerIterator(listener, Type.byDistanceDet);
+				int k = 0;
+				while(it.hasNext()) {
+					assertEquals(speakers.get(k % speakers.size()).intValue(), it.next().getNodeId());
+					k++;
+				}
+				assertEquals(conf.getNumberOfTeachers(), k);
+
+				for(Type type : new Type[]{Type.regular, Type.byDistance, Type.byStatus, Type.byStatusAndDistance}) {
+					it = net.getSpeakerIterator(listener, type);
+					k = 0;
+					while(it.hasNext()) {
+						Agent speaker = it.next();
+						assertTrue(speaker.getAge()>0);
+						assertNotSame(listener, speaker);
+						k++;
+					}
+					assertEquals(conf.getNumberOfTeachers(), k);
+				}
+			}
+			net.incrementEpoch();
+		}
+	}
+
 }
@@ -3,6 +3,8 @@ package sfb732.kamoso.junit;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.util.Iterator;
+import java.util.Properties;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -16,6 +18,7 @@ import sfb732.kamoso.net.NetworkFactory;
 import sfb732.kamoso.net.NetworkType;
 import sfb732.kamoso.pop.Agent;
 import sfb732.kamoso.pop.PopulationFactory;
+import sfb732.kamoso.pop.Interaction.Type;
 
 public class TestNetworkFactory {
 
@@ -315,6 +318,59 @@ public class TestNetworkFactory {
 
 
 
+	@Test
+	public void testMakeSmallWorldTorusSeed() {
+		System.out.println("**** TestNetworkFactory.testMakeSmallWorldTorusSeed ****");
+		Properties prop = new Properties();
+		prop.setProperty("random.seed", "4711");
+		File outDir = new File(Configuration.DEFAULT_OUPUT_DIR);
+
+		// reproducible with the random seed
+		AdjacencyMatrix a = NetworkFactory.makeTopology(Configuration.init(null, outDir, prop), NetworkType.swTorus, 40, 10, 0, 0.2);
+		AdjacencyMatrix b = NetworkFactory.makeTopology(Configuration.init(null, outDir, prop), NetworkType.swTorus, 40, 10, 0, 0.2);
+		assertEquals(a, b);
+		assertFalse(a.equals(NetworkFactory.makeTopology(Configuration.init(), NetworkType.swTorus, 40, 10, 0, 0.2)));
+
+		// all edges re-wired: components are joined again
+		Configuration conf = Configuration.init(null, outDir, prop);
+		for(int attempt=0; attempt<50; attempt++) {
+			Network net = NetworkFactory.makeSmallWorldTorus(conf, 4, 3, 1.0);
+			assertTrue(checkConnectedness(net, 12));
+		}
+	}
+
+
+	@Test
+	public void testSmallWorldRewiringRate() {
+		System.out.println("**** TestNetworkFactory.testSmallWorldRewiringRate ****");
+		Properties prop = new Properties();
+		prop.setProperty("random.seed", "4711");
+		Configuration conf = Configuration.init(null, new File(Configuration.DEFAULT_OUPUT_DIR), prop);
+		double p = 0.2;
+
+		AdjacencyMatrix reg = NetworkFactory.makeTopology(conf, NetworkType.regTorus, 100, 100, 0, p);
+		AdjacencyMatrix sw  = NetworkFactory.makeTopology(conf, NetworkType.swTorus, 100, 100, 0, p);
+
+		// each end of an edge is re-wired with probability p
+		int edges = 0;
+		int rewired = 0;
+		for(int i=0; i<reg.size(); i++) {
+			for(int k=0; k<reg.getDegree(i); k++) {
+				int j = reg.getNeighbor(i, k);
+				if(j > i) {
+					edges++;
+					if(! sw.isConnected(i, j)) {
+						rewired++;
+					}
+				}
+			}
+		}
+		double rate = (double)rewired / (double)edges;
+		System.out.printf(" - rewired %d of %d edges: %.4f\n", rewired, edges, rate);
+		assertEquals(1.0 - (1.0-p)*(1.0-p), rate, 0.02);
+	}
+
+
 	@Test
 	public void testMakeParochialSmallWorld()
 	{
@@ -355,6 +411,120 @@ public class TestNetworkFactory {
 	}
 
 
+	@Test
+	public void testMakeParochialTorus()
+	{
+		System.out.println("**** TestNetworkFactory.testMakeParochialTorus ****");
+		int ncols = 10;
+		int nrows = 10;
+		int pars  = 4;
+
+		int n = ncols * nrows * pars;
+		Configuration conf = Configuration.init();
+		Network net = NetworkFactory.makeNetwork(conf, NetworkType.parTorus, ncols, nrows, pars, 0.0, null);
+		assertNotNull(net);
+		assertEquals(n, net.size());
+		assertEquals(NetworkType.parTorus, net.getType());
+
+		assertTrue(checkConnectedness(net, n));
+
+		// regular grids with one edge between neighboring parishes
+		int between = 0;
+		for(int i=0; i<n; i++) {
+			for(int k=0; k<net.getDegree(i); k++) {
+				int j = net.getNeighbor(i, k);
+				if(i/100 != j/100) {
+					between++;
+					assertTrue(Math.abs(i/100 - j/100) == 1 || Math.abs(i/100 - j/100) == pars-1);
+				}
+			}
+		}
+		assertEquals(2 * pars, between);
+	}
+
+
+	@Test
+	public void testMakeRandom()
+	{
+		System.out.println("**** TestNetworkFactory.testMakeRandom ****");
+		Configuration conf = Configuration.init();
+
+		// sparse: many components are joined
+		int n = 500;
+		Network net = NetworkFactory.makeNetwork(conf, NetworkType.random, 50, 10, 0, 0.002, null);
+		assertEquals(n, net.size());
+		assertEquals(NetworkType.random, net.getType());
+		assertTrue(checkConnectedness(net, n));
+
+		// dense: number of edges close to the expected number
+		net = NetworkFactory.makeRandom(conf, n, 0.2);
+		assertTrue(checkConnectedness(net, n));
+		long edges = 0;
+		for(int i=0; i<n; i++) {
+			assertFalse(net.isConnected(i, i));
+			edges += net.getDegree(i);
+			for(int k=0; k<net.getDegree(i); k++) {
+				assertTrue(net.isConnected(net.getNeighbor(i, k), i));
+			}
+		}
+		double expected = 0.2 * n * (n-1);
+		assertEquals(expected, edges, 5 * Math.sqrt(expected));
+
+		// no edges at all: a tree
+		net = NetworkFactory.makeRandom(conf, 100, 0.0);
+		assertTrue(checkConnectedness(net, 100));
+
+		// all edges
+		net = NetworkFactory.makeRandom(conf, 50, 1.0);
+		assertEquals(1, net.getMaximumDistance());
+	}
+
+
+	@Test
+	public void testMakeFull()
+	{
+		System.out.println("**** TestNetworkFactory.testMakeFull ****");
+		Configuration conf = Configuration.init();
+
+		// large networks are not materialized
+		Network net = NetworkFactory.makeFull(conf, 200000);
+		assertEquals(200000, net.size());
+		assertEquals(NetworkType.full, net.getType());
+		assertEquals(1, net.getDistance(0, 199999));
+		assertEquals(AdjacencyMatrix.NO_CONNECTION, net.getDistance(7, 7));
+		assertEquals(1, net.getMaximumDistance());
+		assertEquals(1.0, net.getMeanDistance(), 0.0);
+		assertEquals(199999, net.getDegree(5));
+		assertEquals(4, net.getNeighbor(5, 4));
+		assertEquals(6, net.getNeighbor(5, 5));
+
+		Agent[] agents = PopulationFactory.readCSV(conf, agents4x3, prototypeA, prototypeB);
+		net = NetworkFactory.makeNetwork(conf, NetworkType.full, 4, 3, 0, 0.0, agents);
+		assertTrue(checkConnectedness(net, 12));
+		for(Agent listener : agents) {
+			// deterministic order: ascending node IDs
+			int t = 0;
+			Iterator<Agent> it = net.getSpeakerIterator(listener, Type.byDistanceDet);
+			while(it.hasNext()) {
+				int expected = t % 11;
+				if(expected >= listener.getNodeId()) {
+					expected++;
+				}
+				assertEquals(expected, it.next().getNodeId());
+				t++;
+			}
+			assertEquals(conf.getNumberOfTeachers(), t);
+
+			for(Type type : new Type[]{Type.byDistance, Type.byStatusAndDistance}) {
+				it = net.getSpeakerIterator(listener, type);
+				while(it.hasNext()) {
+					assertNotSame(listener, it.next());
+				}
+			}
+		}
+	}
+
+
 	@Test
 	public void testMakeNetwork()
 	{
@@ -0,0 +1,70 @@
+package sfb732.kamoso.mem;
+
+
+/**
+ * Distance computations of one feature vector against a block of exemplars
+ * stored in a dimension-major feature matrix (see {@link Lexicon}).
+ * <p>
+ * The inner loops run over consecutive exemplars of one dimension with unit
+ * stride and without branches, which allows the JIT compiler to use SIMD
+ * instructions where the hardware supports them, and plain scalar code
+ * otherwise. The order of floating point operations per exemplar is the same
+ * as in {@link sfb732.kamoso.util.MyMathHelper#getEuclideanDistanceSq(double[], double[])},
+ * so the results are identical.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+public final class DistanceKernel {
+
+	/** number of exemplars processed per block */
+	public static final int BLOCK = 64;
+
+
+	private DistanceKernel() {
+	}
+
+
+	/**
+	 * Compute the squared Euclidean distances between x and the exemplars
+	 * <code>from</code> to <code>from+len-1</code>.
+	 * @param features -- dimension-major matrix: <code>features[d*stride + i]</code>
+	 *   is feature d of exemplar i
+	 * @param stride   -- number of exemplars per dimension in the matrix
+	 * @param dim      -- number of dimensions
+	 * @param from     -- first exemplar
+	 * @param len      -- number of exemplars, at most the length of out
+	 * @param x        -- feature vector
+	 * @param out      -- output: squared distances
+	 */
+	public static void squaredDistances(double[] features, int stride, int dim,
+			int from, int len, double[] x, double[] out)
+	{
+		double x0 = x[0];
+		for(int b=0; b<len; b++) {
+			double diff = x0 - features[from + b];
+			out[b] = diff * diff;
+		}
+		for(int d=1; d<dim; d++) {
+			double xd = x[d];
+			int off = d * stride + from;
+			for(int b=0; b<len; b++) {
+				double diff = xd - features[off + b];
+				out[b] += diff * diff;
+			}
+		}
+	}
+
+
+	/**
+	 * Replace squared distances by distances.
+	 * @param out
+	 * @param len
+	 */
+	public static void sqrt(double[] out, int len)
+	{
+		for(int b=0; b<len; b++) {
+			out[b] = Math.sqrt(out[b]);
+		}
+	}
+
+}
@@ -1,8 +1,12 @@
 package sfb732.kamoso.mem;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
 import sfb732.kamoso.conf.Configuration;
 import sfb732.kamoso.pop.Agent;
 import sfb732.kamoso.pop.Agent.Gender;
+import sfb732.kamoso.util.CSVEncoder;
 import sfb732.kamoso.util.MyMathHelper;
 
 
@@ -161,19 +165,68 @@ public class Exemplar {
 
 
 	public String getCSV() {
-		StringBuilder sb = new StringBuilder();
-		sb.append(this.type.toString());
-		sb.append(',');
-		sb.append(String.format(Configuration.DEFAULT_LOCALE, "%f", this.status));
-		sb.append(',');
-		sb.append(this.gender.toString());
-		sb.append(',');
-		sb.append(String.format(Configuration.DEFAULT_LOCALE, "%f", this.closeness));
-		for(int i=0; i<this.phonFeatures.length; i++) {
-			sb.append(',');
-			sb.append(String.format(Configuration.DEFAULT_LOCALE,"%f", this.phonFeatures[i]));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		CSVEncoder out = new CSVEncoder(bytes);
+		try {
+			this.writeCSV(out);
+			out.finish();
+			return bytes.toString(Configuration.DEFAULT_ENCODING);
+		} catch (IOException e) {
+			// not thrown by ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+	/**
+	 * Append the CSV header, see {@link #getCSVHead()}, without line break.
+	 * @param out
+	 * @param dim -- number of phonetic dimensions
+	 * @throws IOException
+	 */
+	public static void writeCSVHead(CSVEncoder out, int dim) throws IOException
+	{
+		out.append("type,speaker_status,speaker_gender,closeness");
+		for(int i=0; i<dim; i++) {
+			out.append(",phon_").append(i);
+		}
+	}
+
+
+	/**
+	 * Append this exemplar as a CSV row, see {@link #getCSV()}, without
+	 * line break.
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeCSV(CSVEncoder out) throws IOException {
+		writeCSV(out, this.type, this.status, this.gender, this.closeness, this.phonFeatures, 0, 1, this.phonFeatures.length);
+	}
+
+
+	/**
+	 * Append the attributes of an exemplar as a CSV row, without line break.
+	 * @param out
+	 * @param type
+	 * @param status
+	 * @param gender
+	 * @param closeness
+	 * @param features -- phonetic features, feature d at from + d*stride
+	 * @param from
+	 * @param stride
+	 * @param dim -- number of phonetic dimensions
+	 * @throws IOException
+	 */
+	static void writeCSV(CSVEncoder out, Type type, double status, Gender gender, double closeness,
+			double[] features, int from, int stride, int dim) throws IOException
+	{
+		out.append(type.toString()).append(',');
+		out.appendFixed(status, 6).append(',');
+		out.append(gender.toString()).append(',');
+		out.appendFixed(closeness, 6);
+		for(int dx=0; dx<dim; dx++) {
+			out.append(',').appendFixed(features[from + dx*stride], 6);
 		}
-		return sb.toString();
 	}
 
 
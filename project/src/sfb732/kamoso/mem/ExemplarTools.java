@@ -2,7 +2,9 @@ package sfb732.kamoso.mem;
 
 import sfb732.kamoso.conf.Configuration;
 import sfb732.kamoso.pop.Agent;
+import sfb732.kamoso.util.FastExp;
 import sfb732.kamoso.util.MyMathHelper;
+import sfb732.kamoso.util.RandomStream;
 
 
 
@@ -21,8 +23,11 @@ public class ExemplarTools {
 	private final double WEIGHTSUM;
 
 	private final double thDELTA;
+	private final double thDELTA2;
 	private final double thACTIVATION;
 
+	private final FastExp fastExp;// null unless fast math is enabled
+
 
 	/**
 	 * Constructor.
@@ -35,7 +40,18 @@ public class ExemplarTools {
 		GAMMA = conf.getExemplarSimilarityWeightGamma();
 		WEIGHTSUM    = ALPHA + BETA + GAMMA;
 		thDELTA      = conf.getExemplarDeltaThreshold();
+		thDELTA2     = thDELTA * thDELTA;
 		thACTIVATION = Math.exp(-thDELTA);
+		fastExp      = conf.isFastMath() ? new FastExp(thDELTA) : null;
+	}
+
+
+	/**
+	 * @return the approximation of exp(-x), or <code>null</code> if fast
+	 *   math is disabled in the configuration
+	 */
+	public FastExp getFastExp() {
+		return this.fastExp;
 	}
 
 
@@ -60,14 +76,15 @@ public class ExemplarTools {
 	 * are deleted by this method.
 	 * @param speaker
 	 * @param orig
+	 * @param rand -- random stream of the calling thread
 	 * @return
 	 */
-	public Exemplar getNoisyCopy(Agent speaker, Exemplar orig)
+	public Exemplar getNoisyCopy(Agent speaker, Exemplar orig, RandomStream rand)
 	{
 		double[] phonFeatures = new double[orig.phonFeatures.length];
 		for(int i=0; i<phonFeatures.length; i++)
 		{
-			phonFeatures[i] = orig.phonFeatures[i] + this.conf.randomNoise();
+			phonFeatures[i] = orig.phonFeatures[i] + this.conf.randomNoise(rand);
 		}
 		return new Exemplar(orig.type, speaker.getStatus(), speaker.getGender(), Double.NaN, phonFeatures, Double.NaN);
 	}
@@ -84,14 +101,52 @@ public class ExemplarTools {
 	 */
 	public double getScore(Exemplar candidate, Exemplar reference)
 	{
+		if(null!=this.fastExp) {
+			double d2 = MyMathHelper.getEuclideanDistanceSq(candidate.phonFeatures, reference.phonFeatures);
+			return this.getScoreSq(d2, candidate.socialScores);
+		}
 		double d = MyMathHelper.getEuclideanDistance(candidate.phonFeatures, reference.phonFeatures);
+		return this.getScore(d, candidate.socialScores);
+	}
+
+
+	/**
+	 * Compute the score of a candidate exemplar from its phonetic distance to
+	 * the reference and its pre-computed social scores.
+	 * @param d -- phonetic distance between candidate and reference
+	 * @param socialScores -- social scores of the candidate
+	 * @return a score in the range [0.0 ... 1.0]
+	 */
+	public double getScore(double d, double socialScores)
+	{
 		// try speeding things up:
 		double scoreA = d < thDELTA ? (Math.exp(-d)*ALPHA) : thACTIVATION;
-		double s = ( scoreA + candidate.socialScores  ) / WEIGHTSUM;
+		double s = ( scoreA + socialScores  ) / WEIGHTSUM;
 		return s;
 	}
 
 
+	/**
+	 * Compute the score of a candidate exemplar from its squared phonetic
+	 * distance to the reference. The distance threshold is tested on the
+	 * squared distance, so the square root is only taken for candidates
+	 * below the threshold. If fast math is enabled, exp() is approximated
+	 * (see {@link FastExp}); otherwise the result equals
+	 * {@link #getScore(double, double)}.
+	 * @param d2 -- squared phonetic distance between candidate and reference
+	 * @param socialScores -- social scores of the candidate
+	 * @return a score in the range [0.0 ... 1.0]
+	 */
+	public double getScoreSq(double d2, double socialScores)
+	{
+		if(null==this.fastExp) {
+			return this.getScore(Math.sqrt(d2), socialScores);
+		}
+		double scoreA = d2 < thDELTA2 ? (this.fastExp.expNeg(Math.sqrt(d2))*ALPHA) : thACTIVATION;
+		return ( scoreA + socialScores  ) / WEIGHTSUM;
+	}
+
+
 	public double getSocialSchores(double status, double closeness) {
 		return (BETA*status) + (GAMMA*closeness);
 	}
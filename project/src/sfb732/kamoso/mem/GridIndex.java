@@ -0,0 +1,199 @@
+package sfb732.kamoso.mem;
+
+import java.util.Arrays;
+
+
+/**
+ * Uniform grid over the phonetic space of a {@link Lexicon}, used to find
+ * the exemplars within an epsilon radius of a stimulus.
+ * <p>
+ * The side length of the grid cells equals epsilon, so all exemplars within
+ * distance epsilon of a point lie in the point's cell or in one of the
+ * adjacent cells (3<sup>DIM</sup> cells in total). Cells are hashed into a
+ * table of buckets; each bucket is a doubly linked list of lexicon slots, so
+ * that slots can be removed in O(1) when the ring buffer evicts an exemplar.
+ * Different cells may share a bucket, i.e. the candidates returned by
+ * {@link #getCandidates(double[], int[])} must still be checked for their
+ * actual distance.
+ * <p>
+ * This index reads the features from the dimension-major feature matrix of
+ * the lexicon and is not thread-safe.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+class GridIndex {
+
+	private static final int NONE = -1;
+
+	private final double[] features;
+	private final int capacity;
+	private final int dim;
+	private final double cellSize;
+
+	private final int mask;
+	private final int[] head;// first slot per bucket
+	private final int[] next;// per slot
+	private final int[] prev;// per slot
+	private final int[] bucket;// per slot, NONE if not indexed
+
+	private final int[] visited;// query stamp per bucket
+	private int stamp = 0;
+
+	private final long[] cell;// scratch: cell of the query point
+	private final int[] offset;// scratch: offset of the current neighbour cell
+
+
+	/**
+	 * @param features -- dimension-major feature matrix of the lexicon
+	 * @param capacity -- capacity of the lexicon
+	 * @param dim      -- number of phonetic dimensions
+	 * @param cellSize -- side length of grid cells (epsilon)
+	 */
+	GridIndex(double[] features, int capacity, int dim, double cellSize)
+	{
+		if(!(cellSize > 0.0)) {
+			throw new IllegalArgumentException("Grid cell size must be positive");
+		}
+		this.features = features;
+		this.capacity = capacity;
+		this.dim      = dim;
+		this.cellSize = cellSize;
+
+		int buckets = Integer.highestOneBit(Math.max(1, capacity)) << 1;
+		this.mask    = buckets - 1;
+		this.head    = new int[buckets];
+		this.visited = new int[buckets];
+		this.next    = new int[capacity];
+		this.prev    = new int[capacity];
+		this.bucket  = new int[capacity];
+		Arrays.fill(this.head, NONE);
+		Arrays.fill(this.bucket, NONE);
+
+		this.cell   = new long[dim];
+		this.offset = new int[dim];
+	}
+
+
+	/**
+	 * Get the number of cells visited by a query, i.e. 3<sup>DIM</sup> (or
+	 * {@link Integer#MAX_VALUE} if that is larger).
+	 * @return a positive integer
+	 */
+	int getCellsPerQuery()
+	{
+		long n = 1;
+		for(int d=0; d<this.dim && n<Integer.MAX_VALUE; d++) {
+			n *= 3;
+		}
+		return (int) Math.min(n, Integer.MAX_VALUE);
+	}
+
+
+	/**
+	 * Add a slot to the index. The features of the slot must already be
+	 * stored in the feature matrix.
+	 * @param slot
+	 */
+	void insert(int slot)
+	{
+		for(int d=0; d<this.dim; d++) {
+			this.cell[d] = this.getCell(this.features[d*this.capacity + slot]);
+			this.offset[d] = 0;
+		}
+		int b = this.getBucket();
+		int h = this.head[b];
+		this.next[slot] = h;
+		this.prev[slot] = NONE;
+		if(h != NONE) {
+			this.prev[h] = slot;
+		}
+		this.head[b] = slot;
+		this.bucket[slot] = b;
+	}
+
+
+	/**
+	 * Remove a slot from the index (no-op if the slot is not indexed).
+	 * @param slot
+	 */
+	void remove(int slot)
+	{
+		int b = this.bucket[slot];
+		if(b == NONE) {
+			return;
+		}
+		int p = this.prev[slot];
+		int n = this.next[slot];
+		if(p == NONE) {
+			this.head[b] = n;
+		} else {
+			this.next[p] = n;
+		}
+		if(n != NONE) {
+			this.prev[n] = p;
+		}
+		this.bucket[slot] = NONE;
+	}
+
+
+	/**
+	 * Collect all slots in the cells adjacent to the cell of point x.
+	 * @param x   -- query point
+	 * @param out -- output: candidate slots (length at least capacity)
+	 * @return number of candidates in <code>out</code>
+	 */
+	int getCandidates(double[] x, int[] out)
+	{
+		if(++this.stamp == 0) {
+			// stamp overflow: reset
+			Arrays.fill(this.visited, 0);
+			this.stamp = 1;
+		}
+		for(int d=0; d<this.dim; d++) {
+			this.cell[d] = this.getCell(x[d]);
+			this.offset[d] = -1;
+		}
+		int num = 0;
+		while(true) {
+			int b = this.getBucket();
+			if(this.visited[b] != this.stamp) {
+				this.visited[b] = this.stamp;
+				for(int slot=this.head[b]; slot!=NONE; slot=this.next[slot]) {
+					out[num++] = slot;
+				}
+			}
+			// next neighbour cell (odometer over offsets -1, 0, 1)
+			int d = 0;
+			while(d < this.dim && this.offset[d] == 1) {
+				this.offset[d] = -1;
+				d++;
+			}
+			if(d == this.dim) {
+				break;
+			}
+			this.offset[d]++;
+		}
+		return num;
+	}
+
+
+	private long getCell(double x) {
+		return (long) Math.floor(x / this.cellSize);
+	}
+
+
+	/**
+	 * @return bucket of the cell at {@link #cell} + {@link #offset}
+	 */
+	private int getBucket()
+	{
+		long h = 0;
+		for(int d=0; d<this.dim; d++) {
+			h = (h + this.cell[d] + this.offset[d]) * 0x9e3779b97f4a7c15L;
+		}
+		h ^= (h >>> 32);
+		h ^= (h >>> 16);
+		return (int) h & this.mask;
+	}
+
+}
@@ -1,11 +1,9 @@
 package sfb732.kamoso.mem;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.util.ConcurrentModificationException;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -19,7 +17,9 @@ import sfb732.kamoso.conf.Configuration;
 import sfb732.kamoso.mem.Exemplar.Type;
 import sfb732.kamoso.pop.Agent;
 import sfb732.kamoso.util.MyFileHelper;
+import sfb732.kamoso.util.FastExp;
 import sfb732.kamoso.util.MyMathHelper;
+import sfb732.kamoso.util.RandomStream;
 
 
 /**
@@ -96,11 +96,9 @@ public class Lexicon implements Iterable<Exemplar> {
 		Exemplar[] lex = new Exemplar[capacity];
 
 		if(size>0) {
-			boolean[] typeA = MyMathHelper.getRandomFlags(size, ratioA);
-
 			for(int i=0; i<size; i++)
 			{
-				if(typeA[i]){
+				if(conf.randomDouble() < ratioA){
 					lex[i] = et.getNoisyCopy(prototypeA);
 				} else {
 					lex[i] = et.getNoisyCopy(prototypeB);
@@ -230,15 +228,46 @@ public class Lexicon implements Iterable<Exemplar> {
 
 	private final double MIN_SIM;
 	private final double thDELTA;
+	private final double thDELTA2;
 	private final double thACTIVATION;
+	private final FastExp fastExp;// null unless fast math is enabled
 	private final int DIM;
 
-	private final Exemplar[] exemplars;
+	private static final Type[] TYPES = Type.values();
+	private static final byte TYPE_A = (byte) Type.A.ordinal();
+	private static final byte TYPE_B = (byte) Type.B.ordinal();
+	private static final Agent.Gender[] GENDERS = Agent.Gender.values();
+
+	// exemplar storage: one primitive array per exemplar attribute, indexed
+	// by ring position (slot). Occupied slots are always 0..size-1.
+	private final int capacity;
+	private final double[] features;// dimension-major: features[d*capacity + slot]
+	private final byte[] types;// ordinal of Exemplar.Type, -1 for null
+	private final byte[] genders;// ordinal of Agent.Gender, -1 for null
+	private final double[] statuses;
+	private final double[] closenesses;
+	private final double[] socialScores;
+
 	private int size = 0;// current number of contained words;
+
+	// scratch space for block-wise distance computations (not thread-safe)
+	private final double[] block = new double[DistanceKernel.BLOCK];
+
+	// spatial index for the epsilon similarity (null for global similarity)
+	private final GridIndex grid;
+	private final int[] candidates;
 	private int start;// inclusive
 	private long modCountA = Long.MIN_VALUE+1;
 	private long modCountB = Long.MIN_VALUE+1;
 
+	// running aggregates, updated on insert and eviction:
+	private int numA = 0;
+	private int numB = 0;
+	private final double[] sumA;
+	private final double[] sumB;
+	private int writesSinceSync = 0;
+	private long writes = 0L;// total number of added exemplars
+
 	// generated:
 	private double[] scores;
 	private long scoresStampA = Long.MIN_VALUE;
@@ -252,12 +281,23 @@ public class Lexicon implements Iterable<Exemplar> {
 	private Exemplar centroidBExemplar;
 	private long centroidBStamp = Long.MIN_VALUE;
 
+	// frozen speaker view (see freeze()):
+	private boolean frozen = false;
+	private int frozenSize;
+	private double[] frozenCdf;// cumulative scores of ring positions 0..frozenSize-1
+	private Exemplar[] frozenWindow;
+	private int frozenWindowStart;
+	private int frozenWindowLength;
+	private int frozenWrites;
+	private int frozenMaxWrites;
+
 
 
 	/**
 	 * Constructor.
 	 * The capacity of this lexicon will be equal to the length of the provided
-	 * array.
+	 * array. The exemplars are copied into the internal storage; the array
+	 * is not retained.
 	 * @param conf -- the current configuration
 	 * @param exemplars -- the lexicon contents
 	 */
@@ -266,22 +306,35 @@ public class Lexicon implements Iterable<Exemplar> {
 		this.conf         = conf;
 		this.MIN_SIM      = this.conf.getExemplarSimilarityMinimum();
 		this.thDELTA      = conf.getExemplarDeltaThreshold();
+		this.thDELTA2     = thDELTA * thDELTA;
 		this.thACTIVATION = Math.exp(-thDELTA);
-		this.DIM          = conf.getExemplarPhonDim();
-
-		this.exemplars = exemplars;
+		this.fastExp      = conf.getFastExp();
+		// the number of phonetic dimensions is taken from the contents, if any
+		this.DIM          = (exemplars.length > 0 && null!=exemplars[0]) ? exemplars[0].phonFeatures.length : conf.getExemplarPhonDim();
+
+		this.capacity     = exemplars.length;
+		this.features     = new double[this.capacity * DIM];
+		this.types        = new byte[this.capacity];
+		this.genders      = new byte[this.capacity];
+		this.statuses     = new double[this.capacity];
+		this.closenesses  = new double[this.capacity];
+		this.socialScores = new double[this.capacity];
 
 		// determine actual lexicon size:
 		this.start = 0;
-		for(int i=0; i<this.exemplars.length; i++)
+		for(int i=0; i<exemplars.length; i++)
 		{
-			if(null==this.exemplars[i]){
+			if(null==exemplars[i]){
 				break;
 			} else {
 				// current exemplar is not NULL
+				this.store(i, exemplars[i]);
 				this.size++;
 			}
 		}
+		this.sumA = new double[DIM];
+		this.sumB = new double[DIM];
+		this.syncAggregates();
 
 		Perception.Type pt = conf.getPerceptionType();
 		switch (pt) {
@@ -303,17 +356,106 @@ public class Lexicon implements Iterable<Exemplar> {
 		} else {
 			this.epsilon = Double.NaN;
 		}
+
+		if(this.simType==Similarity.epsilon && this.epsilon > 0.0 && this.capacity > 0) {
+			this.grid = new GridIndex(this.features, this.capacity, DIM, this.epsilon);
+			this.candidates = new int[this.capacity];
+			for(int i=0; i<this.size; i++) {
+				this.grid.insert(i);
+			}
+		} else {
+			this.grid = null;
+			this.candidates = null;
+		}
 	}
 
 
 	public int getCapacity() {
-		return this.exemplars.length;
+		return this.capacity;
 	}
 
 	public int size() {
 		return this.size;
 	}
 
+	/**
+	 * @return number of phonetic dimensions of the exemplars
+	 */
+	public int getDimensions() {
+		return this.DIM;
+	}
+
+
+
+	// ===================================================================
+	//                                                             STORAGE
+	// ===================================================================
+
+	private static byte toByte(Type t) {
+		return null==t ? -1 : (byte) t.ordinal();
+	}
+
+
+	private Type getType(int slot) {
+		byte t = this.types[slot];
+		return t < 0 ? null : TYPES[t];
+	}
+
+
+	/**
+	 * Copy the attributes of e into the given slot.
+	 * @param slot
+	 * @param e
+	 */
+	private void store(int slot, Exemplar e)
+	{
+		if(e.phonFeatures.length != DIM) {
+			throw new IllegalArgumentException(String.format("Exemplar has %d phonetic dimensions, lexicon has %d", e.phonFeatures.length, DIM));
+		}
+		this.types[slot]        = toByte(e.type);
+		this.genders[slot]      = null==e.gender ? -1 : (byte) e.gender.ordinal();
+		this.statuses[slot]     = e.status;
+		this.closenesses[slot]  = e.closeness;
+		this.socialScores[slot] = e.socialScores;
+		for(int dx=0; dx<DIM; dx++) {
+			this.features[dx*this.capacity + slot] = e.phonFeatures[dx];
+		}
+	}
+
+
+	/**
+	 * Materialize the exemplar stored in the given slot.
+	 * @param slot
+	 * @return a new {@link Exemplar} instance
+	 */
+	private Exemplar getExemplar(int slot)
+	{
+		double[] phon = new double[DIM];
+		for(int dx=0; dx<DIM; dx++) {
+			phon[dx] = this.features[dx*this.capacity + slot];
+		}
+		byte g = this.genders[slot];
+		return new Exemplar(this.getType(slot), this.statuses[slot], g < 0 ? null : GENDERS[g],
+				this.closenesses[slot], phon, this.socialScores[slot]);
+	}
+
+
+	/**
+	 * Get the Euclidean distance between the exemplar stored in the given slot
+	 * and a feature vector.
+	 * @param slot
+	 * @param x
+	 * @return a non-negative double
+	 */
+	private double getDistance(int slot, double[] x)
+	{
+		double d = 0.0;
+		for(int dx=0, ix=slot; dx<DIM; dx++, ix+=this.capacity) {
+			double diff = x[dx] - this.features[ix];
+			d += (diff * diff);
+		}
+		return Math.sqrt(d);
+	}
 
 
 	// ===================================================================
@@ -332,6 +474,33 @@ public class Lexicon implements Iterable<Exemplar> {
 	}
 
 
+	/**
+	 * Get lexicon similarities of the given stimulus to the exemplars of type
+	 * {@link Type#A} and {@link Type#B} in one pass over this lexicon. This
+	 * uses the similarity function specified by the current configuration.
+	 * @param stimulus
+	 * @param sim -- output: <code>sim[0]</code> is the similarity to type A,
+	 *   <code>sim[1]</code> the similarity to type B
+	 */
+	public void getSimilarities(Exemplar stimulus, double[] sim)
+	{
+		switch (this.simType) {
+		case global:
+			this.getSimilaritiesG(stimulus, TYPE_A, TYPE_B, sim);
+			break;
+
+		case epsilon:
+			this.getSimilaritiesN(stimulus, epsilon, sim);
+			break;
+
+		default:
+			sim[0] = Double.NaN;
+			sim[1] = Double.NaN;
+			break;
+		}
+	}
+
+
 	/**
 	 * Get lexicon similarity of the given stimulus to exemplars of the
 	 * specified type. This uses the similarity function specified by the
@@ -381,28 +550,59 @@ public class Lexicon implements Iterable<Exemplar> {
 	 * @return the similarity between 0 and 1
 	 */
 	public double getSimilarityG(Exemplar stimulus, Exemplar.Type type)
+	{
+		double[] sim = new double[2];
+		byte t = toByte(type);
+		this.getSimilaritiesG(stimulus, t, t, sim);
+		return sim[0];
+	}
+
+
+	/**
+	 * Global similarity of the given stimulus to the exemplars of two types
+	 * (see {@link #getSimilarityG(Exemplar, Type)}), computed in one pass.
+	 * @param stimulus
+	 * @param t0  -- first type
+	 * @param t1  -- second type
+	 * @param sim -- output: similarities to t0 and t1
+	 */
+	private void getSimilaritiesG(Exemplar stimulus, byte t0, byte t1, double[] sim)
 	{
 		// compute global similarity to exemplar set
-		double sim = 0;
-		int num=0;
-		for(int i=0; i<this.exemplars.length; i++)
+		double sim0 = 0;
+		double sim1 = 0;
+		int num0=0;
+		int num1=0;
+		double[] dist = this.block;
+		for(int from=0; from<this.size; from+=DistanceKernel.BLOCK)
 		{
-			Exemplar e = this.exemplars[i];
-			if(null==e || e.getType()!=type){
-				continue;
-			}
-			double d = MyMathHelper.getEuclideanDistance(stimulus.phonFeatures, e.phonFeatures);
-			if( d > thDELTA) {
-				sim += thACTIVATION;
-			} else {
-				sim += Math.exp(-d);
+			int len = Math.min(DistanceKernel.BLOCK, this.size - from);
+			DistanceKernel.squaredDistances(this.features, this.capacity, DIM, from, len, stimulus.phonFeatures, dist);
+			for(int b=0; b<len; b++)
+			{
+				byte t = this.types[from+b];
+				if(t!=t0 && t!=t1){
+					continue;
+				}
+				double s;
+				if(null==this.fastExp) {
+					double d = Math.sqrt(dist[b]);
+					s = d > thDELTA ? thACTIVATION : Math.exp(-d);
+				} else {
+					// threshold on the squared distance, no sqrt for distant exemplars
+					s = dist[b] > thDELTA2 ? thACTIVATION : this.fastExp.expNeg(Math.sqrt(dist[b]));
+				}
+				if(t==t0) {
+					sim0 += s;
+					num0++;
+				} else {
+					sim1 += s;
+					num1++;
+				}
 			}
-			num++;
 		}
-		if(num>0)
-			sim = sim / (double)num;
-
-		return sim;
+		sim[0] = num0>0 ? sim0 / (double)num0 : sim0;
+		sim[1] = num1>0 ? sim1 / (double)num1 : sim1;
 	}
 
 
@@ -419,7 +619,28 @@ public class Lexicon implements Iterable<Exemplar> {
 	 */
 	public double getSimilarityN(Exemplar stimulus, Exemplar.Type type, double epsilon)
 	{
-		double sim = 0;
+		double[] sim = new double[2];
+		this.getSimilaritiesN(stimulus, epsilon, sim);
+		if(type==Type.A) {
+			return sim[0];
+		} else if(type==Type.B) {
+			return sim[1];
+		}
+		LOG.error("Requested similarity for unknown exemplar type. Returnung 0.");
+		return 0.0;
+	}
+
+
+	/**
+	 * Similarity of the given stimulus to the exemplars of type A and B based
+	 * on the number of exemplars within the epsilon radius around the
+	 * stimulus (see {@link #getSimilarityN(Exemplar, Type, double)}).
+	 * @param stimulus
+	 * @param epsilon
+	 * @param sim -- output: similarities to type A and B
+	 */
+	private void getSimilaritiesN(Exemplar stimulus, double epsilon, double[] sim)
+	{
 
 		// pre-compute lower and upper bound in each phonetic dimension
 		double[] lower = new double[DIM];
@@ -435,16 +656,22 @@ public class Lexicon implements Iterable<Exemplar> {
 		int nA = 0;
 		int nB = 0;
 
-		for(int i=0; i<this.exemplars.length; i++)
+		// only look at exemplars in adjacent grid cells, unless the grid
+		// would visit more cells than there are exemplars
+		int[] slots = null;
+		int n = this.size;
+		if(null!=this.grid && epsilon==this.epsilon && this.grid.getCellsPerQuery() < this.size) {
+			slots = this.candidates;
+			n = this.grid.getCandidates(stimulus.phonFeatures, slots);
+		}
+
+		for(int k=0; k<n; k++)
 		{
-			Exemplar e = this.exemplars[i];
-			if(null==e){
-				continue;
-			}
-			// check if e is within epsilon-neighborhood
+			int i = null==slots ? k : slots[k];
+			// check if exemplar i is within epsilon-neighborhood
 			boolean skip = false;
 			for(int dx=0; dx<DIM; dx++) {
-				double feature = stimulus.getPhoneticFeature(dx);
+				double feature = this.features[dx*this.capacity + i];
 				if(feature < lower[dx]){
 					skip=true;
 					break;
@@ -457,11 +684,12 @@ public class Lexicon implements Iterable<Exemplar> {
 			if(skip) {
 				continue;
 			}
-			double d = e.getDistance(stimulus);
+			double d = this.getDistance(i, stimulus.phonFeatures);
 			if(d <= epsilon) {
-				if(e.type==Type.A) {
+				Type et = this.getType(i);
+				if(et==Type.A) {
 					nA++;
-				} else if(e.type==Type.B) {
+				} else if(et==Type.B) {
 					nB++;
 				} else {
 					LOG.warn("Exemplar with undefinded category found in lexicon!");
@@ -473,16 +701,12 @@ public class Lexicon implements Iterable<Exemplar> {
 		double sum = (double)(nA + nB);
 
 		if(sum>0.0) {
-			if(type==Type.A) {
-				sim = nA / sum;
-			} else if(type==Type.B) {
-				sim = nB / sum;
-			} else {
-				LOG.error("Requested similarity for unknown exemplar type. Returnung 0.");
-			}
+			sim[0] = nA / sum;
+			sim[1] = nB / sum;
+		} else {
+			sim[0] = 0.0;
+			sim[1] = 0.0;
 		}
-
-		return sim;
 	}
 
 
@@ -501,13 +725,52 @@ public class Lexicon implements Iterable<Exemplar> {
 	 * @param e
 	 */
 	public void addExemplar(Exemplar e) {
-		if(this.size < this.exemplars.length){
-			this.exemplars[this.size] = e;
+		if(this.frozen && ++this.frozenWrites > this.frozenMaxWrites) {
+			throw new IllegalStateException("More exemplars added to frozen lexicon than reserved by freeze()");
+		}
+		int slot;
+		if(this.size < this.capacity){
+			slot = this.size;
 			this.size++;
 		} else {
 			// replace oldest exemplar
-			this.exemplars[this.start] = e;
-			this.start = (this.start + 1) % this.exemplars.length;
+			slot = this.start;
+			Type old = this.getType(slot);
+			if(old==Type.A){
+				this.modCountA++;
+				this.numA--;
+				this.addToSum(this.sumA, slot, -1.0);
+			} else {
+				this.modCountB++;
+				if(old==Type.B) {
+					this.numB--;
+					this.addToSum(this.sumB, slot, -1.0);
+				}
+			}
+			this.start = (this.start + 1) % this.capacity;
+		}
+		if(null!=this.grid) {
+			this.grid.remove(slot);
+			this.store(slot, e);
+			this.grid.insert(slot);
+		} else {
+			this.store(slot, e);
+		}
+		if(null!=this.scores) {
+			// recomputed below for exemplars of type A and B
+			this.scores[slot] = 0.0;
+		}
+		if(e.getType()==Type.A){
+			this.numA++;
+			this.addToSum(this.sumA, slot, 1.0);
+		} else if(e.getType()==Type.B){
+			this.numB++;
+			this.addToSum(this.sumB, slot, 1.0);
+		}
+		this.writes++;
+		if(++this.writesSinceSync >= this.capacity) {
+			// limit accumulation of rounding errors
+			this.syncAggregates();
 		}
 		if(e.getType()==Type.A){
 			this.modCountA++;
@@ -520,16 +783,27 @@ public class Lexicon implements Iterable<Exemplar> {
 	/**
 	 * Get a random exemplar according to its score (i.e. higher scores are more
 	 * likely to be returned).
+	 * <p>
+	 * If this lexicon is frozen, the exemplar is drawn from the state at the
+	 * time of the call to {@link #freeze(int)}, regardless of exemplars which
+	 * have been added since. Otherwise, the scores are updated if necessary,
+	 * which must not happen concurrently.
+	 * @param rand -- random stream of the calling thread
 	 * @return an exemplar from this lexicon
 	 */
-	public Exemplar getGoodExemplar()
+	public Exemplar getGoodExemplar(RandomStream rand)
 	{
+		if(this.frozen) {
+			return this.getGoodFrozenExemplar(rand);
+		}
 		Exemplar e = null;
 		if(this.size > 0){
 			this.computeScores();
 			while(null==e){
-				int ix = MyMathHelper.getRandomIntForFunction(scores);
-				e=this.exemplars[ix];
+				int ix = MyMathHelper.getRandomIntForFunction(scores, rand);
+				if(ix < this.size) {
+					e = this.getExemplar(ix);
+				}
 			}
 		} else {
 			LOG.debug("there are no exemplars in this lexicon");
@@ -538,6 +812,129 @@ public class Lexicon implements Iterable<Exemplar> {
 	}
 
 
+	/**
+	 * Draw from the cumulative score table computed by {@link #freeze(int)}
+	 * (binary search, no writes to this lexicon).
+	 * @param rand
+	 * @return an exemplar or <code>null</code> if the lexicon was empty
+	 */
+	private Exemplar getGoodFrozenExemplar(RandomStream rand)
+	{
+		int n = this.frozenSize;
+		if(n == 0){
+			LOG.debug("there are no exemplars in this lexicon");
+			return null;
+		}
+		double total = this.frozenCdf[n-1];
+		if(!(total > 0.0)) {
+			// degenerate scores: all exemplars are equally good
+			return this.getFrozenExemplar(rand.nextInt(n));
+		}
+		double u = rand.nextDouble() * total;
+		// first position with cdf > u
+		int lo = 0;
+		int hi = n - 1;
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(this.frozenCdf[mid] > u) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+		}
+		return this.getFrozenExemplar(lo);
+	}
+
+
+	/**
+	 * Get the exemplar which was stored at ring position ix at the time of the
+	 * call to {@link #freeze(int)}.
+	 * @param ix
+	 * @return an exemplar or <code>null</code>
+	 */
+	private Exemplar getFrozenExemplar(int ix)
+	{
+		int offset = ix - this.frozenWindowStart;
+		if(offset < 0) {
+			offset += this.capacity;
+		}
+		if(offset < this.frozenWindowLength) {
+			return this.frozenWindow[offset];
+		}
+		return this.getExemplar(ix);
+	}
+
+
+
+	/**
+	 * Freeze the speaker view of this lexicon: until {@link #thaw()} is called,
+	 * {@link #getGoodExemplar(RandomStream)} draws from the current contents and scores of
+	 * this lexicon, while new exemplars may still be added and perceived.
+	 * This prepares the lexicon for speaking: the scores are computed once and
+	 * summed up into a cumulative table, from which exemplars are drawn by
+	 * binary search in O(log n) without modifying this lexicon.
+	 * <p>
+	 * Only the ring positions which may be overwritten by the next
+	 * <code>maxWrites</code> calls to {@link #addExemplar(Exemplar)} are
+	 * copied (as {@link Exemplar} instances), all other positions are read in
+	 * place. Hence, while frozen,
+	 * {@link #getGoodExemplar(RandomStream)} may be called concurrently by any number of
+	 * threads, and at the same time one other thread may add up to
+	 * <code>maxWrites</code> exemplars.
+	 * @param maxWrites -- maximum number of exemplars added before thawing
+	 */
+	public void freeze(int maxWrites)
+	{
+		if(this.frozen) {
+			throw new IllegalStateException("Lexicon is already frozen");
+		}
+		if(this.size > 0) {
+			this.computeScores();
+		}
+		int n = this.capacity;
+		if(null==this.frozenCdf || this.frozenCdf.length < this.size) {
+			this.frozenCdf = new double[n];
+		}
+		double sum = 0.0;
+		for(int i=0; i<this.size; i++) {
+			sum += this.scores[i];
+			this.frozenCdf[i] = sum;
+		}
+		// new exemplars fill the empty slots first, then overwrite the oldest
+		int window = Math.min(this.size, Math.max(0, maxWrites - (n - this.size)));
+		if(null==this.frozenWindow || this.frozenWindow.length < window) {
+			this.frozenWindow = new Exemplar[window];
+		}
+		for(int i=0; i<window; i++) {
+			this.frozenWindow[i] = this.getExemplar((this.start + i) % n);
+		}
+		this.frozenWindowStart  = this.start;
+		this.frozenWindowLength = window;
+		this.frozenSize      = this.size;
+		this.frozenWrites    = 0;
+		this.frozenMaxWrites = maxWrites;
+		this.frozen = true;
+	}
+
+
+	/**
+	 * Release the speaker view set by {@link #freeze(int)}.
+	 */
+	public void thaw()
+	{
+		for(int i=0; i<this.frozenWindowLength; i++) {
+			this.frozenWindow[i] = null;
+		}
+		this.frozenWindowLength = 0;
+		this.frozen = false;
+	}
+
+
+	public boolean isFrozen() {
+		return this.frozen;
+	}
+
+
 	private void computeScores() {
 		boolean recomputeA = this.scoresStampA != this.modCountA;
 		boolean recomputeB = this.scoresStampB != this.modCountB;
@@ -548,19 +945,14 @@ public class Lexicon implements Iterable<Exemplar> {
 		if(recomputeA || recomputeB)
 		{
 			this.computeCentroid();
-			this.scores = new double[this.exemplars.length];
-			if(0<this.size)
-			{
-				for(int ix=this.exemplars.length; --ix>=0; ){
-					Exemplar e = this.exemplars[ix];
-					if(null!=e){
-						if(recomputeA && e.getType()==Type.A) {
-							this.scores[ix] = conf.getScore(this.exemplars[ix], centroidAExemplar);
-						} else if(recomputeB && e.getType()==Type.B) {
-							this.scores[ix] = conf.getScore(this.exemplars[ix], centroidBExemplar);
-						}
-					}
-				}
+			if(null==this.scores) {
+				this.scores = new double[this.capacity];
+			}
+			if(recomputeA) {
+				this.computeScores(Type.A, this.centroidA);
+			}
+			if(recomputeB) {
+				this.computeScores(Type.B, this.centroidB);
 			}
 			if(recomputeA)
 				this.scoresStampA = this.modCountA;
@@ -571,6 +963,39 @@ public class Lexicon implements Iterable<Exemplar> {
 
 
 
+	/**
+	 * Compute the scores of all exemplars of the given type.
+	 * @param type
+	 * @param centroid -- centroid of the exemplars of that type
+	 */
+	private void computeScores(Type type, double[] centroid)
+	{
+		byte t = toByte(type);
+		double[] dist = this.block;
+		for(int from=0; from<this.size; from+=DistanceKernel.BLOCK)
+		{
+			int len = Math.min(DistanceKernel.BLOCK, this.size - from);
+			DistanceKernel.squaredDistances(this.features, this.capacity, DIM, from, len, centroid, dist);
+			if(null==this.fastExp) {
+				DistanceKernel.sqrt(dist, len);
+				for(int b=0; b<len; b++) {
+					int ix = from + b;
+					if(this.types[ix]==t) {
+						this.scores[ix] = conf.getScore(dist[b], this.socialScores[ix]);
+					}
+				}
+			} else {
+				for(int b=0; b<len; b++) {
+					int ix = from + b;
+					if(this.types[ix]==t) {
+						this.scores[ix] = conf.getScoreSq(dist[b], this.socialScores[ix]);
+					}
+				}
+			}
+		}
+	}
+
+
 	/**
 	 * Get phonetic centroid of this lexicon.
 	 * All other features are undefined!
@@ -607,50 +1032,67 @@ public class Lexicon implements Iterable<Exemplar> {
 	{
 		boolean recomputeA = null==this.centroidA || this.modCountA != this.centroidAStamp;
 		boolean recomputeB = null==this.centroidB || this.modCountB != this.centroidBStamp;
-		if(recomputeA || recomputeB)
-		{
-			int numA = 0;
-			int numB = 0;
-			if(recomputeA)
-				this.centroidA = new double[DIM];
-			if(recomputeB)
-				this.centroidB = new double[DIM];
-			if(0<this.size)
-			{
-				for(int ix=this.exemplars.length; --ix>=0; ){
-					Exemplar e = this.exemplars[ix];
-					if(null!=e){
-						if(recomputeA && e.getType()==Type.A){
-							for(int sx=DIM; --sx>=0; ){
-								this.centroidA[sx] += e.getPhoneticFeature(sx);
-							}
-							numA++;
-						} else if(recomputeB && e.getType()==Type.B) {
-							for(int sx=DIM; --sx>=0; ){
-								this.centroidB[sx] += e.getPhoneticFeature(sx);
-							}
-							numB++;
-						}
-					}
-				}
-				for(int sx=DIM; --sx>=0; ){
-					if(recomputeA && numA>0){
-						this.centroidA[sx] = this.centroidA[sx] / (double)numA;
-					}
-					if(recomputeB && numB>0) {
-						this.centroidB[sx] = this.centroidB[sx] / (double)numB;
-					}
-				}
-			}
-			if(recomputeA){
-				this.centroidAExemplar = new Exemplar(null, Double.NaN, null, Double.NaN, centroidA, Double.NaN);
-				this.centroidAStamp = this.modCountA;
+		if(recomputeA){
+			this.centroidA = getMean(this.sumA, this.numA);
+			this.centroidAExemplar = new Exemplar(null, Double.NaN, null, Double.NaN, centroidA, Double.NaN);
+			this.centroidAStamp = this.modCountA;
+		}
+		if(recomputeB){
+			this.centroidB = getMean(this.sumB, this.numB);
+			this.centroidBExemplar = new Exemplar(null, Double.NaN, null, Double.NaN, centroidB, Double.NaN);
+			this.centroidBStamp = this.modCountB;
+		}
+	}
+
+
+	/**
+	 * @param sum
+	 * @param n
+	 * @return the mean vector, all zeros if n is zero
+	 */
+	private static double[] getMean(double[] sum, int n)
+	{
+		double[] mean = new double[sum.length];
+		if(n > 0) {
+			for(int sx=sum.length; --sx>=0; ){
+				mean[sx] = sum[sx] / (double)n;
 			}
-			if(recomputeB){
-				this.centroidBExemplar = new Exemplar(null, Double.NaN, null, Double.NaN, centroidB, Double.NaN);
-				this.centroidBStamp = this.modCountB;
+		}
+		return mean;
+	}
+
+
+	private void addToSum(double[] sum, int slot, double sign)
+	{
+		for(int sx=DIM; --sx>=0; ){
+			sum[sx] += sign * this.features[sx*this.capacity + slot];
+		}
+	}
+
+
+	/**
+	 * Recompute the running per-type counts and feature sums from the
+	 * current contents of this lexicon.
+	 */
+	private void syncAggregates()
+	{
+		this.numA = 0;
+		this.numB = 0;
+		for(int sx=DIM; --sx>=0; ){
+			this.sumA[sx] = 0.0;
+			this.sumB[sx] = 0.0;
+		}
+		for(int ix=this.size; --ix>=0; ){
+			Type t = this.getType(ix);
+			if(t==Type.A){
+				this.numA++;
+				this.addToSum(this.sumA, ix, 1.0);
+			} else if(t==Type.B){
+				this.numB++;
+				this.addToSum(this.sumB, ix, 1.0);
 			}
 		}
+		this.writesSinceSync = 0;
 	}
 
 
@@ -661,16 +1103,8 @@ public class Lexicon implements Iterable<Exemplar> {
 	 * @return
 	 */
 	public Exemplar.Type getMajorityType () {
-		int numA = 0;
-		for(int i=0; i<this.exemplars.length; i++) {
-			if(null!=this.exemplars[i]) {
-				if(this.exemplars[i].getType()==Type.A){
-					numA++;
-				}
-			}
-		}
-		int numB = this.size -numA;
-		if(numB>numA) {
+		int numB = this.size - this.numA;
+		if(numB>this.numA) {
 			return Type.B;
 		} else {
 			return Type.A;
@@ -686,15 +1120,7 @@ public class Lexicon implements Iterable<Exemplar> {
 		if(this.size == 0){
 			return Double.NaN;
 		}
-		int numA = 0;
-		for(int i=0; i<this.exemplars.length; i++) {
-			if(null!=this.exemplars[i]) {
-				if(this.exemplars[i].getType()==Type.A){
-					numA++;
-				}
-			}
-		}
-		return (double)numA / (double)this.size;
+		return (double)this.numA / (double)this.size;
 	}
 
 
@@ -707,29 +1133,11 @@ public class Lexicon implements Iterable<Exemplar> {
 
 	public void writeCSV(File outFile)
 	{
-		OutputStreamWriter writer=null;
+		OutputStream out=null;
 
 		try {
-			writer = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(outFile)), Configuration.DEFAULT_ENCODING);
-
-			boolean writeHead = true;
-
-			if(this.size > 0)
-			{
-				for(int i=0; i<this.exemplars.length; i++)
-				{
-					if(null!=this.exemplars[i]) {
-						if(writeHead) {
-							writer.write(this.exemplars[i].getCSVHead());
-							writer.write('\n');
-							writeHead=false;
-						}
-						writer.write(this.exemplars[i].getCSV());
-						writer.write('\n');
-					}
-				}
-				writer.flush();
-			}
+			out = new FileOutputStream(outFile);
+			this.snapshot().writeCSV(out);
 			if(LOG.isInfoEnabled()) {
 				LOG.info(String.format("Written lexicon to file %s", outFile.getAbsolutePath()));
 			}
@@ -737,13 +1145,13 @@ public class Lexicon implements Iterable<Exemplar> {
 		} catch (IOException e) {
 			LOG.error("Could not write lexicon to file", e);
 		} finally {
-			if(null!=writer) {
+			if(null!=out) {
 				try {
-					writer.close();
+					out.close();
 				} catch (IOException e) {
 					LOG.error("Could not close lexicon file", e);
 				}
-				writer=null;
+				out=null;
 			}
 		}
 	}
@@ -752,26 +1160,10 @@ public class Lexicon implements Iterable<Exemplar> {
 
 	public void writeToStream(OutputStream out)
 	{
-		boolean writeHead = true;
-		byte[] nl = "\n".getBytes();
-
 		if(this.size > 0)
 		{
 			try {
-				for(int i=0; i<this.exemplars.length; i++)
-				{
-					if(null!=this.exemplars[i]) {
-						if(writeHead) {
-							out.write(this.exemplars[i].getCSVHead().getBytes());
-							out.write(nl);
-							writeHead=false;
-						}
-						out.write(this.exemplars[i].getCSV().getBytes());
-						out.write(nl);
-					}
-				}
-				out.flush();
-
+				this.snapshot().writeCSV(out);
 			} catch (IOException e) {
 				LOG.error("Could not write lexicon to output stream", e);
 			}
@@ -779,6 +1171,79 @@ public class Lexicon implements Iterable<Exemplar> {
 	}
 
 
+	/**
+	 * @return total number of exemplars added to this lexicon
+	 * @see #snapshot(long)
+	 */
+	public long getWriteCount() {
+		return this.writes;
+	}
+
+
+	/**
+	 * Copy the current contents of this lexicon. Must not be called while
+	 * exemplars are added.
+	 * @return a new complete snapshot
+	 */
+	public LexiconSnapshot snapshot() {
+		return this.snapshot(-1L);
+	}
+
+
+	/**
+	 * Copy the exemplars added since an earlier snapshot. Must not be called
+	 * while exemplars are added.
+	 * <p>
+	 * Exemplars are written to consecutive ring positions (the next free
+	 * slot, or the oldest exemplar once the lexicon is full), i.e. the last
+	 * w writes occupy the w ring positions before the current write
+	 * position.
+	 * @param writeCount -- value of {@link #getWriteCount()} at the time of
+	 *   the earlier snapshot, or -1 for a complete snapshot
+	 * @return a new delta, or a complete snapshot if all slots may have
+	 *   changed
+	 */
+	public LexiconSnapshot snapshot(long writeCount)
+	{
+		long w = this.writes - writeCount;
+		if(writeCount < 0 || w < 0 || w >= this.capacity) {
+			return this.copy(0, this.size, -1);
+		}
+		int next = this.size < this.capacity ? this.size : this.start;
+		int first = (int) ((next - w + this.capacity) % this.capacity);
+		return this.copy(first, (int) w, first);
+	}
+
+
+	/**
+	 * @param from -- ring position of the first exemplar
+	 * @param n -- number of exemplars
+	 * @param first -- see {@link LexiconSnapshot#getFirstSlot()}
+	 */
+	private LexiconSnapshot copy(int from, int n, int first)
+	{
+		byte[] t    = new byte[n];
+		byte[] g    = new byte[n];
+		double[] st = new double[n];
+		double[] cl = new double[n];
+		double[] feat = new double[n * DIM];
+		// at most two contiguous ranges
+		for(int done=0; done<n; ) {
+			int slot = (from + done) % this.capacity;
+			int len = Math.min(n - done, this.capacity - slot);
+			System.arraycopy(this.types, slot, t, done, len);
+			System.arraycopy(this.genders, slot, g, done, len);
+			System.arraycopy(this.statuses, slot, st, done, len);
+			System.arraycopy(this.closenesses, slot, cl, done, len);
+			for(int dx=0; dx<DIM; dx++) {
+				System.arraycopy(this.features, dx*this.capacity + slot, feat, dx*n + done, len);
+			}
+			done += len;
+		}
+		return new LexiconSnapshot(n, DIM, this.capacity, this.size, first, t, g, st, cl, feat);
+	}
+
+
 
 	// ===================================================================
 	//                                                           ITERATORS
@@ -815,7 +1280,7 @@ public class Lexicon implements Iterable<Exemplar> {
 			int ix = 0;
 			for(int ex=start; ix<this.size; ex++, ix++)
 			{
-				if(ex == exemplars.length) {
+				if(ex == capacity) {
 					ex = 0;
 				}
 				indices[ix] = ex;
@@ -859,7 +1324,7 @@ public class Lexicon implements Iterable<Exemplar> {
 			}
 			Exemplar w ;
 			if(this.ptr < this.indices.length){
-				w = exemplars[ this.indices[this.ptr]];
+				w = getExemplar(this.indices[this.ptr]);
 				this.ptr++;
 			} else {
 				throw new NoSuchElementException();
@@ -0,0 +1,300 @@
+package sfb732.kamoso.mem;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import sfb732.kamoso.pop.Agent;
+import sfb732.kamoso.util.CSVEncoder;
+import sfb732.kamoso.util.ColumnWriter;
+
+
+/**
+ * Immutable copy of the contents of a {@link Lexicon}, e.g. for writing
+ * dumps while the simulation continues (see {@link Lexicon#snapshot()}).
+ * The exemplar attributes are kept in primitive arrays; the phonetic
+ * features form one flat dimension-major block.
+ * <p>
+ * A snapshot is either complete (entry i is the exemplar in slot i) or a
+ * delta holding only the exemplars written since an earlier snapshot (see
+ * {@link Lexicon#snapshot(long)}). The entries of a delta occupy
+ * consecutive ring positions starting at {@link #getFirstSlot()}; deltas are
+ * merged into a complete snapshot with {@link #apply(LexiconSnapshot)}.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+public final class LexiconSnapshot {
+
+	private static final Exemplar.Type[] TYPES = Exemplar.Type.values();
+	private static final Agent.Gender[] GENDERS = Agent.Gender.values();
+
+	private final int size;// number of entries
+	private final int dim;
+	private final int capacity;
+	private final int lexiconSize;// size of the lexicon
+	private final int first;// slot of entry 0, -1 for complete snapshots
+	private final byte[] types;// ordinal of Exemplar.Type, -1 for null
+	private final byte[] genders;// ordinal of Agent.Gender, -1 for null
+	private final double[] statuses;
+	private final double[] closenesses;
+	private final double[] features;// dimension-major: features[d*size + i]
+
+
+	/**
+	 * Constructor. The arrays are not copied.
+	 * @param size -- number of entries
+	 * @param dim -- number of phonetic dimensions
+	 * @param capacity -- capacity of the lexicon
+	 * @param lexiconSize -- size of the lexicon
+	 * @param first -- ring position of the first entry, or -1 if the
+	 *   snapshot is complete
+	 */
+	LexiconSnapshot(int size, int dim, int capacity, int lexiconSize, int first,
+			byte[] types, byte[] genders, double[] statuses, double[] closenesses, double[] features)
+	{
+		this.size        = size;
+		this.dim         = dim;
+		this.capacity    = capacity;
+		this.lexiconSize = lexiconSize;
+		this.first       = first;
+		this.types       = types;
+		this.genders     = genders;
+		this.statuses    = statuses;
+		this.closenesses = closenesses;
+		this.features    = features;
+	}
+
+
+	/**
+	 * @return number of entries in this snapshot
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return number of phonetic dimensions
+	 */
+	public int getDimensions() {
+		return this.dim;
+	}
+
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * @return size of the lexicon, which equals {@link #size()} for complete
+	 *   snapshots
+	 */
+	public int getLexiconSize() {
+		return this.lexiconSize;
+	}
+
+	public boolean isComplete() {
+		return this.first < 0;
+	}
+
+	/**
+	 * @return ring position of the first entry of a delta, or -1 if this
+	 *   snapshot is complete
+	 */
+	public int getFirstSlot() {
+		return this.first;
+	}
+
+	/**
+	 * @param i -- entry index
+	 * @return ring position of entry i
+	 */
+	public int getSlot(int i) {
+		return this.first < 0 ? i : (this.first + i) % this.capacity;
+	}
+
+	public Exemplar.Type getType(int i) {
+		byte t = this.types[i];
+		return t < 0 ? null : TYPES[t];
+	}
+
+	public Agent.Gender getGender(int i) {
+		byte g = this.genders[i];
+		return g < 0 ? null : GENDERS[g];
+	}
+
+	public double getStatus(int i) {
+		return this.statuses[i];
+	}
+
+	public double getCloseness(int i) {
+		return this.closenesses[i];
+	}
+
+	/**
+	 * @param i -- exemplar index
+	 * @param d -- phonetic dimension
+	 * @return feature d of exemplar i
+	 */
+	public double getFeature(int i, int d) {
+		return this.features[d*this.size + i];
+	}
+
+
+	/**
+	 * @param i -- exemplar index
+	 * @return a new exemplar with the contents of the given entry
+	 */
+	public Exemplar getExemplar(int i)
+	{
+		double[] phon = new double[this.dim];
+		for(int dx=0; dx<this.dim; dx++) {
+			phon[dx] = this.features[dx*this.size + i];
+		}
+		return new Exemplar(this.getType(i), this.statuses[i], this.getGender(i), this.closenesses[i], phon, 0.0);
+	}
+
+
+	/**
+	 * Merge a delta into this complete snapshot.
+	 * @param delta -- exemplars written since this snapshot was taken; a
+	 *   complete snapshot replaces this one
+	 * @return a new complete snapshot
+	 * @throws IllegalStateException if this snapshot is a delta, or if the
+	 *   capacities or dimensions do not match
+	 */
+	public LexiconSnapshot apply(LexiconSnapshot delta)
+	{
+		if(! this.isComplete()) {
+			throw new IllegalStateException("Deltas can only be applied to complete lexicon snapshots");
+		}
+		if(delta.isComplete()) {
+			return delta;
+		}
+		if(delta.capacity != this.capacity || delta.dim != this.dim || delta.lexiconSize < this.lexiconSize) {
+			throw new IllegalStateException("Lexicon delta does not match the base snapshot");
+		}
+		int n = delta.lexiconSize;
+		byte[] t      = Arrays.copyOf(this.types, n);
+		byte[] g      = Arrays.copyOf(this.genders, n);
+		double[] st   = Arrays.copyOf(this.statuses, n);
+		double[] cl   = Arrays.copyOf(this.closenesses, n);
+		double[] feat = new double[n * this.dim];
+		for(int dx=0; dx<this.dim; dx++) {
+			System.arraycopy(this.features, dx*this.size, feat, dx*n, this.size);
+		}
+		for(int i=0; i<delta.size; i++) {
+			int slot = delta.getSlot(i);
+			if(slot >= n) {
+				throw new IllegalStateException(String.format("Lexicon delta writes slot %d of %d", slot, n));
+			}
+			t[slot]  = delta.types[i];
+			g[slot]  = delta.genders[i];
+			st[slot] = delta.statuses[i];
+			cl[slot] = delta.closenesses[i];
+			for(int dx=0; dx<this.dim; dx++) {
+				feat[dx*n + slot] = delta.features[dx*delta.size + i];
+			}
+		}
+		return new LexiconSnapshot(n, this.dim, this.capacity, n, -1, t, g, st, cl, feat);
+	}
+
+
+	// ===================================================================
+	//                                                              OUTPUT
+	// ===================================================================
+
+	/**
+	 * Write this lexicon in CSV format (see {@link Lexicon#writeToStream(OutputStream)}).
+	 * @param out
+	 * @throws IOException
+	 */
+	public void writeCSV(OutputStream out) throws IOException
+	{
+		if(! this.isComplete()) {
+			throw new IllegalStateException("Only complete lexicon snapshots can be written as CSV");
+		}
+		CSVEncoder enc = new CSVEncoder(out);
+		try {
+			for(int i=0; i<this.size; i++) {
+				if(i==0) {
+					Exemplar.writeCSVHead(enc, this.dim);
+					enc.append('\n');
+				}
+				Exemplar.writeCSV(enc, this.getType(i), this.statuses[i], this.getGender(i), this.closenesses[i],
+						this.features, i, this.size, this.dim);
+				enc.append('\n');
+			}
+		} finally {
+			enc.finish();
+		}
+	}
+
+
+	/**
+	 * Write this lexicon as binary columns, without any header: exemplar
+	 * types and speaker genders (one byte each, padded), speaker statuses,
+	 * closenesses and finally the phonetic features as one flat
+	 * dimension-major block of {@link #getDimensions()} times
+	 * {@link #size()} doubles.
+	 * @param out
+	 * @throws IOException
+	 * @see #readColumns(ByteBuffer, int, int, int, int, int)
+	 */
+	public void writeColumns(ColumnWriter out) throws IOException
+	{
+		out.putBytes(this.types, 0, this.size);
+		out.pad();
+		out.putBytes(this.genders, 0, this.size);
+		out.pad();
+		out.putDoubles(this.statuses, 0, this.size);
+		out.putDoubles(this.closenesses, 0, this.size);
+		out.putDoubles(this.features, 0, this.size * this.dim);
+	}
+
+
+	/**
+	 * @param size -- number of exemplars
+	 * @param dim -- number of phonetic dimensions
+	 * @return number of bytes written by {@link #writeColumns(ColumnWriter)}
+	 */
+	public static long getColumnsLength(int size, int dim) {
+		return 2 * ColumnWriter.align(size) + 8L * size * (2 + dim);
+	}
+
+
+	/**
+	 * Read a lexicon written by {@link #writeColumns(ColumnWriter)}.
+	 * @param in -- buffer in {@link ColumnWriter#ORDER}, positioned at the
+	 *   start of the columns
+	 * @param size -- number of entries
+	 * @param dim -- number of phonetic dimensions
+	 * @param capacity -- capacity of the lexicon
+	 * @param lexiconSize -- size of the lexicon
+	 * @param first -- ring position of the first entry, or -1 for a
+	 *   complete snapshot
+	 * @return a new snapshot
+	 */
+	public static LexiconSnapshot readColumns(ByteBuffer in, int size, int dim, int capacity, int lexiconSize, int first)
+	{
+		byte[] types         = new byte[size];
+		byte[] genders       = new byte[size];
+		double[] statuses    = new double[size];
+		double[] closenesses = new double[size];
+		double[] features    = new double[size * dim];
+
+		int start = in.position();
+		in.get(types);
+		in.position(start + (int) ColumnWriter.align(size));
+		in.get(genders);
+		in.position(start + 2 * (int) ColumnWriter.align(size));
+		in.asDoubleBuffer().get(statuses);
+		in.position(in.position() + 8 * size);
+		in.asDoubleBuffer().get(closenesses);
+		in.position(in.position() + 8 * size);
+		in.asDoubleBuffer().get(features);
+		in.position(in.position() + 8 * size * dim);
+
+		return new LexiconSnapshot(size, dim, capacity, lexiconSize, first, types, genders, statuses, closenesses, features);
+	}
+
+}
@@ -23,6 +23,9 @@ public class PerceptionMagnet implements Perception {
 
 	private final double MIN_SIM;
 
+	// similarities to type A and B (only used by the thread owning the lexicon)
+	private final double[] sim = new double[2];
+
 	public PerceptionMagnet(Configuration conf, Lexicon lex, double minSimilarity) {
 		this.conf = conf;
 		this.lex = lex;
@@ -72,8 +75,9 @@ public class PerceptionMagnet implements Perception {
 			Exemplar centroidA = this.lex.getCentroidA();
 			Exemplar centroidB = this.lex.getCentroidB();
 
-			double simA = this.lex.getSimilarity(stimulus, Exemplar.Type.A);
-			double simB = this.lex.getSimilarity(stimulus, Exemplar.Type.B);
+			this.lex.getSimilarities(stimulus, this.sim);
+			double simA = this.sim[0];
+			double simB = this.sim[1];
 
 
 			if(simA>simB) {
@@ -1,15 +1,32 @@
 package sfb732.kamoso.net;
 
+import java.io.File;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import Jama.Matrix;
-
 
 /**
  * Adjacency matrix of a social network: corresponding to an undirected connected graph.
+ * <p>
+ * The matrix is stored as sparse adjacency lists in compressed sparse row
+ * (CSR) format, i.e. the memory required for the topology grows with the
+ * number of edges rather than with the square of the number of nodes.
+ * The topology of an instance is immutable; use a {@link Builder} to
+ * construct or modify a network topology, or {@link EdgeListReader} to read
+ * it from a file. The distances between nodes are derived from the topology
+ * when they are first needed, or they are set explicitly (see
+ * {@link #computeDistances(File)}); the distances are published safely, so
+ * an instance may be shared between threads.
+ * <p>
+ * Edges may carry weights. Weights are kept with the topology only (e.g. to
+ * be written back to an edge list); distances are always hop counts.
+ * <p>
+ * A fully connected network is represented implicitly (see
+ * {@link #complete(int)}): neither its edges nor its distances are stored.
  * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
  */
 public class AdjacencyMatrix {
@@ -27,44 +44,180 @@ public class AdjacencyMatrix {
 	//
 	// ===================================================================
 
-	/** adjacency matrix
-	 *  <b>index 1:</b> node a ID;
-	 *  <b>index 2:</b> node b ID;
-	 *  <b>value:</b> 1 if node a is connected to node b
-	 */
-	protected final int[][] a;
+	/** number of nodes */
+	private final int n;
+
+	/** adjacency lists in compressed sparse row format: the neighbors of
+	 *  node i are <code>colIdx[rowPtr[i]]</code> ... <code>colIdx[rowPtr[i+1]-1]</code>,
+	 *  in ascending order; <code>null</code> if the network is complete */
+	private final int[] rowPtr;
+
+	/** column indices (neighbor node IDs); <code>null</code> if the network is complete */
+	private final int[] colIdx;
 
-	/** distance matrix (derived from a) */
-	protected int[][] d;
+	/** if every node is connected to every other node (without self-loops) */
+	private final boolean complete;
 
-	/** inverse distance matrix (derived from d) */
-	private double[][] invd;
+	/** edge weights parallel to {@link #colIdx}; <code>null</code> if all weights are 1 */
+	private final double[] weights;
+
+	/** distances between all nodes (derived from the adjacency lists); set
+	 *  after {@link #maxDist} and {@link #meanDist} */
+	private volatile DistanceStore d;
 
 	private int maxDist;
 
 	private double meanDist;
 
-	private int modCount = Integer.MIN_VALUE;
-
 
+	/**
+	 * Constructor for a dense adjacency matrix.
+	 * @param a -- quadratic matrix; node i is connected to node j iff
+	 *   <code>a[i][j] != {@link #NO_CONNECTION}</code>
+	 */
 	public AdjacencyMatrix(int[][] a)
 	{
-		this.a = a;
+		this.n = a.length;
+		this.rowPtr = new int[this.n + 1];
+		int nnz = 0;
+		for(int i=0; i<this.n; i++) {
+			for(int j=0; j<this.n; j++) {
+				if(a[i][j] != NO_CONNECTION) {
+					nnz++;
+				}
+			}
+			this.rowPtr[i+1] = nnz;
+		}
+		this.colIdx = new int[nnz];
+		int k = 0;
+		for(int i=0; i<this.n; i++) {
+			for(int j=0; j<this.n; j++) {
+				if(a[i][j] != NO_CONNECTION) {
+					this.colIdx[k++] = j;
+				}
+			}
+		}
+		this.weights = null;
+		this.complete = false;
 	}
 
 
 	/**
-	 * Copy constructor. This creates a new adjacency matrix based on the 
-	 * provided other matrix by copying all values.
+	 * Copy constructor. This creates a new adjacency matrix with the same
+	 * edges as the provided other matrix.
 	 * @param other
 	 */
 	public AdjacencyMatrix(AdjacencyMatrix other)
 	{
-		int n = other.a.length;
-		this.a = new int[n][n];
-		for(int i=0; i<n; i++){
-			System.arraycopy(other.a[i], 0, this.a[i], 0, n);
+		// the adjacency lists are never modified and may be shared
+		this(other.n, other.rowPtr, other.colIdx, other.weights, other.complete);
+	}
+
+
+	/**
+	 * Constructor for adjacency lists in compressed sparse row format
+	 * (see {@link Builder#build()}).
+	 * @param n
+	 * @param rowPtr
+	 * @param colIdx
+	 * @param weights -- edge weights or <code>null</code>
+	 * @param complete -- if the network is complete (without adjacency lists)
+	 */
+	private AdjacencyMatrix(int n, int[] rowPtr, int[] colIdx, double[] weights, boolean complete)
+	{
+		this.n = n;
+		this.rowPtr = rowPtr;
+		this.colIdx = colIdx;
+		this.weights = weights;
+		this.complete = complete;
+	}
+
+
+	/**
+	 * Create the adjacency matrix of a fully connected network without
+	 * self-loops. The matrix takes constant memory: all distances between
+	 * different nodes are 1, and neighbors are derived from the node IDs.
+	 * @param n -- number of nodes
+	 * @return
+	 */
+	public static AdjacencyMatrix complete(int n)
+	{
+		if(n < 0) {
+			throw new IllegalArgumentException("Number of nodes must be >= 0");
+		}
+		AdjacencyMatrix am = new AdjacencyMatrix(n, null, null, null, true);
+		am.maxDist  = n > 1 ? 1 : 0;
+		am.meanDist = 1.0;
+		return am;
+	}
+
+
+	/**
+	 * Create an adjacency matrix from a list of directed edges in O(n + m log d)
+	 * time, where d is the maximum degree. Edges with weight
+	 * {@link #NO_CONNECTION} are ignored; if an edge occurs more than once, the
+	 * last occurrence determines its weight.
+	 * @param n       -- number of nodes
+	 * @param from    -- start node of each edge
+	 * @param to      -- end node of each edge
+	 * @param weights -- weight of each edge, or <code>null</code> if all
+	 *   weights are 1
+	 * @param m       -- number of edges
+	 * @return
+	 */
+	static AdjacencyMatrix fromEdges(int n, int[] from, int[] to, double[] weights, int m)
+	{
+		// counting sort by start node, keeping the order of the input
+		int[] rowPtr = new int[n + 1];
+		for(int e=0; e<m; e++) {
+			rowPtr[from[e] + 1]++;
+		}
+		for(int i=0; i<n; i++) {
+			rowPtr[i+1] += rowPtr[i];
+		}
+		int[] next = Arrays.copyOf(rowPtr, n);
+		long[] keys = new long[m];
+		for(int e=0; e<m; e++) {
+			// end node and edge index: sorting orders occurrences of an edge by input order
+			keys[next[from[e]]++] = ((long) to[e] << 32) | e;
+		}
+		next = null;
+
+		// sort rows, remove duplicates and edges without weight
+		int[] colIdx = new int[m];
+		double[] w = null==weights ? null : new double[m];
+		boolean weighted = false;
+		int nnz = 0;
+		int start = 0;
+		for(int i=0; i<n; i++) {
+			int end = rowPtr[i+1];
+			Arrays.sort(keys, start, end);
+			for(int k=start; k<end; k++) {
+				if(k+1 < end && (keys[k+1] >>> 32) == (keys[k] >>> 32)) {
+					continue;// a later occurrence follows
+				}
+				if(null!=w) {
+					double x = weights[(int) keys[k]];
+					if(x == NO_CONNECTION) {
+						continue;
+					}
+					w[nnz] = x;
+					weighted |= x != 1.0;
+				}
+				colIdx[nnz++] = (int) (keys[k] >>> 32);
+			}
+			start = end;
+			rowPtr[i+1] = nnz;
+		}
+		if(nnz < m) {
+			colIdx = Arrays.copyOf(colIdx, nnz);
+		}
+		if(!weighted) {
+			w = null;
+		} else if(nnz < m) {
+			w = Arrays.copyOf(w, nnz);
 		}
+		return new AdjacencyMatrix(n, rowPtr, colIdx, w, false);
 	}
 
 
@@ -86,10 +239,15 @@ public class AdjacencyMatrix {
 	 *         {@link AdjacencyMatrix#NO_CONNECTION} if there is no connection
 	 */
 	public int getDistance(int i, int j){
-		if(null==this.d){
-			getDistanceMatrix();
+		if(this.complete) {
+			return i==j ? NO_CONNECTION : 1;
 		}
-		return this.d[i][j];
+		DistanceStore dist = this.getDistances();
+		if(i==j) {
+			// a self-loop is a direct connection
+			return this.isConnected(i, i) ? 1 : NO_CONNECTION;
+		}
+		return dist.get(i, j);
 	}
 
 
@@ -97,25 +255,94 @@ public class AdjacencyMatrix {
 	/**
 	 * Get direct neighbors of node i
 	 * @param i
-	 * @return
+	 * @return a new array with the neighbor IDs in ascending order
 	 */
 	public int[] getNeighbors(int i) {
-		int[] _neighbors = new int[this.a.length];
-		int nn = 0;
-		for(int j=0; j<this.a.length; j++) {
-			if(this.a[i][j] != AdjacencyMatrix.NO_CONNECTION) {
-				_neighbors[nn] = j;
-				nn++;
+		if(this.complete) {
+			int[] neighbors = new int[this.n - 1];
+			for(int k=0; k<neighbors.length; k++) {
+				neighbors[k] = k < i ? k : k+1;
 			}
+			return neighbors;
 		}
-		int[] neighbors = new int[nn];
-		if(nn> 0) {
-			System.arraycopy(_neighbors, 0, neighbors, 0, nn);
-		}
+		int from = this.rowPtr[i];
+		int[] neighbors = new int[this.rowPtr[i+1] - from];
+		System.arraycopy(this.colIdx, from, neighbors, 0, neighbors.length);
 		return neighbors;
 	}
 
 
+	/**
+	 * Get the number of direct neighbors of node i.
+	 * @param i
+	 * @return an integer &gt;= 0
+	 */
+	public int getDegree(int i) {
+		if(this.complete) {
+			return this.n - 1;
+		}
+		return this.rowPtr[i+1] - this.rowPtr[i];
+	}
+
+
+	/**
+	 * Get the k-th direct neighbor of node i. Together with
+	 * {@link #getDegree(int)}, this allows iterating over the neighbors
+	 * without allocating an array.
+	 * @param i
+	 * @param k -- index in the range <code>[0 getDegree(i))</code>
+	 * @return the node ID of the neighbor; neighbors are in ascending order
+	 */
+	public int getNeighbor(int i, int k) {
+		if(this.complete) {
+			return k < i ? k : k+1;
+		}
+		return this.colIdx[this.rowPtr[i] + k];
+	}
+
+
+	/**
+	 * Get the weight of the edge from node i to its k-th direct neighbor
+	 * (see {@link #getNeighbor(int, int)}).
+	 * @param i
+	 * @param k -- index in the range <code>[0 getDegree(i))</code>
+	 * @return the edge weight; 1 for unweighted networks
+	 */
+	public double getWeight(int i, int k) {
+		return null==this.weights ? 1.0 : this.weights[this.rowPtr[i] + k];
+	}
+
+
+	/**
+	 * @return <code>true</code> if any edge has a weight other than 1
+	 */
+	public boolean isWeighted() {
+		return null!=this.weights;
+	}
+
+
+	/**
+	 * Get the number of (directed) edges, i.e. the number of non-zero cells
+	 * of the matrix.
+	 * @return an integer &gt;= 0
+	 */
+	public long getNumberOfEdges() {
+		if(this.complete) {
+			return (long) this.n * (this.n - 1);
+		}
+		return this.colIdx.length;
+	}
+
+
+	/**
+	 * @return <code>true</code> if the network is fully connected and
+	 *   represented implicitly (see {@link #complete(int)})
+	 */
+	public boolean isComplete() {
+		return this.complete;
+	}
+
+
 
 
 	/**
@@ -123,8 +350,8 @@ public class AdjacencyMatrix {
 	 * @return
 	 */
 	public double getMeanDistance() {
-		if(null==this.d){
-			getDistanceMatrix();
+		if(!this.complete){
+			this.getDistances();
 		}
 		return this.meanDist;
 	}
@@ -135,113 +362,280 @@ public class AdjacencyMatrix {
 	 * @return
 	 */
 	public int getMaximumDistance() {
-		if(null==this.d){
-			getDistanceMatrix();
+		if(!this.complete){
+			this.getDistances();
 		}
 		return this.maxDist;
 	}
 	//TODO pre-compute in constructor and set public final field?
 
 	/**
-	 * Get a distance matrix which gives the shortest distance between any two
-	 * nodes in the network according to this adjacency matrix. This matrix does
-	 * not specify what the actual paths of the indicated minimum length are, 
-	 * only that there exists at least one such path.
+	 * Compute the shortest distance between any two nodes in the network
+	 * according to this adjacency matrix. This does not specify what the
+	 * actual paths of the indicated minimum length are, only that there exists
+	 * at least one such path.
 	 * <p>
-	 * Note that off-diagonal cells which contain a value equal to
+	 * Note that off-diagonal distances equal to
 	 * {@link AdjacencyMatrix#NO_CONNECTION} indicate that there is no path 
 	 * between the corresponding pair of nodes. If the underlying network is
 	 * undirected, this means that there is more than one component of the 
 	 * network.
-	 * @return a quadratic array
+	 * <p>
+	 * The distances are computed by a breadth-first search from every node,
+	 * running in parallel for different source nodes in the common
+	 * {@link ForkJoinPool}. The maximum and mean distance are computed in the
+	 * same pass. The distances are kept in a {@link DistanceStore}; the size of
+	 * its entries is chosen from an upper bound of the maximum distance.
+	 * Distances which have been computed before are replaced. Nothing is
+	 * computed for a complete network.
+	 * @param file -- file to memory-map the distances from, or <code>null</code>
+	 *   to keep them on the heap
 	 */
-	private int[][] getDistanceMatrix()
+	public synchronized void computeDistances(File file)
 	{
-		if(null==this.d){
-			this.maxDist = 0;
-			int n = a.length;
-			int missing = (n*n)-n;
-
-			int distSum = 0;
-			int numPaths = 0;
-
-			this.d = new int[n][n];
-			for(int i=0; i<n; i++)
-			{
-				for(int j=0; j<n; j++)
-				{
-					if(0==this.a[i][j]){
-						d[i][j] = NO_CONNECTION;
-					} else {
-						d[i][j] = this.a[i][j];
-						distSum++;
-						numPaths++;
-						missing--;
-						if(d[i][j]>this.maxDist){
-							this.maxDist = d[i][j];
-						}
-					}
+		if(this.complete) {
+			return;
+		}
+		int n = this.n;
+		boolean symmetric = this.isSymmetric();
+		DistanceStore dist = new DistanceStore(n, symmetric, this.getDistanceBound(symmetric), file);
+
+		BreadthFirstSearch bfs = new BreadthFirstSearch(this.rowPtr, this.colIdx, dist, 0, n, Math.max(1, n / (8 * ForkJoinPool.getCommonPoolParallelism())));
+		ForkJoinPool.commonPool().invoke(bfs);
+
+		if(LOG.isDebugEnabled() && bfs.numPaths < (long)n*(n-1)){
+			LOG.debug("There are nodes without a path between them in this network!");
+		}
+		this.maxDist  = bfs.maxDist;
+		this.meanDist = (double) bfs.distSum / (double) bfs.numPaths;
+		this.d = dist;
+	}
 
+
+	/**
+	 * Get the distances (see {@link #computeDistances(File)}).
+	 * @return
+	 */
+	DistanceStore getDistanceStore()
+	{
+		if(this.complete) {
+			throw new IllegalStateException("Distances of a complete network are not stored");
+		}
+		return this.getDistances();
+	}
+
+
+	/**
+	 * Get the distances, computing them on first use.
+	 * @return
+	 */
+	private DistanceStore getDistances()
+	{
+		DistanceStore dist = this.d;
+		if(null==dist){
+			synchronized (this) {
+				if(null==this.d){
+					computeDistances(null);
 				}
+				dist = this.d;
 			}
-			// d now contains all direct connections
+		}
+		return dist;
+	}
+
 
-			Matrix distance0   = getJAMA();
-			Matrix distanceKm1 = distance0;
+	/**
+	 * Set distances which have been computed before for the same topology
+	 * (see {@link TopologyCache}).
+	 * @param dist
+	 * @param maxDist
+	 * @param meanDist
+	 */
+	synchronized void setDistances(DistanceStore dist, int maxDist, double meanDist)
+	{
+		if(dist.size() != this.n) {
+			throw new IllegalArgumentException("Size of distance store does not match network");
+		}
+		this.maxDist  = maxDist;
+		this.meanDist = meanDist;
+		this.d = dist;
+	}
 
-			for(int k=2; k<=n; k++)
-			{
-				if(missing<=0){// we filled all cells, no longer paths are necessary
-					break;
+
+	/**
+	 * @return row pointers of the adjacency lists; must not be modified;
+	 *   <code>null</code> for a complete network
+	 */
+	int[] getRowPointers() {
+		return this.rowPtr;
+	}
+
+
+	/**
+	 * @return column indices of the adjacency lists; must not be modified;
+	 *   <code>null</code> for a complete network
+	 */
+	int[] getColumnIndices() {
+		return this.colIdx;
+	}
+
+
+	/**
+	 * Check if the adjacency matrix is symmetric, i.e. if the network is
+	 * undirected.
+	 * @return
+	 */
+	private boolean isSymmetric()
+	{
+		for(int i=0; i<this.n; i++) {
+			for(int e=this.rowPtr[i]; e<this.rowPtr[i+1]; e++) {
+				if(!this.isConnected(this.colIdx[e], i)) {
+					return false;
 				}
-				Matrix distanceK = distanceKm1.times(distance0);
-
-				// merge
-				for(int i=0; i<n; i++)
-				{
-					for(int j=0; j<n; j++)
-					{
-						double kPaths = distanceK.get(i, j);
-						if(i!=j && kPaths>0.0 && d[i][j] == 0){
-							d[i][j] = k;
-							missing--;
-							if(d[i][j]>this.maxDist){
-								this.maxDist = k;
-							}
-							distSum += k;
-							numPaths++;
-						}
+			}
+		}
+		return true;
+	}
+
+
+	/**
+	 * Get an upper bound of the maximum distance. In an undirected network,
+	 * no distance within a component exceeds twice the eccentricity of any
+	 * node of that component, which is found by a breadth-first search from
+	 * one node per component in O(n+E).
+	 * @param symmetric -- if the network is undirected
+	 * @return an integer &gt;= 0
+	 */
+	private int getDistanceBound(boolean symmetric)
+	{
+		int bound = Math.max(0, this.n - 1);
+		if(!symmetric) {
+			return bound;
+		}
+		int max = 0;
+		int[] level = new int[this.n];// 0 = unvisited
+		int[] queue = new int[this.n];
+		for(int s=0; s<this.n; s++) {
+			if(level[s] != 0) {
+				continue;
+			}
+			int head = 0;
+			int tail = 0;
+			level[s] = 1;
+			queue[tail++] = s;
+			while(head < tail) {
+				int u = queue[head++];
+				max = Math.max(max, 2 * (level[u] - 1));
+				for(int e=this.rowPtr[u]; e<this.rowPtr[u+1]; e++) {
+					int v = this.colIdx[e];
+					if(level[v] == 0) {
+						level[v] = level[u] + 1;
+						queue[tail++] = v;
 					}
 				}
-				distanceKm1 = distanceK;
-			}
-			if(LOG.isDebugEnabled() && missing>0){
-				LOG.debug("There are nodes without a path between them in this network!");
 			}
-			this.meanDist = (double) distSum / (double) numPaths;
 		}
-		return this.d;
-		// this is not safe! Return copy instead?
+		return Math.min(bound, Math.max(1, max));
 	}
 
 
 	/**
-	 * Get JAMA {@link Matrix} representation corresponding to this instance
-	 * @return a {@link Matrix}
+	 * Breadth-first search over the adjacency lists from a range of source
+	 * nodes, each filling its row of the distance store (only the upper
+	 * triangle if the store is symmetric).
 	 */
-	private Matrix getJAMA()
-	{
-		int n = a.length;
-		double[][] da = new double[n][n];
+	@SuppressWarnings("serial")
+	private static class BreadthFirstSearch extends RecursiveAction {
+
+		private final int[] rowPtr;
+		private final int[] colIdx;
+		private final DistanceStore dist;
+		private final int from;
+		private final int to;
+		private final int grain;
+
+		// results:
+		private long distSum = 0;
+		private long numPaths = 0;
+		private int maxDist = 0;
+
+
+		BreadthFirstSearch(int[] rowPtr, int[] colIdx, DistanceStore dist, int from, int to, int grain)
+		{
+			this.rowPtr = rowPtr;
+			this.colIdx = colIdx;
+			this.dist  = dist;
+			this.from  = from;
+			this.to    = to;
+			this.grain = grain;
+		}
+
 
-		for(int i=0; i<this.a.length; i++)
+		@Override
+		protected void compute()
 		{
-			for(int j=0; j<this.a[i].length; j++)
-			{
-				da[i][j] = this.a[i][j];
+			if(this.to - this.from <= this.grain) {
+				int n = this.dist.size();
+				int[] queue = new int[n];
+				int[] row = new int[n];// all NO_CONNECTION
+				for(int src=this.from; src<this.to; src++) {
+					int visited = this.search(src, queue, row);
+					// reset for the next source
+					for(int q=0; q<visited; q++) {
+						row[queue[q]] = NO_CONNECTION;
+					}
+				}
+				return;
 			}
+			int mid = (this.from + this.to) >>> 1;
+			BreadthFirstSearch left  = new BreadthFirstSearch(this.rowPtr, this.colIdx, this.dist, this.from, mid, this.grain);
+			BreadthFirstSearch right = new BreadthFirstSearch(this.rowPtr, this.colIdx, this.dist, mid, this.to, this.grain);
+			invokeAll(left, right);
+			this.distSum  = left.distSum + right.distSum;
+			this.numPaths = left.numPaths + right.numPaths;
+			this.maxDist  = Math.max(left.maxDist, right.maxDist);
+		}
+
+
+		/**
+		 * @return number of nodes in the queue (including the source)
+		 */
+		private int search(int src, int[] queue, int[] row)
+		{
+			boolean symmetric = this.dist.isSymmetric();
+			int head = 0;
+			int tail = 0;
+			queue[tail++] = src;
+			while(head < tail) {
+				int u = queue[head++];
+				int k = row[u] + 1;
+				for(int e=this.rowPtr[u], end=this.rowPtr[u+1]; e<end; e++) {
+					int v = this.colIdx[e];
+					if(v == src) {
+						if(u == src) {
+							// self-loop: a direct connection of length 1
+							this.distSum++;
+							this.numPaths++;
+							this.maxDist = Math.max(this.maxDist, 1);
+						}
+						continue;
+					}
+					if(row[v] == NO_CONNECTION) {
+						row[v] = k;
+						this.distSum += k;
+						this.numPaths++;
+						if(k > this.maxDist) {
+							this.maxDist = k;
+						}
+						if(!symmetric || v > src) {
+							this.dist.set(src, v, k);
+						}
+						queue[tail++] = v;
+					}
+				}
+			}
+			return tail;
 		}
-		return new Matrix(da);
 	}
 
 
@@ -253,7 +647,10 @@ public class AdjacencyMatrix {
 	 * @return <code>true</code> iff node i is connected directly to node j
 	 */
 	public boolean isConnected(int i, int j){
-		return this.a[i][j] != NO_CONNECTION;
+		if(this.complete) {
+			return i != j;
+		}
+		return Arrays.binarySearch(this.colIdx, this.rowPtr[i], this.rowPtr[i+1], j) >= 0;
 	}
 
 
@@ -266,7 +663,195 @@ public class AdjacencyMatrix {
 	 * @return an integer &gt;= 0
 	 */
 	public int size() {
-		return this.a.length;
+		return this.n;
+	}
+
+
+	// ===================================================================
+	//                                                             BUILDER
+	// ===================================================================
+
+	/**
+	 * Mutable adjacency lists for the construction of an {@link AdjacencyMatrix}.
+	 * The neighbors of each node are kept in ascending order, so that
+	 * {@link #isConnected(int, int)} and {@link #nextNeighbor(int, int)} run in
+	 * O(log degree) and updates in O(degree). Edge weights are not kept, i.e.
+	 * all edges of the built matrix have weight 1.
+	 */
+	public static class Builder {
+
+		private static final int INITIAL_DEGREE = 4;
+
+		private final int[][] rows;
+		private final int[] degree;
+
+
+		/**
+		 * Builder for a network without edges.
+		 * @param n -- number of nodes
+		 */
+		public Builder(int n)
+		{
+			this.rows = new int[n][];
+			this.degree = new int[n];
+		}
+
+
+		/**
+		 * Builder initialized with the edges of an existing matrix.
+		 * @param am
+		 */
+		public Builder(AdjacencyMatrix am)
+		{
+			this(am.n);
+			for(int i=0; i<am.n; i++) {
+				int deg = am.getDegree(i);
+				this.rows[i] = new int[Math.max(deg, INITIAL_DEGREE)];
+				for(int k=0; k<deg; k++) {
+					this.rows[i][k] = am.getNeighbor(i, k);
+				}
+				this.degree[i] = deg;
+			}
+		}
+
+
+		/**
+		 * @return the number of nodes
+		 */
+		public int size() {
+			return this.rows.length;
+		}
+
+
+		/**
+		 * Connect node i to node j (directed; use {@link #connect(int, int)}
+		 * for undirected edges).
+		 * @param i
+		 * @param j
+		 * @return <code>false</code> if the edge already existed
+		 */
+		public boolean set(int i, int j)
+		{
+			int[] row = this.rows[i];
+			int deg = this.degree[i];
+			int pos = null==row ? -1 : Arrays.binarySearch(row, 0, deg, j);
+			if(pos >= 0) {
+				return false;
+			}
+			if(null==row) {
+				row = new int[INITIAL_DEGREE];
+				this.rows[i] = row;
+			} else if(deg == row.length) {
+				row = Arrays.copyOf(row, 2*deg);
+				this.rows[i] = row;
+			}
+			pos = -(pos + 1);
+			System.arraycopy(row, pos, row, pos+1, deg-pos);
+			row[pos] = j;
+			this.degree[i] = deg + 1;
+			return true;
+		}
+
+
+		/**
+		 * Remove the (directed) edge from node i to node j.
+		 * @param i
+		 * @param j
+		 * @return <code>false</code> if there was no such edge
+		 */
+		public boolean unset(int i, int j)
+		{
+			int[] row = this.rows[i];
+			int deg = this.degree[i];
+			int pos = null==row ? -1 : Arrays.binarySearch(row, 0, deg, j);
+			if(pos < 0) {
+				return false;
+			}
+			System.arraycopy(row, pos+1, row, pos, deg-pos-1);
+			this.degree[i] = deg - 1;
+			return true;
+		}
+
+
+		/**
+		 * Add an undirected edge between nodes i and j.
+		 * @param i
+		 * @param j
+		 */
+		public void connect(int i, int j) {
+			this.set(i, j);
+			this.set(j, i);
+		}
+
+
+		/**
+		 * Remove the undirected edge between nodes i and j.
+		 * @param i
+		 * @param j
+		 */
+		public void disconnect(int i, int j) {
+			this.unset(i, j);
+			this.unset(j, i);
+		}
+
+
+		/**
+		 * @param i
+		 * @param j
+		 * @return <code>true</code> iff node i is connected to node j
+		 */
+		public boolean isConnected(int i, int j) {
+			int[] row = this.rows[i];
+			return null!=row && Arrays.binarySearch(row, 0, this.degree[i], j) >= 0;
+		}
+
+
+		/**
+		 * @param i
+		 * @return number of neighbors of node i
+		 */
+		public int getDegree(int i) {
+			return this.degree[i];
+		}
+
+
+		/**
+		 * Get the neighbor of node i with the smallest ID larger than j.
+		 * @param i
+		 * @param j -- use -1 to get the first neighbor
+		 * @return a node ID or -1 if there is no such neighbor
+		 */
+		public int nextNeighbor(int i, int j)
+		{
+			int[] row = this.rows[i];
+			int deg = this.degree[i];
+			if(null==row || deg==0) {
+				return -1;
+			}
+			int pos = Arrays.binarySearch(row, 0, deg, j);
+			pos = pos >= 0 ? pos + 1 : -(pos + 1);
+			return pos < deg ? row[pos] : -1;
+		}
+
+
+		/**
+		 * @return a new {@link AdjacencyMatrix} with the current edges
+		 */
+		public AdjacencyMatrix build()
+		{
+			int n = this.rows.length;
+			int[] rowPtr = new int[n + 1];
+			for(int i=0; i<n; i++) {
+				rowPtr[i+1] = rowPtr[i] + this.degree[i];
+			}
+			int[] colIdx = new int[rowPtr[n]];
+			for(int i=0; i<n; i++) {
+				if(this.degree[i] > 0) {
+					System.arraycopy(this.rows[i], 0, colIdx, rowPtr[i], this.degree[i]);
+				}
+			}
+			return new AdjacencyMatrix(n, rowPtr, colIdx, null, false);
+		}
 	}
 
 
@@ -274,7 +859,11 @@ public class AdjacencyMatrix {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + Arrays.hashCode(a);
+		result = prime * result + this.n;
+		result = prime * result + Arrays.hashCode(this.rowPtr);
+		result = prime * result + Arrays.hashCode(this.colIdx);
+		result = prime * result + Arrays.hashCode(this.weights);
+		result = prime * result + (this.complete ? 1231 : 1237);
 		return result;
 	}
 
@@ -288,7 +877,15 @@ public class AdjacencyMatrix {
 		if (getClass() != obj.getClass())
 			return false;
 		AdjacencyMatrix other = (AdjacencyMatrix) obj;
-		if (!Arrays.deepEquals(a, other.a))
+		if (this.n != other.n)
+			return false;
+		if (!Arrays.equals(this.rowPtr, other.rowPtr))
+			return false;
+		if (!Arrays.equals(this.colIdx, other.colIdx))
+			return false;
+		if (!Arrays.equals(this.weights, other.weights))
+			return false;
+		if (this.complete != other.complete)
 			return false;
 		return true;
 	}
@@ -0,0 +1,277 @@
+package sfb732.kamoso.net;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import sfb732.kamoso.util.AliasTable;
+import sfb732.kamoso.util.RandomStream;
+
+
+/**
+ * Index of the nodes of a network by their distance from each node, used for
+ * distance-based selection of speakers.
+ * <p>
+ * For every node, all other nodes are grouped into buckets by their hop
+ * distance d (0 for unreachable nodes, then 1 ... d<sub>max</sub>), in
+ * ascending order of distance and node ID. Since the closeness
+ * <code>1 - d/d<sub>max</sub></code> only depends on the bucket, weighted
+ * sampling by closeness reduces to sampling a bucket from an
+ * {@link AliasTable} (weighted by bucket size &times; closeness) and a node
+ * uniformly within the bucket.
+ * <p>
+ * The index takes O(n<sup>2</sup>) time and memory to build, in parallel for
+ * different nodes, and is immutable afterwards. It is kept in {@link IntPages},
+ * so that it may be stored in and memory-mapped from a
+ * {@link TopologyCache}; the alias tables (O(n d<sub>max</sub>)) are derived
+ * from the bucket sizes whenever an index is loaded.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+class DistanceIndex {
+
+	private final AdjacencyMatrix am;
+
+	private final int maxDist;
+
+	private final int n;
+
+	/** per node: all other nodes ordered by distance bucket and node ID (n-1 entries per node) */
+	private final IntPages nodes;
+
+	/** per node: start of each bucket in the nodes of the node (maxDist+2 entries per node) */
+	private final IntPages start;
+
+	/** per node: bucket weights; <code>null</code> if all weights are zero */
+	private final AliasTable[] alias;
+
+
+	/**
+	 * Constructor.
+	 * @param am -- adjacency matrix with computed distances
+	 */
+	DistanceIndex(AdjacencyMatrix am)
+	{
+		int n = am.size();
+		this.am = am;
+		this.n = n;
+		this.maxDist = am.getMaximumDistance();
+		this.nodes = IntPages.allocate((long) n * Math.max(0, n-1));
+		this.start = IntPages.allocate((long) n * (this.maxDist + 2));
+		this.alias = new AliasTable[n];
+		ForkJoinPool.commonPool().invoke(new Builder(am, 0, n, Math.max(1, n / (8 * ForkJoinPool.getCommonPoolParallelism()))));
+	}
+
+
+	/**
+	 * Constructor for an index which has been built before (see
+	 * {@link #getNodeEntries()} and {@link #getStartEntries()}).
+	 * @param am    -- adjacency matrix with computed distances
+	 * @param nodes
+	 * @param start
+	 */
+	DistanceIndex(AdjacencyMatrix am, IntPages nodes, IntPages start)
+	{
+		this.am = am;
+		this.n = am.size();
+		this.maxDist = am.getMaximumDistance();
+		if(nodes.size() != (long) this.n * Math.max(0, this.n-1) || start.size() != (long) this.n * (this.maxDist + 2)) {
+			throw new IllegalArgumentException("Size of distance index does not match network");
+		}
+		this.nodes = nodes;
+		this.start = start;
+		this.alias = new AliasTable[this.n];
+		for(int i=0; i<this.n; i++) {
+			this.alias[i] = this.createAliasTable(i);
+		}
+	}
+
+
+	/**
+	 * Create the alias table of the distance buckets of node i, weighted by
+	 * bucket size times closeness.
+	 * @param i
+	 * @return an alias table, or <code>null</code> if all weights are zero
+	 */
+	private AliasTable createAliasTable(int i)
+	{
+		double[] weights = new double[this.maxDist + 1];
+		boolean positive = false;
+		for(int b=0; b<=this.maxDist; b++) {
+			weights[b] = (this.getStart(i, b+1) - this.getStart(i, b)) * this.getCloseness(b);
+			positive |= weights[b] > 0.0;
+		}
+		return positive ? new AliasTable(weights) : null;
+	}
+
+
+	/**
+	 * Get the p-th of all nodes except i, ordered by their distance from
+	 * node i (unreachable nodes first) and by node ID.
+	 * @param i
+	 * @param p -- position in the range <code>[0 n-1)</code>
+	 * @return a node ID
+	 */
+	int getNode(int i, int p) {
+		return this.nodes.get((long) i * (this.n - 1) + p);
+	}
+
+
+	/**
+	 * Get the start of distance bucket b in the order of
+	 * {@link #getNode(int, int)}; bucket b ends at the start of bucket b+1.
+	 * @param i
+	 * @param b -- bucket in the range <code>[0 getMaximumDistance()+1]</code>
+	 * @return
+	 */
+	int getStart(int i, int b) {
+		return this.start.get((long) i * (this.maxDist + 2) + b);
+	}
+
+
+	/**
+	 * Select a node other than i with probability proportional to its
+	 * closeness to node i.
+	 * @param i
+	 * @param rand
+	 * @return a node ID
+	 */
+	int sample(int i, RandomStream rand)
+	{
+		AliasTable table = this.alias[i];
+		if(null==table) {
+			throw new IllegalStateException(String.format("There is no node with a closeness > 0 to node %d", i));
+		}
+		int b = table.sample(rand);
+		int from = this.getStart(i, b);
+		int size = this.getStart(i, b+1) - from;
+		return this.getNode(i, from + rand.nextInt(size));
+	}
+
+
+	/**
+	 * Get the distance bucket of node j for node i.
+	 * @param i
+	 * @param j -- a node other than i
+	 * @return
+	 */
+	int getBucket(int i, int j) {
+		return this.am.getDistance(i, j);
+	}
+
+
+	/**
+	 * @return maximum distance, i.e. the last distance bucket
+	 */
+	int getMaximumDistance() {
+		return this.maxDist;
+	}
+
+
+	/**
+	 * Write the nodes of all buckets to a channel (see
+	 * {@link #DistanceIndex(AdjacencyMatrix, IntPages, IntPages)}).
+	 * @param out
+	 * @throws IOException
+	 */
+	void writeNodes(WritableByteChannel out) throws IOException {
+		this.nodes.writeTo(out);
+	}
+
+
+	/**
+	 * Write the start of all buckets to a channel.
+	 * @param out
+	 * @throws IOException
+	 */
+	void writeStart(WritableByteChannel out) throws IOException {
+		this.start.writeTo(out);
+	}
+
+
+	/**
+	 * @return number of entries of the nodes of all buckets
+	 */
+	long getNodeEntries() {
+		return this.nodes.size();
+	}
+
+
+	/**
+	 * @return number of entries of the start of all buckets
+	 */
+	long getStartEntries() {
+		return this.start.size();
+	}
+
+
+	/**
+	 * Closeness of nodes in distance bucket d (see {@link Network#getSocialCloseness(sfb732.kamoso.pop.Agent, sfb732.kamoso.pop.Agent)}).
+	 * @param d
+	 * @return
+	 */
+	double getCloseness(int d) {
+		return 1.0 - (  d / (double)this.maxDist );
+	}
+
+
+	/**
+	 * Build the index for a range of nodes.
+	 */
+	@SuppressWarnings("serial")
+	private class Builder extends RecursiveAction {
+
+		private final AdjacencyMatrix am;
+		private final int from;
+		private final int to;
+		private final int grain;
+
+
+		Builder(AdjacencyMatrix am, int from, int to, int grain)
+		{
+			this.am    = am;
+			this.from  = from;
+			this.to    = to;
+			this.grain = grain;
+		}
+
+
+		@Override
+		protected void compute()
+		{
+			if(this.to - this.from > this.grain) {
+				int mid = (this.from + this.to) >>> 1;
+				invokeAll(new Builder(this.am, this.from, mid, this.grain), new Builder(this.am, mid, this.to, this.grain));
+				return;
+			}
+			int n = this.am.size();
+			int[] dist = new int[n];
+			for(int i=this.from; i<this.to; i++) {
+				// counting sort of the other nodes by distance
+				int[] pos = new int[maxDist + 2];
+				for(int j=0; j<n; j++) {
+					if(j != i) {
+						dist[j] = this.am.getDistance(i, j);
+						pos[dist[j] + 1]++;
+					}
+				}
+				for(int b=0; b<=maxDist; b++) {
+					pos[b+1] += pos[b];
+				}
+				long offset = (long) i * (maxDist + 2);
+				for(int b=0; b<pos.length; b++) {
+					start.set(offset + b, pos[b]);
+				}
+				offset = (long) i * (n - 1);
+				for(int j=0; j<n; j++) {
+					if(j != i) {
+						nodes.set(offset + pos[dist[j]]++, j);
+					}
+				}
+				alias[i] = createAliasTable(i);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,289 @@
+package sfb732.kamoso.net;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Compact storage of the hop distances between all pairs of nodes of a
+ * network.
+ * <p>
+ * For undirected networks only the upper triangle (i &lt; j) is stored, i.e.
+ * n(n-1)/2 entries; for directed networks all off-diagonal entries are
+ * stored. Each entry takes 1, 2 or 4 bytes, depending on the maximum
+ * distance which has to be represented. The entries are kept in pages of
+ * {@link ByteBuffer}s, either on the heap or memory-mapped from a file, so
+ * that the store can exceed both the maximum array size and (if mapped) the
+ * available heap.
+ * <p>
+ * Different threads may write distinct entries concurrently.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+public class DistanceStore {
+
+	private static final Logger LOG = LogManager.getLogger(DistanceStore.class.getCanonicalName());
+
+	/** maximum size of a page in bytes */
+	private static final int PAGE_BYTES = 1 << 30;
+
+	private final int n;
+	private final boolean symmetric;
+	private final int width;// bytes per entry: 1, 2 or 4
+	private final long entries;
+
+	private final int pageShift;// log2 of entries per page
+	private final long pageMask;
+	private final ByteBuffer[] pages;
+
+
+	/**
+	 * Constructor.
+	 * @param n           -- number of nodes
+	 * @param symmetric   -- if <code>true</code>, d(i,j) = d(j,i) is stored once
+	 * @param maxDistance -- largest distance which must be representable
+	 * @param file        -- file to memory-map the store from, or
+	 *   <code>null</code> to keep the store on the heap; the contents of an
+	 *   existing file are overwritten
+	 */
+	public DistanceStore(int n, boolean symmetric, long maxDistance, File file)
+	{
+		this(n, symmetric, getWidth(maxDistance));
+
+		if(null==file) {
+			for(int p=0; p<this.pages.length; p++) {
+				this.pages[p] = ByteBuffer.allocate((int) (this.getPageEntries(p) * this.width));
+			}
+		} else {
+			this.map(file);
+		}
+		if(LOG.isDebugEnabled()) {
+			LOG.debug(String.format("Distance store: %d nodes, %d entries of %d byte(s)%s", n, this.entries, this.width,
+					null==file ? "" : " mapped from " + file.getAbsolutePath()));
+		}
+	}
+
+
+	/**
+	 * Constructor without pages.
+	 */
+	private DistanceStore(int n, boolean symmetric, int width)
+	{
+		this.n = n;
+		this.symmetric = symmetric;
+		this.width = width;
+		this.entries = symmetric ? (long) n * (n - 1) / 2 : (long) n * (n - 1);
+
+		this.pageShift = Integer.numberOfTrailingZeros(PAGE_BYTES / this.width);
+		this.pageMask  = (1L << this.pageShift) - 1;
+		int numPages = (int) ((this.entries + this.pageMask) >>> this.pageShift);
+		this.pages = new ByteBuffer[numPages];
+	}
+
+
+	/**
+	 * Map a store which has been written before (see
+	 * {@link #writeTo(WritableByteChannel)}) from a file.
+	 * @param channel
+	 * @param offset    -- position of the first entry in the file
+	 * @param n         -- number of nodes
+	 * @param symmetric
+	 * @param width     -- bytes per entry
+	 * @param mode
+	 * @return
+	 * @throws IOException
+	 */
+	static DistanceStore map(FileChannel channel, long offset, int n, boolean symmetric, int width, FileChannel.MapMode mode) throws IOException
+	{
+		if(width != 1 && width != 2 && width != 4) {
+			throw new IllegalArgumentException("Invalid width of distance store: " + width);
+		}
+		DistanceStore store = new DistanceStore(n, symmetric, width);
+		store.map(channel, offset, mode);
+		return store;
+	}
+
+
+	/**
+	 * Get the number of bytes per entry required for a maximum distance.
+	 */
+	private static int getWidth(long maxDistance)
+	{
+		if(maxDistance < 0) {
+			throw new IllegalArgumentException("Maximum distance must not be negative");
+		}
+		if(maxDistance <= 0xFF) {
+			return 1;
+		} else if(maxDistance <= 0xFFFF) {
+			return 2;
+		}
+		return 4;
+	}
+
+
+	private long getPageEntries(int page) {
+		return Math.min(this.pageMask + 1, this.entries - ((long) page << this.pageShift));
+	}
+
+
+	private void map(File file)
+	{
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "rw");
+			// truncate first: all entries start with NO_CONNECTION
+			raf.setLength(0);
+			raf.setLength(this.getByteSize());
+			this.map(raf.getChannel(), 0L, FileChannel.MapMode.READ_WRITE);
+			// the mappings remain valid after the channel has been closed
+		} catch (IOException e) {
+			String msg = String.format("Could not map distance store to file: %s", file.getAbsolutePath());
+			LOG.fatal(msg, e);
+			throw new RuntimeException(msg, e);
+		} finally {
+			if(null!=raf) {
+				try {
+					raf.close();
+				} catch (IOException e) {
+					LOG.error("Could not close distance store file", e);
+				}
+			}
+		}
+	}
+
+
+	private void map(FileChannel channel, long offset, FileChannel.MapMode mode) throws IOException
+	{
+		for(int p=0; p<this.pages.length; p++) {
+			long pos = offset + ((long) p << this.pageShift) * this.width;
+			this.pages[p] = channel.map(mode, pos, this.getPageEntries(p) * this.width);
+		}
+	}
+
+
+	/**
+	 * Write all entries to the current position of a channel.
+	 * @param out
+	 * @throws IOException
+	 */
+	void writeTo(WritableByteChannel out) throws IOException
+	{
+		for(ByteBuffer page : this.pages) {
+			ByteBuffer b = page.duplicate();
+			b.clear();
+			while(b.hasRemaining()) {
+				out.write(b);
+			}
+		}
+	}
+
+
+	/**
+	 * @return number of bytes of all entries
+	 */
+	long getByteSize() {
+		return this.entries * this.width;
+	}
+
+
+	/**
+	 * Get index of the entry for the node pair (i,j) with i != j.
+	 */
+	private long getIndex(int i, int j)
+	{
+		if(!this.symmetric) {
+			// row-major without the diagonal
+			return (long) i * (this.n - 1) + (j < i ? j : j - 1);
+		}
+		if(i > j) {
+			int t = i;
+			i = j;
+			j = t;
+		}
+		// upper triangle, row-major
+		return (long) i * (2L * this.n - i - 1) / 2 + (j - i - 1);
+	}
+
+
+	/**
+	 * Get the distance between nodes i and j.
+	 * @param i
+	 * @param j
+	 * @return the stored distance; 0 if i == j
+	 */
+	public int get(int i, int j)
+	{
+		if(i == j) {
+			return 0;
+		}
+		long ix = this.getIndex(i, j);
+		ByteBuffer page = this.pages[(int) (ix >>> this.pageShift)];
+		int pos = (int) (ix & this.pageMask) * this.width;
+		switch (this.width) {
+		case 1:
+			return page.get(pos) & 0xFF;
+		case 2:
+			return page.getShort(pos) & 0xFFFF;
+		default:
+			return page.getInt(pos);
+		}
+	}
+
+
+	/**
+	 * Set the distance between nodes i and j (i != j). For symmetric
+	 * stores, this also sets the distance between j and i.
+	 * @param i
+	 * @param j
+	 * @param d
+	 */
+	public void set(int i, int j, int d)
+	{
+		long ix = this.getIndex(i, j);
+		ByteBuffer page = this.pages[(int) (ix >>> this.pageShift)];
+		int pos = (int) (ix & this.pageMask) * this.width;
+		switch (this.width) {
+		case 1:
+			page.put(pos, (byte) d);
+			break;
+		case 2:
+			page.putShort(pos, (short) d);
+			break;
+		default:
+			page.putInt(pos, d);
+			break;
+		}
+	}
+
+
+	/**
+	 * @return <code>true</code> if only one triangle of distances is stored
+	 */
+	public boolean isSymmetric() {
+		return this.symmetric;
+	}
+
+
+	/**
+	 * @return number of bytes per entry
+	 */
+	public int getWidth() {
+		return this.width;
+	}
+
+
+	/**
+	 * @return number of nodes
+	 */
+	public int size() {
+		return this.n;
+	}
+
+}
@@ -0,0 +1,107 @@
+package sfb732.kamoso.net;
+
+import java.util.Arrays;
+
+
+/**
+ * Growable list of directed edges for generating network topologies. The
+ * edges are sorted into compressed sparse rows when the adjacency matrix is
+ * built (see {@link AdjacencyMatrix#fromEdges(int, int[], int[], double[], int)}),
+ * i.e. generators take memory proportional to the number of edges, and an
+ * edge may be added more than once.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+class EdgeList {
+
+	private static final int INITIAL_EDGES = 1 << 10;
+
+	private int[] from;
+	private int[] to;
+
+	/** number of edges */
+	private int m = 0;
+
+
+	EdgeList()
+	{
+		this(INITIAL_EDGES);
+	}
+
+
+	/**
+	 * @param capacity -- initial number of edges
+	 */
+	EdgeList(int capacity)
+	{
+		capacity = Math.max(capacity, 1);
+		this.from = new int[capacity];
+		this.to   = new int[capacity];
+	}
+
+
+	/**
+	 * Add the directed edge from node i to node j.
+	 * @param i
+	 * @param j
+	 */
+	void set(int i, int j)
+	{
+		if(this.m == this.from.length) {
+			int capacity = this.m + (this.m >> 1) + 1;
+			this.from = Arrays.copyOf(this.from, capacity);
+			this.to   = Arrays.copyOf(this.to, capacity);
+		}
+		this.from[this.m] = i;
+		this.to[this.m] = j;
+		this.m++;
+	}
+
+
+	/**
+	 * Add an undirected edge between nodes i and j.
+	 * @param i
+	 * @param j
+	 */
+	void connect(int i, int j)
+	{
+		this.set(i, j);
+		this.set(j, i);
+	}
+
+
+	/**
+	 * @return number of edges added so far (including duplicates)
+	 */
+	int size() {
+		return this.m;
+	}
+
+
+	/**
+	 * @param e -- index of an edge in the order of addition
+	 * @return start node of edge e
+	 */
+	int getFrom(int e) {
+		return this.from[e];
+	}
+
+
+	/**
+	 * @param e -- index of an edge in the order of addition
+	 * @return end node of edge e
+	 */
+	int getTo(int e) {
+		return this.to[e];
+	}
+
+
+	/**
+	 * @param n -- number of nodes; all node IDs must be smaller
+	 * @return a new {@link AdjacencyMatrix} with the edges of this list
+	 */
+	AdjacencyMatrix build(int n) {
+		return AdjacencyMatrix.fromEdges(n, this.from, this.to, null, this.m);
+	}
+
+}
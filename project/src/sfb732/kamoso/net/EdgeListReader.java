@@ -0,0 +1,315 @@
+package sfb732.kamoso.net;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Streaming reader for network edge lists in CSV format.
+ * <p>
+ * Expected format:<br/>
+ * - comma separated values in plain text file<br/>
+ * - one line per edge<br/>
+ * - first column: starting node ID<br/>
+ * - second column: end node ID<br/>
+ * - the column with the header <i>weight</i> (optional): edge weight;
+ *   edges with weight 0 are ignored, empty cells count as weight 1<br/>
+ * - other columns are ignored<br/>
+ * - the first non-empty line is treated as header<br/>
+ * - node IDs are non-negative integers
+ * <p>
+ * The file is read through a channel in blocks and parsed byte by byte into
+ * primitive edge arrays, which are sorted into compressed sparse rows (see
+ * {@link AdjacencyMatrix#fromEdges(int, int[], int[], double[], int)}). The
+ * memory required is proportional to the number of edges; no strings are
+ * created except for non-integer weights.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+public final class EdgeListReader {
+
+	private static final Logger LOG = LogManager.getLogger(EdgeListReader.class.getCanonicalName());
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private static final int INITIAL_EDGES = 1 << 10;
+
+	private static final String COL_WEIGHT = "weight";
+
+
+	/**
+	 * Read an edge list from a CSV file.
+	 * @param inFile
+	 * @return the adjacency matrix of the network; the number of nodes is
+	 *   the largest node ID plus one
+	 * @throws IOException if the file cannot be read
+	 * @throws RuntimeException if the file is malformed
+	 */
+	public static AdjacencyMatrix read(File inFile) throws IOException
+	{
+		EdgeListReader reader = new EdgeListReader();
+		reader.parse(inFile);
+		LOG.debug(String.format("Read %d edges between %d nodes%s", reader.m, reader.maxID + 1,
+				null==reader.weight ? "" : " (weighted)"));
+		return AdjacencyMatrix.fromEdges(reader.maxID + 1, reader.from, reader.to, reader.weight, reader.m);
+	}
+
+
+	// ===================================================================
+	//
+	// ===================================================================
+
+	private int[] from = new int[INITIAL_EDGES];
+	private int[] to = new int[INITIAL_EDGES];
+
+	/** edge weights; <code>null</code> as long as all weights are 1 */
+	private double[] weight;
+
+	/** number of edges */
+	private int m = 0;
+
+	private int maxID = -1;
+
+	private boolean header = true;
+
+	/** index of the weight column, or -1 */
+	private int weightColumn = -1;
+
+	/** current line number (1-based) and parser position */
+	private int line = 0;
+	private int pos;
+
+
+	private EdgeListReader() {}
+
+
+	private void parse(File inFile) throws IOException
+	{
+		FileInputStream in = new FileInputStream(inFile);
+		try {
+			FileChannel channel = in.getChannel();
+			byte[] b = new byte[BUFFER_SIZE];
+			ByteBuffer buffer = ByteBuffer.wrap(b);
+			int len = 0;// number of valid bytes in b
+			while(true)
+			{
+				buffer.limit(b.length).position(len);
+				int r = channel.read(buffer);
+				if(r < 0) {
+					break;
+				}
+				len += r;
+
+				// parse all complete lines
+				int start = 0;
+				for(int k=0; k<len; k++) {
+					if(b[k] == '\n') {
+						this.parseLine(b, start, k);
+						start = k + 1;
+					}
+				}
+				System.arraycopy(b, start, b, 0, len - start);
+				len -= start;
+				if(len == b.length) {
+					// line longer than the buffer
+					b = Arrays.copyOf(b, 2 * b.length);
+					buffer = ByteBuffer.wrap(b);
+				}
+			}
+			if(len > 0) {
+				this.parseLine(b, 0, len);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+
+	/**
+	 * Parse the line <code>b[start ... end)</code> without line break.
+	 */
+	private void parseLine(byte[] b, int start, int end)
+	{
+		this.line++;
+		if(end > start && b[end-1] == '\r') {
+			end--;
+		}
+		this.pos = start;
+		this.skipBlanks(b, end);
+		if(this.pos == end) {
+			return;// ignore empty lines
+		}
+		if(this.header) {
+			this.header = false;
+			this.parseHeader(b, start, end);
+			return;
+		}
+
+		int i = this.parseID(b, end, "from");
+		this.nextColumn(b, end, "to");
+		int j = this.parseID(b, end, "to");
+		double w = 1.0;
+		if(this.weightColumn > 1) {
+			// skip to the weight column
+			int col = 1;
+			while(this.pos < end && col < this.weightColumn) {
+				if(b[this.pos] == ',') {
+					col++;
+				}
+				this.pos++;
+			}
+			if(col == this.weightColumn) {
+				w = this.parseWeight(b, end);
+			}
+		}
+		this.add(i, j, w);
+	}
+
+
+	/**
+	 * Find the weight column in the header <code>b[start ... end)</code>.
+	 */
+	private void parseHeader(byte[] b, int start, int end)
+	{
+		String[] columns = new String(b, start, end - start, StandardCharsets.UTF_8).split(",", -1);
+		for(int c=0; c<columns.length; c++) {
+			if(columns[c].replace("\"", "").trim().equalsIgnoreCase(COL_WEIGHT)) {
+				this.weightColumn = c;
+				break;
+			}
+		}
+	}
+
+
+	private void add(int i, int j, double w)
+	{
+		if(this.m == this.from.length) {
+			int capacity = this.m + (this.m >> 1);
+			this.from = Arrays.copyOf(this.from, capacity);
+			this.to   = Arrays.copyOf(this.to, capacity);
+			if(null!=this.weight) {
+				this.weight = Arrays.copyOf(this.weight, capacity);
+			}
+		}
+		if(w != 1.0 && null==this.weight) {
+			this.weight = new double[this.from.length];
+			Arrays.fill(this.weight, 0, this.m, 1.0);
+		}
+		this.from[this.m] = i;
+		this.to[this.m] = j;
+		if(null!=this.weight) {
+			this.weight[this.m] = w;
+		}
+		this.m++;
+		this.maxID = Math.max(this.maxID, Math.max(i, j));
+	}
+
+
+	private void skipBlanks(byte[] b, int end)
+	{
+		while(this.pos < end && (b[this.pos] == ' ' || b[this.pos] == '\t')) {
+			this.pos++;
+		}
+	}
+
+
+	/**
+	 * Move to the start of the next column.
+	 */
+	private void nextColumn(byte[] b, int end, String column)
+	{
+		if(this.pos == end || b[this.pos] != ',') {
+			throw new RuntimeException(String.format("Missing %s-ID in line %d", column, this.line));
+		}
+		this.pos++;
+	}
+
+
+	/**
+	 * Parse a node ID and move to the end of the column.
+	 */
+	private int parseID(byte[] b, int end, String column)
+	{
+		this.skipBlanks(b, end);
+		if(this.pos < end && b[this.pos] == '-') {
+			String str = String.format("Node ID must not be <0! Found negative %s-ID in line %d", column, this.line);
+			throw new RuntimeException(str);
+		}
+		long id = 0;
+		int digits = 0;
+		while(this.pos < end && b[this.pos] >= '0' && b[this.pos] <= '9') {
+			id = 10 * id + (b[this.pos] - '0');
+			if(id > Integer.MAX_VALUE - 1) {
+				throw new RuntimeException(String.format("Node ID too large: %s-ID in line %d", column, this.line));
+			}
+			digits++;
+			this.pos++;
+		}
+		this.skipBlanks(b, end);
+		if(digits == 0 || (this.pos < end && b[this.pos] != ',')) {
+			throw new RuntimeException(String.format("Invalid %s-ID in line %d", column, this.line));
+		}
+		return (int) id;
+	}
+
+
+	/**
+	 * Parse an edge weight and move to the end of the column.
+	 */
+	private double parseWeight(byte[] b, int end)
+	{
+		this.skipBlanks(b, end);
+		int start = this.pos;
+		while(this.pos < end && b[this.pos] != ',') {
+			this.pos++;
+		}
+		int stop = this.pos;
+		while(stop > start && (b[stop-1] == ' ' || b[stop-1] == '\t')) {
+			stop--;
+		}
+		if(stop == start) {
+			return 1.0;// empty column
+		}
+
+		double w;
+		if(stop - start <= 15 && isDigits(b, start, stop)) {
+			// integer weights (exact)
+			long v = 0;
+			for(int k=start; k<stop; k++) {
+				v = 10 * v + (b[k] - '0');
+			}
+			w = v;
+		} else {
+			String str = new String(b, start, stop - start, StandardCharsets.US_ASCII);
+			try {
+				w = Double.parseDouble(str);
+			} catch (NumberFormatException e) {
+				throw new RuntimeException(String.format("Invalid edge weight <%s> in line %d", str, this.line), e);
+			}
+		}
+		if(!(w >= 0.0) || Double.isInfinite(w)) {
+			throw new RuntimeException(String.format("Edge weight must be finite and >=0! Found <%s> in line %d", Double.toString(w), this.line));
+		}
+		return w;
+	}
+
+
+	private static boolean isDigits(byte[] b, int start, int stop)
+	{
+		for(int k=start; k<stop; k++) {
+			if(b[k] < '0' || b[k] > '9') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -1,15 +1,15 @@
 package sfb732.kamoso.net;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import sfb732.kamoso.conf.Configuration;
+import sfb732.kamoso.util.CSVEncoder;
 
 
 /**
@@ -25,7 +25,8 @@ public class EpochStatistics {
 
 
 	private final File outFile;
-	private final OutputStreamWriter writer;
+	private final OutputStream file;
+	private final CSVEncoder writer;
 	private final char colsep;
 	private final String timeStamp;
 
@@ -39,27 +40,29 @@ public class EpochStatistics {
 	public EpochStatistics(Configuration conf, File outFile) throws IOException {
 		this.outFile = outFile;
 		this.colsep = SEP;
-		this.writer = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(outFile)), Configuration.DEFAULT_ENCODING);
+		this.file = new FileOutputStream(outFile);
+		this.writer = new CSVEncoder(this.file);
 		this.timeStamp = conf.getTimestamp();
 
 		// write header:
-		this.writer.write(String.format("timestamp%sepoch%sproductionsA%sproductionsB%s", colsep, colsep, colsep, END));
+		this.writer.append(String.format("timestamp%sepoch%sproductionsA%sproductionsB%s", colsep, colsep, colsep, END));
 		this.writer.flush();
 	}
 
 
+	/**
+	 * Add a row. Rows are buffered; the file is complete after {@link #close()}.
+	 * @param epoch
+	 * @param productionsA
+	 * @param productionsB
+	 */
 	public void addRow(int epoch, int productionsA, int productionsB)
 	{
 		try {
-			this.writer.write(this.timeStamp);
-			this.writer.write(colsep);
-			this.writer.write(String.valueOf(epoch));
-			this.writer.write(colsep);
-			this.writer.write(String.valueOf(productionsA));
-			this.writer.write(colsep);
-			this.writer.write(String.valueOf(productionsB));
-			this.writer.write(END);
-			this.writer.flush();
+			this.writer.append(this.timeStamp).append(colsep);
+			this.writer.append(epoch).append(colsep);
+			this.writer.append(productionsA).append(colsep);
+			this.writer.append(productionsB).append(END);
 		} catch (IOException e) {
 			LOG.error("Could not write statistics to file", e);
 		}
@@ -74,7 +77,11 @@ public class EpochStatistics {
 	 */
 	public void close() {
 		try {
-			this.writer.close();
+			try {
+				this.writer.finish();
+			} finally {
+				this.file.close();
+			}
 			if(LOG.isDebugEnabled()){
 				LOG.debug(String.format("writer closed for file %s", this.outFile.getAbsolutePath()));
 			}
@@ -0,0 +1,109 @@
+package sfb732.kamoso.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+
+/**
+ * Array of integers with a long index, kept in pages of {@link ByteBuffer}s
+ * either on the heap or memory-mapped from a file (see {@link DistanceStore}
+ * for the same layout of distances).
+ * <p>
+ * Different threads may write distinct entries concurrently.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+class IntPages {
+
+	/** log2 of the number of entries per page (1 GiB per page) */
+	private static final int PAGE_SHIFT = 28;
+	private static final long PAGE_MASK = (1L << PAGE_SHIFT) - 1;
+
+	private final long size;
+	private final ByteBuffer[] pages;
+
+
+	private IntPages(long size)
+	{
+		this.size = size;
+		this.pages = new ByteBuffer[(int) ((size + PAGE_MASK) >>> PAGE_SHIFT)];
+	}
+
+
+	/**
+	 * Allocate an array on the heap.
+	 * @param size -- number of entries
+	 * @return
+	 */
+	static IntPages allocate(long size)
+	{
+		IntPages a = new IntPages(size);
+		for(int p=0; p<a.pages.length; p++) {
+			a.pages[p] = ByteBuffer.allocate(a.getPageEntries(p) * 4);
+		}
+		return a;
+	}
+
+
+	/**
+	 * Map an array from a file.
+	 * @param channel
+	 * @param offset -- position of the first entry in the file
+	 * @param size   -- number of entries
+	 * @param mode
+	 * @return
+	 * @throws IOException
+	 */
+	static IntPages map(FileChannel channel, long offset, long size, FileChannel.MapMode mode) throws IOException
+	{
+		IntPages a = new IntPages(size);
+		for(int p=0; p<a.pages.length; p++) {
+			long pos = offset + ((long) p << PAGE_SHIFT) * 4;
+			a.pages[p] = channel.map(mode, pos, (long) a.getPageEntries(p) * 4);
+		}
+		return a;
+	}
+
+
+	private int getPageEntries(int page) {
+		return (int) Math.min(PAGE_MASK + 1, this.size - ((long) page << PAGE_SHIFT));
+	}
+
+
+	int get(long i) {
+		return this.pages[(int) (i >>> PAGE_SHIFT)].getInt((int) (i & PAGE_MASK) << 2);
+	}
+
+
+	void set(long i, int v) {
+		this.pages[(int) (i >>> PAGE_SHIFT)].putInt((int) (i & PAGE_MASK) << 2, v);
+	}
+
+
+	/**
+	 * @return number of entries
+	 */
+	long size() {
+		return this.size;
+	}
+
+
+	/**
+	 * Write all entries to the current position of a channel.
+	 * @param out
+	 * @throws IOException
+	 */
+	void writeTo(WritableByteChannel out) throws IOException
+	{
+		for(ByteBuffer page : this.pages) {
+			ByteBuffer b = page.duplicate();
+			b.clear();
+			while(b.hasRemaining()) {
+				out.write(b);
+			}
+		}
+	}
+
+}
@@ -7,13 +7,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.ConcurrentModificationException;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
-import java.util.regex.Pattern;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -21,7 +18,8 @@ import org.apache.logging.log4j.Logger;
 import sfb732.kamoso.conf.Configuration;
 import sfb732.kamoso.pop.Agent;
 import sfb732.kamoso.pop.Interaction;
-import sfb732.kamoso.util.MyFileHelper;
+import sfb732.kamoso.util.RandomStream;
+import sfb732.kamoso.util.SumTree;
 
 
 
@@ -35,6 +33,9 @@ public class Network implements Iterable<Agent> {
 
 	private static final Logger LOG = LogManager.getLogger(Network.class.getCanonicalName());
 
+	/** number of rejected speakers after which a listener is checked for eligible speakers */
+	private static final int REJECTION_CHECK = 1 << 10;
+
 
 
 	/**
@@ -43,10 +44,14 @@ public class Network implements Iterable<Agent> {
 	 * - one line per edge<br/>
 	 * - first column: starting node ID<br/>
 	 * - second column: end node ID<br/>
+	 * - column <i>weight</i> (optional): edge weight; edges with weight 0
+	 *   are ignored<br/>
 	 * - other columns are ignored<br/>
 	 * - first line is treated as header, thus, the total number of edges is
 	 *   equal to the number of non-empty lines in the file minus one<br/>
 	 * - node IDs are strings of the form &lt;INTEGER_ID&gt;
+	 * <p>
+	 * The file is streamed by an {@link EdgeListReader}.
 	 * @param inFile
 	 * @return
 	 */
@@ -56,59 +61,7 @@ public class Network implements Iterable<Agent> {
 		AdjacencyMatrix am = null;
 
 		try {
-			String[] lines = MyFileHelper.getLines(inFile, true, true);
-
-			HashMap<Integer, HashSet<Integer>> edgeMap = new HashMap<Integer, HashSet<Integer>>();
-
-			Pattern pattern = Pattern.compile(",");
-
-			int maxID = -1;
-
-			for(int lx=1; lx<lines.length; lx++)
-			{
-				String zeile = lines[lx];
-				String[] vals = pattern.split(zeile);
-				Integer from = Integer.valueOf(vals[0]);
-				Integer to   = Integer.valueOf(vals[1]);
-
-				if(from.intValue() < 0){
-					String str = String.format("Node ID must not be <0! Found from-ID=<%s> near line %d", vals[0], lx);
-					throw new RuntimeException(str);
-				}
-				if(to.intValue() < 0){
-					String str = String.format("Node ID must not be <0! Found to-ID=<%s> near line %d", vals[1], lx);
-					throw new RuntimeException(str);
-				}
-
-				if(from.intValue() > maxID) {
-					maxID = from.intValue();
-				}
-				if(to.intValue() > maxID) {
-					maxID = to.intValue();
-				}
-
-				if( ! edgeMap.containsKey(from)){
-					HashSet<Integer> outNodes = new HashSet<Integer>();
-					edgeMap.put(from, outNodes);
-				}
-				edgeMap.get(from).add(to);
-			}
-
-			// The following step may blow up your memory:
-			//TODO check if matrix may get too large?
-			int n = maxID + 1;
-			int[][] matrix = new int[n][n];
-
-			Iterator<Integer> it = edgeMap.keySet().iterator();
-			while(it.hasNext()) {
-				Integer from = it.next();
-				for(Integer to : edgeMap.get(from)){
-					matrix[from.intValue()][to.intValue()] = 1;
-				}
-			}
-
-			am = new AdjacencyMatrix(matrix);
-
+			am = EdgeListReader.read(inFile);
 		} catch (Exception e) {
 			LOG.error("Could not read adjacency matrix from CSV file", e);
 			am = null;
@@ -162,13 +115,41 @@ public class Network implements Iterable<Agent> {
 
 	private final int numTeachers;
 
-	private double[] statusArray;
+	/** status weights of potential speakers (0 for new-born agents) */
+	private final double[] statusWeights;
+
+	/** sum tree of {@link #statusWeights} */
+	private final SumTree statusTree;
+
+	/** number of nodes with a status weight &gt; 0 */
+	private int numStatusWeights;
 
-	private final double[][] closenessMap;
+	/** potential speakers, i.e. nodes with agents above age 0, in arbitrary order */
+	private final int[] speakers;
+
+	/** position of each node in {@link #speakers}, or -1 */
+	private final int[] speakerPos;
+
+	private int numSpeakers;
+
+	/** sum tree of potential speakers (weight 1) in the order of node IDs */
+	private final SumTree speakerTree;
+
+	/** marks for selecting speakers without replacement, one array per thread */
+	private final ThreadLocal<boolean[]> speakerMarks = new ThreadLocal<boolean[]>() {
+		@Override
+		protected boolean[] initialValue() {
+			return new boolean[nodes.length];
+		}
+	};
 
 	private long modCount = Long.MIN_VALUE;
 
-	private int[][] closenessSorted;
+	/** cache of distances and the distance index, or <code>null</code> */
+	private final TopologyCache cache;
+
+	/** nodes by distance, initialized on first use */
+	private volatile DistanceIndex distanceIndex;
 
 
 	/**
@@ -189,23 +170,35 @@ public class Network implements Iterable<Agent> {
 
 		this.numTeachers = _nt;
 
-		// pre-compute closeness map (e.g. for distance based interaction)
-		this.closenessMap = new double[n][n];
-
-		double md = this.edges.getMaximumDistance();
+		// pre-compute distances (closeness is derived on demand)
+		File cacheDir = conf.getNetworkCacheDir();
+		if(a.isComplete()) {
+			// all distances are 1
+			this.cache = null;
+		} else if(null==cacheDir) {
+			this.cache = null;
+			this.edges.computeDistances(conf.getNetworkDistanceFile());
+		} else {
+			this.cache = new TopologyCache(cacheDir, this.edges);
+			this.cache.initDistances();
+		}
 
 		this.nodes = new Node[n];
 		for(int i=0; i<n; i++) {
 			this.nodes[i] = new Node();
-			for(int j=0; j<n; j++) {
-				double c = 1.0 - (this.edges.getDistance(i, j) / md);
-				this.closenessMap[i][j] = c;
-			}
 		}
-		this.initClosenessSorted();
 
 		// initialize status index
-		this.statusArray = new double[this.nodes.length];
+		this.statusWeights = new double[this.nodes.length];
+		this.statusTree = new SumTree(this.nodes.length);
+		this.numStatusWeights = 0;
+
+		// initialize speaker index
+		this.speakers = new int[this.nodes.length];
+		this.speakerPos = new int[this.nodes.length];
+		Arrays.fill(this.speakerPos, -1);
+		this.numSpeakers = 0;
+		this.speakerTree = new SumTree(this.nodes.length);
 	}
 
 
@@ -224,13 +217,54 @@ public class Network implements Iterable<Agent> {
 				//TODO set lexicon capacity in config
 				Agent k = conf.getNewborn(i, smith.isStar(), smith.getLexiconCapacity());
 				this.nodes[i].agent = k;
-				this.statusArray[i] = k.getStatus();
 				this.modCount++;
 			}
+			// new-born agents of the last epoch become speakers
+			this.updateSpeaker(i);
 		}
 	}
 
 
+	/**
+	 * Update the indices of potential speakers and of status weights for
+	 * node i.
+	 * @param i
+	 */
+	private void updateSpeaker(int i)
+	{
+		Agent a = this.nodes[i].agent;
+		boolean speaker = a.getAge() > 0;
+		if(speaker && this.speakerPos[i] < 0) {
+			this.speakerPos[i] = this.numSpeakers;
+			this.speakers[this.numSpeakers] = i;
+			this.numSpeakers++;
+			this.speakerTree.add(i, 1.0);
+		} else if(!speaker && this.speakerPos[i] >= 0) {
+			// move last speaker to the free position
+			int pos = this.speakerPos[i];
+			int last = this.speakers[this.numSpeakers - 1];
+			this.speakers[pos] = last;
+			this.speakerPos[last] = pos;
+			this.speakerPos[i] = -1;
+			this.numSpeakers--;
+			this.speakerTree.add(i, -1.0);
+		}
+
+		double w = 0.0;
+		if(speaker) {
+			// status <= 0: never selected; status >= 1: always selected
+			w = Math.min(1.0, Math.max(0.0, a.getStatus()));
+		}
+		double old = this.statusWeights[i];
+		if(w == old) {
+			return;
+		}
+		this.statusWeights[i] = w;
+		this.statusTree.add(i, w - old);
+		this.numStatusWeights += (w > 0.0 ? 1 : 0) - (old > 0.0 ? 1 : 0);
+	}
+
+
 
 	public boolean isConnected(int i, int j) {
 		return this.edges.isConnected(i, j);
@@ -265,6 +299,25 @@ public class Network implements Iterable<Agent> {
 		return this.edges.getNeighbors(i);
 	}
 
+	/**
+	 * Get the number of direct neighbors of node i
+	 * @param i
+	 * @return
+	 */
+	public int getDegree(int i) {
+		return this.edges.getDegree(i);
+	}
+
+	/**
+	 * Get the k-th direct neighbor of node i (see {@link AdjacencyMatrix#getNeighbor(int, int)})
+	 * @param i
+	 * @param k -- index in the range <code>[0 getDegree(i))</code>
+	 * @return
+	 */
+	public int getNeighbor(int i, int k) {
+		return this.edges.getNeighbor(i, k);
+	}
+
 	/**
 	 * Get mean distance between nodes in this network.
 	 * @return
@@ -294,7 +347,18 @@ public class Network implements Iterable<Agent> {
 	 * @return
 	 */
 	public double getSocialCloseness(Agent a, Agent b) {
-		int d = this.edges.getDistance(a.getNodeId(), b.getNodeId());
+		return this.getCloseness(a.getNodeId(), b.getNodeId());
+	}
+
+
+	/**
+	 * The closeness of nodes i and j (see {@link #getSocialCloseness(Agent, Agent)}).
+	 * @param i
+	 * @param j
+	 * @return
+	 */
+	private double getCloseness(int i, int j) {
+		int d = this.edges.getDistance(i, j);
 		return 1.0 - (  d / (double)this.edges.getMaximumDistance() );
 	}
 
@@ -324,8 +388,9 @@ public class Network implements Iterable<Agent> {
 				Agent a = agents[i];
 				int node = a.getNodeId();
 				this.nodes[node].agent = a;
-				// update status index
-				this.statusArray[node] = a.getStatus();
+			}
+			for(int i=0; i<n; i++) {
+				this.updateSpeaker(i);
 			}
 			this.modCount++;
 		} catch (ArrayIndexOutOfBoundsException e) {
@@ -353,11 +418,23 @@ public class Network implements Iterable<Agent> {
 	 * The file structure is as follows:<br/>
 	 * - column 1: start node ID<br/>
 	 * - column 2: end node ID<br/>
-	 * - column 3: edge weight (currently always 1)<br/>
+	 * - column 3: edge weight (1 for unweighted networks)<br/>
 	 * @param outFile
 	 * @return
 	 */
 	public boolean writeEdgelistCSV(File outFile)
+	{
+		return writeEdgelistCSV(this.edges, outFile);
+	}
+
+
+	/**
+	 * Write the edges of a topology to CSV file (see {@link #writeEdgelistCSV(File)}).
+	 * @param edges
+	 * @param outFile
+	 * @return
+	 */
+	public static boolean writeEdgelistCSV(AdjacencyMatrix edges, File outFile)
 	{
 		boolean ok = true;
 
@@ -367,17 +444,21 @@ public class Network implements Iterable<Agent> {
 			out  = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(outFile)), Configuration.DEFAULT_ENCODING);
 			out.write("from,to,weight\n");
 
-			int n = this.edges.size();
+			int n = edges.size();
 
 			for(int from = 0; from < n; from++)
 			{
-				for(int to = 0; to < n; to++)
+				for(int k = 0; k < edges.getDegree(from); k++)
 				{
-					if(this.edges.a[from][to] != 0){
-						// this class assumes an unweighted network graph, so we set weight always to 1
-						String zeile = String.format("%d,%d,1\n", from, to);
-						out.write(zeile);
+					int to = edges.getNeighbor(from, k);
+					double w = edges.getWeight(from, k);
+					String zeile;
+					if(w == Math.rint(w) && Math.abs(w) < 1e15) {
+						zeile = String.format("%d,%d,%d\n", from, to, (long) w);
+					} else {
+						zeile = String.format("%d,%d,%s\n", from, to, Double.toString(w));
 					}
+					out.write(zeile);
 				}
 			}
 			LOG.debug(String.format("edges written to: %s", outFile.getAbsolutePath()));
@@ -425,15 +506,30 @@ public class Network implements Iterable<Agent> {
 	 * @return
 	 */
 	public Iterator<Agent> getSpeakerIterator(Agent listener, Interaction.Type it) {
+		return this.getSpeakerIterator(listener, it, this.conf.getRandomStream());
+	}
+
+
+	/**
+	 * Get speaker iterator according to specified interaction type. Agents
+	 * returned by this iterator are all above age 0. Speakers are selected
+	 * with random numbers drawn from the given stream, which must not be
+	 * shared between threads.
+	 * @param listener
+	 * @param it
+	 * @param rand
+	 * @return
+	 */
+	public Iterator<Agent> getSpeakerIterator(Agent listener, Interaction.Type it, RandomStream rand) {
 		Iterator<Agent> iterator;
 		int listenerNodeID = listener.getNodeId();
 		switch (it) {
 		case regular:
-			iterator = new NetworkIteratorNonLinear(this.getIndicesOfSpeakers(listenerNodeID));
+			iterator = new NetworkIteratorNonLinear(this.getIndicesOfSpeakers(listenerNodeID, rand));
 			break;
 
 		case byDistance:
-			iterator = new NetworkIteratorNonLinear(this.getIndicesByDistance(listenerNodeID));
+			iterator = new NetworkIteratorNonLinear(this.getIndicesByDistance(listenerNodeID, rand));
 			break;
 
 		case byDistanceDet:
@@ -441,12 +537,12 @@ public class Network implements Iterable<Agent> {
 			break;
 
 		case byStatus:
-			iterator = new NetworkIteratorNonLinear(this.getIndicesBySatus(listenerNodeID));
+			iterator = new NetworkIteratorNonLinear(this.getIndicesBySatus(listenerNodeID, rand));
 			break;
 
 		case byStatusAndDistance:
-			//TODO implement
-			throw new RuntimeException("interaction byStatusAndDistance not implemented");
+			iterator = new NetworkIteratorNonLinear(this.getIndicesByStatusAndDistance(listenerNodeID, rand));
+			break;
 
 		default:
 			throw new IllegalArgumentException("unsupported interaction type");
@@ -463,29 +559,42 @@ public class Network implements Iterable<Agent> {
 	 * configuration's parameter <i>number of teachers</i>. Nodes are selected
 	 * at random and added to the set with a probability corresponding to the
 	 * closeness between that node and the listener.
+	 * <p>
+	 * Nodes are drawn from the {@link DistanceIndex}, which yields the same
+	 * distribution as uniform selection with acceptance probability equal to
+	 * the closeness, but without rejecting distant nodes. Only new-born agents
+	 * are rejected, i.e. a speaker is found after few draws unless most agents
+	 * are new-born.
+	 * <p>
+	 * In a complete network, all nodes are equally close to the listener and
+	 * speakers are selected uniformly, without an index.
 	 * 
 	 * @param listenerNode
+	 * @param rand
 	 * @return an array of node indices
 	 */
-	private int[] getIndicesByDistance(int listenerNode)
+	private int[] getIndicesByDistance(int listenerNode, RandomStream rand)
 	{
+		if(this.edges.isComplete()) {
+			return this.getIndicesUniform(listenerNode, rand);
+		}
+		DistanceIndex index = this.getDistanceIndex();
 		int[] teachers = new int[numTeachers];
-		int i= 0;
+		int i = 0;
+		int rejected = 0;
 		while(i < numTeachers)
 		{
-			// select one node at random
-			int nx = this.conf.randomInt(this.nodes.length);
-			if(nx==listenerNode){
-				continue;
-			}
-			if(null==this.nodes[nx] || this.nodes[nx].agent.getAge()==0){
+			// select one node with p ~ closeness
+			int nx = index.sample(listenerNode, rand);
+			if(this.speakerPos[nx] < 0) {
+				rejected++;
+				if(rejected == REJECTION_CHECK && !this.hasCloseSpeaker(index, listenerNode, false)) {
+					throw new IllegalStateException(String.format("There is no speaker with a closeness > 0 for node %d", listenerNode));
+				}
 				continue;
 			}
-			// take node with p=closeness
-			if( this.conf.randomDouble() < this.closenessMap[listenerNode][nx] ){
-				teachers[i] = nx;
-				i++;
-			}
+			teachers[i] = nx;
+			i++;
 		}
 		return teachers;
 	}
@@ -499,136 +608,220 @@ public class Network implements Iterable<Agent> {
 	 * specified listener. The number of speakers is determined by the current
 	 * configuration's parameter <i>number of teachers</i>. Nodes are returned
 	 * in a pre-computed deterministic order according to the closeness between
-	 * the respective node and the listener. Node IDs which correspond to a
-	 * new-born agent or point to <code>null</code> are skipped.
+	 * the respective node and the listener. Nodes with new-born agents are
+	 * skipped; the order is repeated if there are fewer speakers than
+	 * teachers.
+	 * <p>
+	 * Nodes at the same distance are ordered by node ID, which is the only
+	 * order in a complete network; there, speakers are taken from the sum
+	 * tree of speakers instead of an index.
 	 * 
 	 * @param listenerNode
 	 * @return an array of node indices
 	 */
 	private int[] getIndicesByDistanceDet(int listenerNode)
 	{
+		if(this.edges.isComplete()) {
+			// rank of the listener among the speakers, if it is one
+			boolean self = this.speakerPos[listenerNode] >= 0;
+			int before = (int) Math.round(this.speakerTree.sum(listenerNode));
+			int m = this.numSpeakers - (self ? 1 : 0);
+			if(m == 0) {
+				throw new IllegalStateException(String.format("There is no speaker for node %d", listenerNode));
+			}
+			int[] teachers = new int[numTeachers];
+			for(int i=0; i<numTeachers; i++) {
+				int r = i % m;
+				if(self && r >= before) {
+					r++;
+				}
+				teachers[i] = this.speakerTree.find(r + 0.5);
+			}
+			return teachers;
+		}
+		DistanceIndex index = this.getDistanceIndex();
 		int[] teachers = new int[numTeachers];
 		int i = 0;
-		int n = this.closenessSorted[listenerNode].length;
-		while(i < numTeachers)
-		{
-			for(int j=0; j<n; j++) {
-				int nx = this.closenessSorted[listenerNode][j];
-				if(null==this.nodes[nx] || this.nodes[nx].agent.getAge()==0){
-					continue;
-				}
+		int n = this.nodes.length - 1;
+		for(int p=0; p<n && i<numTeachers; p++) {
+			int nx = index.getNode(listenerNode, p);
+			if(this.speakerPos[nx] >= 0) {
 				teachers[i] = nx;
 				i++;
-				if(i==numTeachers) {
-					break;
-				}
 			}
 		}
+		if(i == 0) {
+			throw new IllegalStateException(String.format("There is no speaker for node %d", listenerNode));
+		}
+		// repeat the order if there are fewer speakers than teachers
+		for(int m=i; i<numTeachers; i++) {
+			teachers[i] = teachers[i % m];
+		}
 		return teachers;
 	}
 
 
 	/**
-	 * Initialize sorted table of indices for deterministic distance-based
-	 * interaction.
+	 * Get the index of nodes by distance; the index is initialized on first
+	 * use. Only the initialization is synchronized.
+	 * @return
 	 */
-	private void initClosenessSorted()
+	private DistanceIndex getDistanceIndex()
 	{
-		LOG.debug("sorting closeness table...");
-		int n = this.nodes.length;
-		this.closenessSorted = new int[n][];
+		DistanceIndex index = this.distanceIndex;
+		if(null==index) {
+			synchronized (this) {
+				index = this.distanceIndex;
+				if(null==index) {
+					LOG.debug("indexing nodes by distance...");
+					index = null==this.cache ? new DistanceIndex(this.edges) : this.cache.getDistanceIndex();
+					this.distanceIndex = index;
+					LOG.debug("Distance index initialized for all nodes.");
+				}
+			}
+		}
+		return index;
+	}
 
-		ArrayList<Integer> ids = new ArrayList<Integer>(n);
-		ArrayList<Double> cls = new ArrayList<Double>(n);
 
-		for(int i=0; i<n; i++) {
-			ids.clear();
-			cls.clear();
-			for(int j=0; j<n; j++) {
-				if(i==j) {
-					continue;
-				}
-				Integer id = Integer.valueOf(j);
-				Double cx = Double.valueOf(this.closenessMap[i][j]);
-				int sz = ids.size();
-				boolean add = true;
-				if(sz>0) {
-					for(int k=0; k<sz; k++) {
-						if(cx > cls.get(k)){
-							ids.add(k, id);
-							cls.add(k, cx);
-							add=false;
-							break;
-						}
-					}
-				}
-				if(add) {
-					ids.add(id);
-					cls.add(cx);
-				}
+	/**
+	 * Status-based interaction.
+	 * <p>
+	 * Returns a subset from all speakers based on their status. The number of
+	 * speakers is determined by the current configuration's parameter
+	 * <i>number of teachers</i>. Nodes are selected with a probability
+	 * proportional to the status of their agents (limited to the range
+	 * <code>[0 1]</code>); new-born agents are never selected.
+	 * <p>
+	 * Nodes are drawn from a {@link SumTree} of status weights, which yields
+	 * the same distribution as uniform selection with acceptance probability
+	 * equal to the status, but in O(log n) time regardless of the
+	 * distribution of status values.
+	 * 
+	 * @param listenerNode
+	 * @param rand
+	 * @return an array of node indices
+	 */
+	private int[] getIndicesBySatus(int listenerNode, RandomStream rand)
+	{
+		double wl = this.statusWeights[listenerNode];
+		if(this.numStatusWeights - (wl > 0.0 ? 1 : 0) == 0) {
+			throw new IllegalStateException(String.format("There is no speaker with a status > 0 for node %d", listenerNode));
+		}
+		// skip the range of the listener
+		double before = this.statusTree.sum(listenerNode);
+		double total  = this.statusTree.total() - wl;
+
+		int[] indices = new int[numTeachers];
+		int i=0;
+		while(i<numTeachers) {
+			double u = rand.nextDouble() * total;
+			if(u >= before) {
+				u += wl;
 			}
-			int sz = ids.size();
-			int[] indices = new int[sz];
-			for(int j=0; j<sz; j++) {
-				indices[j] = ids.get(j).intValue();
+			int j = this.statusTree.find(u);
+			// reject only results of rounding errors
+			if(listenerNode==j || this.statusWeights[j]<=0.0) {
+				continue;
 			}
-			this.closenessSorted[i] = indices;
+			indices[i] = j;
+			i++;
 		}
-		LOG.debug("Closeness table sorted for all nodes.");
+		return indices;
 	}
 
 
-	//	/**
-	//	 * Whenever a
-	//	 */
-	//	private void updateStatusIndex() {
-	//		if(this.modCount != this.statusOrderCount){
-	//			this.statusArray = new double[this.nodes.length];
-	//			for(int i=0; i<this.nodes.length; i++) {
-	//				if(null!=this.nodes[i] && this.nodes[i].agent.getAge()>0) {
-	//					this.statusArray[i] = this.nodes[i].agent.getStatus();
-	//				}
-	//			}
-	//			this.statusOrderCount = this.modCount;
-	//		}
-	//	}
-
 	/**
+	 * Interaction based on status and distance.
+	 * <p>
+	 * Returns a subset from all speakers. The number of speakers is determined
+	 * by the current configuration's parameter <i>number of teachers</i>.
+	 * Nodes are selected with a probability proportional to the product of the
+	 * status of their agents (as in {@link #getIndicesBySatus(int, RandomStream)})
+	 * and their closeness to the listener; new-born agents are never selected.
+	 * In a complete network, speakers are selected by status only.
+	 * <p>
+	 * The sampler is factored into the global {@link SumTree} of status
+	 * weights and the distance buckets of the listener: nodes are drawn by
+	 * status as in {@link #getIndicesBySatus(int, RandomStream)} and accepted
+	 * with a probability proportional to the closeness of their bucket. Thus,
+	 * no index per listener is needed, replacing an agent takes O(log n)
+	 * time, and the number of rejections does not depend on the
+	 * distribution of status values, only on the closeness of the selected
+	 * nodes.
 	 * 
 	 * @param listenerNode
-	 * @param numTeachers
-	 * @return
+	 * @param rand
+	 * @return an array of node indices
 	 */
-	private int[] getIndicesBySatus(int listenerNode)
+	private int[] getIndicesByStatusAndDistance(int listenerNode, RandomStream rand)
 	{
-		int[] indices = new int[numTeachers];
+		if(this.edges.isComplete()) {
+			return this.getIndicesBySatus(listenerNode, rand);
+		}
+		double wl = this.statusWeights[listenerNode];
+		if(this.numStatusWeights - (wl > 0.0 ? 1 : 0) == 0) {
+			throw new IllegalStateException(String.format("There is no speaker with a status > 0 for node %d", listenerNode));
+		}
+		DistanceIndex index = this.getDistanceIndex();
+		// skip the range of the listener
+		double before = this.statusTree.sum(listenerNode);
+		double total  = this.statusTree.total() - wl;
+		// maximum closeness: unreachable nodes (bucket 0) or neighbors
+		double max = index.getStart(listenerNode, 1) > 0 ? index.getCloseness(0) : index.getCloseness(1);
 
+		int[] indices = new int[numTeachers];
 		int i=0;
+		int rejected = 0;
 		while(i<numTeachers) {
-			// select random node
-			int j = this.conf.randomInt(this.statusArray.length);
-			if(listenerNode==j){
+			double u = rand.nextDouble() * total;
+			if(u >= before) {
+				u += wl;
+			}
+			int j = this.statusTree.find(u);
+			// reject results of rounding errors
+			if(listenerNode==j || this.statusWeights[j]<=0.0) {
 				continue;
 			}
-			if(null==this.nodes[j] || this.nodes[j].agent.getAge()==0){
+			// take node with p ~ closeness
+			if(rand.nextDouble() * max >= index.getCloseness(index.getBucket(listenerNode, j))) {
+				rejected++;
+				if(rejected == REJECTION_CHECK && !this.hasCloseSpeaker(index, listenerNode, true)) {
+					throw new IllegalStateException(String.format("There is no speaker with a status and closeness > 0 for node %d", listenerNode));
+				}
 				continue;
 			}
-			if(this.statusArray[j]<=0.0) {
-				// ignore node
+			indices[i] = j;
+			i++;
+		}
+		return indices;
+	}
+
+
+	/**
+	 * Check whether there is a potential speaker other than i with a
+	 * closeness to node i &gt; 0, i.e. whether rejection sampling by
+	 * closeness terminates. Takes O(n) time.
+	 * @param index
+	 * @param i
+	 * @param byStatus -- only speakers with a status weight &gt; 0
+	 * @return
+	 */
+	private boolean hasCloseSpeaker(DistanceIndex index, int i, boolean byStatus)
+	{
+		int maxDist = index.getMaximumDistance();
+		for(int b=0; b<=maxDist; b++) {
+			if(index.getCloseness(b) <= 0.0) {
 				continue;
-			} else if (this.statusArray[j]>=1.0) {
-				// take node (p=1.0)
-				indices[i] = j;
-				i++;
-			} else {
-				// take node with p=s
-				if( this.conf.randomDouble() < this.statusArray[j] ) {
-					indices[i] = j;
-					i++;
+			}
+			for(int p=index.getStart(i, b); p<index.getStart(i, b+1); p++) {
+				int j = index.getNode(i, p);
+				if(byStatus ? this.statusWeights[j] > 0.0 : this.speakerPos[j] >= 0) {
+					return true;
 				}
 			}
 		}
-		return indices;
+		return false;
 	}
 
 
@@ -638,47 +831,103 @@ public class Network implements Iterable<Agent> {
 	 * Select subset of speakers. The number of speakers is determined by the
 	 * current configuration's parameter <i>number of teachers</i>. The order of
 	 * speakers is randomized if the number of teachers is smaller than the
-	 * number of nodes in the network. Else, speakers are recycled until enough
-	 * are found, starting at a random node.
+	 * number of potential speakers (agents above age 0) in the network. Else,
+	 * speakers are recycled until enough are found, starting at a random
+	 * speaker.
+	 * <p>
+	 * Speakers are drawn from the index of potential speakers; new-born agents
+	 * are never drawn. Without replacement, positions are selected by Floyd's
+	 * algorithm and shuffled, i.e. fewer than two random numbers are drawn
+	 * per teacher.
 	 * @param listenerNode
+	 * @param rand
 	 * @return an array of node indices
 	 */
-	private int[] getIndicesOfSpeakers(int listenerNode)
+	private int[] getIndicesOfSpeakers(int listenerNode, RandomStream rand)
 	{
-		int[] speakers = new int[numTeachers];
-		if(this.numTeachers>=this.nodes.length){
-			// we need more speakers than we have different nodes in the network
-			// select random start point
-			int i = this.conf.randomInt(this.nodes.length);
-			// loop through nodes until enough teachers are found
-			int numT = 0;
-			while(numT<numTeachers) {
-				if(i!=listenerNode &&
-						this.nodes[i].agent.getAge() > 0){
-					speakers[numT] = i;
-					numT++;
-				}
-				i++;
-				if(i==this.nodes.length) {
-					i = 0;
+		// speakers other than the listener are at positions [0 m) after skipping the listener
+		int skip = this.speakerPos[listenerNode];
+		int m = this.numSpeakers;
+		if(skip >= 0) {
+			m--;
+		} else {
+			skip = m;
+		}
+		if(m == 0) {
+			throw new IllegalStateException(String.format("There is no speaker for node %d", listenerNode));
+		}
+
+		int[] indices = new int[numTeachers];
+		if(this.numTeachers>=m){
+			// we need more speakers than we have different speakers in the network
+			// select random start point and loop through speakers
+			int p = rand.nextInt(m);
+			for(int t=0; t<numTeachers; t++) {
+				indices[t] = p;
+				p++;
+				if(p==m) {
+					p = 0;
 				}
 			}
 
 		} else {
-			boolean[] found = new boolean[this.nodes.length];
-			int i = 0;
-			while(i < numTeachers) {
-				int j = this.conf.randomInt(this.nodes.length);
-				if( j!=listenerNode &&
-						this.nodes[j].agent.getAge() > 0 &&
-						!found[j]  ) {
-					speakers[i] = j;
-					found[j] = true;
-					i++;
+			// select positions without replacement (Floyd)
+			boolean[] found = this.speakerMarks.get();
+			int t = 0;
+			for(int j=m-numTeachers; j<m; j++) {
+				int p = rand.nextInt(j+1);
+				if(found[p]) {
+					p = j;
 				}
+				found[p] = true;
+				indices[t] = p;
+				t++;
 			}
+			for(t=0; t<numTeachers; t++) {
+				found[indices[t]] = false;
+			}
+			// randomize order (Fisher-Yates)
+			for(t=numTeachers-1; t>0; t--) {
+				int x = rand.nextInt(t+1);
+				int tmp = indices[t];
+				indices[t] = indices[x];
+				indices[x] = tmp;
+			}
+		}
+
+		for(int t=0; t<numTeachers; t++) {
+			int p = indices[t];
+			indices[t] = this.speakers[p < skip ? p : p+1];
+		}
+		return indices;
+	}
+
+
+	/**
+	 * Select speakers uniformly with replacement.
+	 * @param listenerNode
+	 * @param rand
+	 * @return an array of node indices
+	 */
+	private int[] getIndicesUniform(int listenerNode, RandomStream rand)
+	{
+		// speakers other than the listener are at positions [0 m) after skipping the listener
+		int skip = this.speakerPos[listenerNode];
+		int m = this.numSpeakers;
+		if(skip >= 0) {
+			m--;
+		} else {
+			skip = m;
+		}
+		if(m == 0) {
+			throw new IllegalStateException(String.format("There is no speaker for node %d", listenerNode));
 		}
-		return speakers;
+		int[] indices = new int[numTeachers];
+		for(int t=0; t<numTeachers; t++) {
+			int p = rand.nextInt(m);
+			indices[t] = this.speakers[p < skip ? p : p+1];
+		}
+		return indices;
 	}
 
 
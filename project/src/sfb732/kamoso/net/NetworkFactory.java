@@ -2,10 +2,6 @@ package sfb732.kamoso.net;
 
 import java.io.File;
 import java.io.PrintStream;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Random;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -13,7 +9,7 @@ import org.apache.logging.log4j.Logger;
 import sfb732.kamoso.conf.Configuration;
 import sfb732.kamoso.conf.ConfigurationDefault;
 import sfb732.kamoso.pop.Agent;
-import sfb732.kamoso.util.MyMathHelper;
+import sfb732.kamoso.util.RandomStream;
 
 
 
@@ -86,17 +82,16 @@ public class NetworkFactory {
 			printMainHelpAndExit(System.err, 1);
 		}
 
-		Network net = null;
-
 		Configuration conf = Configuration.init();//TODO use configuration file?
 
 		try {
 
-			net = makeNetwork(conf, type, ncols, nrows, parishes, p, null);
+			// distances are not needed for the export
+			AdjacencyMatrix am = makeTopology(conf, type, ncols, nrows, parishes, p);
 
 			File outputFile = new File(outFileName);
 
-			net.writeEdgelistCSV(outputFile);
+			Network.writeEdgelistCSV(am, outputFile);
 
 			System.out.printf("Network edges written to file %s\n", outputFile.getAbsolutePath());
 
@@ -134,6 +129,17 @@ public class NetworkFactory {
 		p.printf("  %-6s [N]      -- number of grid rows per parish, with N >= 1\n", Configuration.ARG_NET_ROWS);
 		p.printf("  %-6s [N]      -- number of parishes, with N >= 2\n", Configuration.ARG_NET_PARS);
 		p.printf("  %-6s [N]      -- re-wiring probability\n", Configuration.ARG_NET_PROB);
+		p.println();
+		p.printf("  %-6s %8s -- create a parochial network of regular grids\n", Configuration.ARG_NET_TYPE, NetworkType.parTorus.toString());
+		p.printf("  %-6s [N]      -- number of grid columns per parish with N >= 1\n", Configuration.ARG_NET_COLS);
+		p.printf("  %-6s [N]      -- number of grid rows per parish, with N >= 1\n", Configuration.ARG_NET_ROWS);
+		p.printf("  %-6s [N]      -- number of parishes, with N >= 2\n", Configuration.ARG_NET_PARS);
+		p.println();
+		p.printf("  %-6s %8s -- create a random network with a single component\n", Configuration.ARG_NET_TYPE, NetworkType.random.toString());
+		p.printf("  %-6s %8s -- create a fully connected network\n", Configuration.ARG_NET_TYPE, NetworkType.full.toString());
+		p.printf("  %-6s [N]      -- number of nodes = columns * rows\n", Configuration.ARG_NET_COLS);
+		p.printf("  %-6s [N]\n", Configuration.ARG_NET_ROWS);
+		p.printf("  %-6s [N]      -- edge probability (random only)\n", Configuration.ARG_NET_PROB);
 		//TODO finish
 		System.exit(exitCode);
 	}
@@ -152,35 +158,68 @@ public class NetworkFactory {
 	 * @param p        -- probability
 	 * @param agents   -- agents to be assigned to network nodes
 	 * @return a new {@link Network} instance
+	 * @see #makeTopology(Configuration, NetworkType, int, int, int, double)
 	 */
 	public static Network makeNetwork(Configuration conf, NetworkType type, int ncols, int nrows, int parishes, double p,
 			Agent[] agents)
 	{
-		Network net = null;
+		Network net = new Network(conf, makeTopology(conf, type, ncols, nrows, parishes, p), type);
+
+		if(null!=agents) {
+			LOG.debug("Assigning agents to network");
+			net.setAgents(agents);
+		}
+
+		return net;
+	}
+
+
+	/**
+	 * Generate the topology of a new network according to the provided
+	 * parameters, without computing distances.
+	 * <p>
+	 * Random and fully connected networks have <code>ncols * nrows</code>
+	 * nodes; the probability is the edge probability of random networks and
+	 * the re-wiring probability of small-world networks.
+	 * @param type     -- a predefined network topology
+	 * @param ncols    -- number of layout grid columns
+	 * @param nrows    -- number of layout grid rows
+	 * @param parishes -- number of parishes
+	 * @param p        -- probability
+	 * @return an adjacency matrix
+	 */
+	public static AdjacencyMatrix makeTopology(Configuration conf, NetworkType type, int ncols, int nrows, int parishes, double p)
+	{
+		AdjacencyMatrix am = null;
 
 		switch (type) {
 		case regTorus:
-			net = makeRegularTorus(conf, ncols, nrows);
+			am = makeToroid(ncols, nrows);
 			break;
 
 		case swTorus:
-			net = makeSmallWorldTorus(conf, ncols, nrows, p);
+			am = makeSmallWordAM(conf, ncols, nrows, p);
 			break;
 
+		case parTorus:
 		case parSW:
-			net = makeParochialSmallWorld(conf, ncols, nrows, p, parishes);
+			am = makeParochialAM(conf, type, ncols, nrows, p, parishes);
+			break;
+
+		case random:
+			am = makeRandomAM(conf, getNumberOfNodes(ncols, nrows), p);
+			break;
+
+		case full:
+			am = AdjacencyMatrix.complete(getNumberOfNodes(ncols, nrows));
+			LOG.info(String.format("Created fully connected network: nodes=%d", am.size()));
 			break;
 
 		default:
 			throw new RuntimeException("Requested network type (currently) not supported. Sorry.");
 		}
 
-		if(null!=agents) {
-			LOG.debug("Assigning agents to network");
-			net.setAgents(agents);
-		}
-
-		return net;
+		return am;
 	}
 
 
@@ -208,7 +247,7 @@ public class NetworkFactory {
 	 */
 	public static Network makeSmallWorldTorus(Configuration conf, int numc, int numr, double p)
 	{
-		AdjacencyMatrix am = makeSmallWordAM(conf.getMaxSWAttempts(), numc, numr, p);
+		AdjacencyMatrix am = makeSmallWordAM(conf, numc, numr, p);
 		Network net = new Network(conf, am, NetworkType.swTorus);
 		return net;
 	}
@@ -227,21 +266,186 @@ public class NetworkFactory {
 	 */
 	public static Network makeParochialSmallWorld(Configuration conf, int ncols, int nrows, double p, int parishes)
 	{
-		if(p<0.0 || p>1.0){
-			throw new IllegalArgumentException("Probability parameter p must be in rang 0 <= p <= 1");
+		AdjacencyMatrix am = makeParochialAM(conf, NetworkType.parSW, ncols, nrows, p, parishes);
+		return new Network(conf, am, NetworkType.parSW);
+	}
+
+
+	/**
+	 * Make parochial network of regular grids, i.e. a parochial small-world
+	 * network without re-wiring within the parishes.
+	 * <p>
+	 * The generated parishes are all of equal size <code>n = ncols * nrows</code>.
+	 * The size of the entire network is <code>n * parishes</code>
+	 * @param ncols     -- number of underlying grid columns per parish
+	 * @param nrows     -- number of underlying grid rows per parish
+	 * @param parishes  -- number of parishes
+	 * @return a network
+	 */
+	public static Network makeParochialTorus(Configuration conf, int ncols, int nrows, int parishes)
+	{
+		AdjacencyMatrix am = makeParochialAM(conf, NetworkType.parTorus, ncols, nrows, 0.0, parishes);
+		return new Network(conf, am, NetworkType.parTorus);
+	}
+
+
+	/**
+	 * Make random network with a single component (see
+	 * {@link #makeRandomAM(Configuration, int, double)}).
+	 * @param n -- number of nodes
+	 * @param p -- edge probability
+	 * @return a network
+	 */
+	public static Network makeRandom(Configuration conf, int n, double p)
+	{
+		return new Network(conf, makeRandomAM(conf, n, p), NetworkType.random);
+	}
+
+
+	/**
+	 * Make fully connected network. The topology is represented implicitly
+	 * (see {@link AdjacencyMatrix#complete(int)}), i.e. it takes constant
+	 * memory and no distances are computed.
+	 * @param n -- number of nodes
+	 * @return a network
+	 */
+	public static Network makeFull(Configuration conf, int n)
+	{
+		if(n < 1) {
+			throw new IllegalArgumentException("Number of nodes must be >= 1");
 		}
+		Network net = new Network(conf, AdjacencyMatrix.complete(n), NetworkType.full);
+		LOG.info(String.format("Created fully connected network: nodes=%d", n));
+		return net;
+	}
+
+
+
+
+
+
+
+	/**
+	 * Make parochial network: parishes of regular grids or small-world
+	 * networks, connected in a ring (see {@link #connectParishes(Configuration, AdjacencyMatrix[], int)}).
+	 * @param type      -- {@link NetworkType#parSW} or {@link NetworkType#parTorus}
+	 * @param ncols     -- number of underlying grid columns per parish
+	 * @param nrows     -- number of underlying grid rows per parish
+	 * @param p         -- rewiring probability (small-world parishes only)
+	 * @param parishes  -- number of parishes
+	 * @return an adjacency matrix
+	 */
+	private static AdjacencyMatrix makeParochialAM(Configuration conf, NetworkType type, int ncols, int nrows, double p, int parishes)
+	{
 		AdjacencyMatrix[] amPars = new AdjacencyMatrix[parishes];
 
 		for(int px=0; px<parishes; px++)
 		{
-			amPars[px] = makeSmallWordAM(conf.getMaxSWAttempts(), ncols, nrows, p);
+			if(type == NetworkType.parSW) {
+				amPars[px] = makeSmallWordAM(conf, ncols, nrows, p);
+			} else {
+				amPars[px] = makeToroid(ncols, nrows);
+			}
+		}
+
+		AdjacencyMatrix am = connectParishes(conf, amPars, ncols * nrows);
+
+		LOG.info(String.format("Created network: cols=%d; rows=%d; parishes=%d; nodes=%d\n", ncols, nrows, parishes, am.size()));
+
+		return am;
+	}
+
+
+	/**
+	 * Make random network with a single component.
+	 * <p>
+	 * Each pair of distinct nodes is connected with probability p (Erdős–Rényi
+	 * model). The gaps between edges are drawn from a geometric distribution
+	 * (Batagelj &amp; Brandes 2005), so that the time grows with the number of
+	 * edges instead of the number of pairs. Components are then joined: the
+	 * first node of every component (by node ID) is connected to a random node
+	 * with a smaller ID, i.e. one edge is added per additional component.
+	 * @param n -- number of nodes
+	 * @param p -- edge probability
+	 * @return an adjacency matrix
+	 */
+	private static AdjacencyMatrix makeRandomAM(Configuration conf, int n, double p)
+	{
+		if(p<0.0 || p>1.0){
+			throw new IllegalArgumentException("Probability parameter p must be in rang 0 <= p <= 1");
+		}
+		if(n < 1) {
+			throw new IllegalArgumentException("Number of nodes must be >= 1");
+		}
+		RandomStream rand = conf.getRandomStream();
+		EdgeList edges = new EdgeList((int) Math.min(1 << 26, 2.2 * p * n * (n - 1) / 2 + 2 * n));
+		int[] parent = new int[n];
+		for(int i=0; i<n; i++) {
+			parent[i] = i;
+		}
+
+		if(p > 0.0) {
+			// pairs (v,w) with w < v in the order of the lower triangle
+			double logq = Math.log(1.0 - p);// -Infinity for p=1: no gaps
+			double maxSkip = (double) n * n;
+			int v = 1;
+			long w = -1;
+			while(v < n)
+			{
+				double skip = Math.floor(Math.log(1.0 - rand.nextDouble()) / logq);
+				w += 1 + (long) Math.min(skip, maxSkip);
+				while(w >= v && v < n) {
+					w -= v;
+					v++;
+				}
+				if(v < n) {
+					edges.connect(v, (int) w);
+					union(parent, v, (int) w);
+				}
+			}
+		}
+		int m = edges.size() / 2;
+
+		// join components
+		int components = 0;
+		boolean[] seen = new boolean[n];
+		for(int i=0; i<n; i++) {
+			int r = findRoot(parent, i);
+			if(!seen[r]) {
+				seen[r] = true;
+				components++;
+				if(i > 0) {
+					edges.connect(i, rand.nextInt(i));
+				}
+			}
+		}
+
+		LOG.info(String.format(Configuration.DEFAULT_LOCALE, "Created random network: nodes=%d; p=%.6f; edges=%d; components joined=%d", n, p, m, components));
+
+		return edges.build(n);
+	}
+
+
+	/**
+	 * Combine parishes into one network and connect each parish with the
+	 * next one (and the last with the first): a random node of one parish is
+	 * connected to a random node of the next parish, and each of the two
+	 * nodes loses one edge within its parish.
+	 * @param parts   -- parishes
+	 * @param parSize -- number of nodes per parish
+	 * @return an adjacency matrix
+	 */
+	private static AdjacencyMatrix connectParishes(Configuration conf, AdjacencyMatrix[] parts, int parSize)
+	{
+		int parishes = parts.length;
+		if(parishes < 2) {
+			throw new IllegalArgumentException("Number of parishes must be >= 2");
 		}
 
 		//combine partial adjacency matrices into one big matrix
-		AdjacencyMatrix am = merge(amPars);
+		AdjacencyMatrix.Builder am = new AdjacencyMatrix.Builder(merge(parts));
 
 		// connect parishes
-		int parSize = ncols * nrows;
 		int startA = 0;
 		int endA = parSize -1;
 
@@ -261,31 +465,23 @@ public class NetworkFactory {
 			int nodeB = conf.randomInt(startB, endB);
 
 			// connect nodeA and nodeB
-			am.a[nodeA][nodeB] = 1;
-			am.a[nodeB][nodeA] = 1;
+			am.connect(nodeA, nodeB);
 			if(LOG.isTraceEnabled())
 				LOG.trace(String.format("- connect i=%d and j=%d in parish A and B", nodeA, nodeB));
 
 			// remove two edges from parishes A and B
-			for(int i=startA; i<=endA; i++)
-			{
-				if( am.a[nodeA][i] != AdjacencyMatrix.NO_CONNECTION ){
-					if(LOG.isTraceEnabled())
-						LOG.trace(String.format("- disconnet i=%d and j=%d in parish A", nodeA, i));
-					am.a[nodeA][i] = AdjacencyMatrix.NO_CONNECTION;
-					am.a[i][nodeA] = AdjacencyMatrix.NO_CONNECTION;
-					break;
-				}
+			// (the first neighbor within the parish)
+			int i = am.nextNeighbor(nodeA, startA-1);
+			if( i != -1 && i <= endA ){
+				if(LOG.isTraceEnabled())
+					LOG.trace(String.format("- disconnet i=%d and j=%d in parish A", nodeA, i));
+				am.disconnect(nodeA, i);
 			}
-			for(int i=startB; i<=endB; i++)
-			{
-				if( am.a[nodeB][i] != AdjacencyMatrix.NO_CONNECTION ){
-					if(LOG.isTraceEnabled())
-						LOG.trace(String.format("- disconnet i=%d and j=%d in parish B", nodeB, i));
-					am.a[nodeB][i] = AdjacencyMatrix.NO_CONNECTION;
-					am.a[i][nodeB] = AdjacencyMatrix.NO_CONNECTION;
-					break;
-				}
+			i = am.nextNeighbor(nodeB, startB-1);
+			if( i != -1 && i <= endB ){
+				if(LOG.isTraceEnabled())
+					LOG.trace(String.format("- disconnet i=%d and j=%d in parish B", nodeB, i));
+				am.disconnect(nodeB, i);
 			}
 
 			startA = startB;
@@ -298,13 +494,59 @@ public class NetworkFactory {
 				endB   = parSize -1;
 			}
 		}
-		am.d = null;
+		return am.build();
+	}
 
-		Network n = new Network(conf, am, NetworkType.parSW);
 
-		LOG.info(String.format("Created network: cols=%d; rows=%d; parishes=%d; nodes=%d\n", ncols, nrows, parishes, n.size()));
+	/**
+	 * Get the number of nodes of a network with the given layout grid.
+	 * @param ncols
+	 * @param nrows
+	 * @return
+	 */
+	private static int getNumberOfNodes(int ncols, int nrows)
+	{
+		if(ncols <1 || nrows<1) {
+			throw new IllegalArgumentException("Number of columns / rows must be >= 1");
+		}
+		long n = (long) ncols * nrows;
+		if(n > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Number of nodes too large");
+		}
+		return (int) n;
+	}
+
 
-		return n;
+	/**
+	 * Find the root of the set of node i in a union-find forest, halving
+	 * the path on the way.
+	 * @param parent
+	 * @param i
+	 * @return
+	 */
+	private static int findRoot(int[] parent, int i)
+	{
+		while(parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+
+	/**
+	 * Merge the sets of nodes i and j in a union-find forest.
+	 * @param parent
+	 * @param i
+	 * @param j
+	 */
+	private static void union(int[] parent, int i, int j)
+	{
+		int a = findRoot(parent, i);
+		int b = findRoot(parent, j);
+		if(a != b) {
+			parent[Math.max(a, b)] = Math.min(a, b);
+		}
 	}
 
 
@@ -328,7 +570,7 @@ public class NetworkFactory {
 
 		int n = ncol * nrow;
 
-		int[][] a = new int[n][n];
+		EdgeList a = new EdgeList(8 * n);
 
 		int rightEdge  = ncol - 1;
 		int bottomEdge = nrow - 1;
@@ -346,8 +588,7 @@ public class NetworkFactory {
 			} else {
 				j = i + 1;
 			}
-			a[i][j] = 1;
-			a[j][i] = 1;
+			a.connect(i, j);
 
 			// DOWN
 			if( r == bottomEdge ){
@@ -355,8 +596,7 @@ public class NetworkFactory {
 			} else {
 				j = getIDForGridCoordinates(c, r+1, ncol);
 			}
-			a[i][j] = 1;
-			a[j][i] = 1;
+			a.connect(i, j);
 
 			// LEFT
 			if( c == 0) {
@@ -364,8 +604,7 @@ public class NetworkFactory {
 			} else {
 				j = i-1;
 			}
-			a[i][j] = 1;
-			a[j][i] = 1;
+			a.connect(i, j);
 
 			// UP
 			if( r == 0) {
@@ -373,11 +612,10 @@ public class NetworkFactory {
 			} else {
 				j = getIDForGridCoordinates(c, r-1, ncol);
 			}
-			a[i][j] = 1;
-			a[j][i] = 1;
+			a.connect(i, j);
 
 		}
-		AdjacencyMatrix am = new AdjacencyMatrix(a);
+		AdjacencyMatrix am = a.build(n);
 		return am;
 	}
 
@@ -413,12 +651,14 @@ public class NetworkFactory {
 	{
 		int parishes = parts.length;
 		int n = 0;
+		long m = 0;
 		for(int px=0; px<parishes; px++)
 		{
 			n += parts[px].size();
+			m += parts[px].getNumberOfEdges();
 		}
 
-		int[][] am = new int[n][n];
+		EdgeList am = new EdgeList((int) Math.min(m, Integer.MAX_VALUE - 8));
 
 		int offset = 0;
 
@@ -429,214 +669,129 @@ public class NetworkFactory {
 			int i = offset;
 			for (int pari=0; pari<parN; pari++)
 			{
-				int j = offset;
-				for(int parj=0; parj<parN; parj++)
+				for(int k=0; k<par.getDegree(pari); k++)
 				{
-					am[i][j] = par.a[pari][parj];
-					j++;
+					am.set(i, offset + par.getNeighbor(pari, k));
 				}
 				i++;
 			}
 			offset += parN;
 		}
 
-		AdjacencyMatrix a = new AdjacencyMatrix(am);
+		AdjacencyMatrix a = am.build(n);
 		return a;
 	}
 
 
 
 	/**
-	 * Make small world network. The generated network has only one component
-	 * (i.e. there is a path between any given pair of node).
-	 * @param maxAttempts -- max. number of attempts to create a network 
+	 * Make small world network (cf. Watts &amp; Strogatz 1998) by re-wiring
+	 * a regular grid. The generated network has only one component (i.e.
+	 * there is a path between any given pair of node). Random numbers are
+	 * drawn from the configuration, i.e. the network is reproducible with
+	 * the random seed.
+	 * @param conf
 	 * @param numc
 	 * @param numr
-	 * @param p
+	 * @param p    -- re-wiring probability
 	 * @return
 	 */
-	private static AdjacencyMatrix makeSmallWordAM(int maxAttempts, int numc, int numr, double p)
+	private static AdjacencyMatrix makeSmallWordAM(Configuration conf, int numc, int numr, double p)
 	{
-		AdjacencyMatrix am = makeToroid(numc, numr);
-
-		AdjacencyMatrix original = new AdjacencyMatrix(am);
-		int n = am.size();
-
-		boolean fehler = true;
-		for(int attempt = 0; attempt<maxAttempts; attempt++) {
-			if( rewireSmalWorld(am, p) ){
-				fehler=false;
-				break;
-			} else {
-				LOG.debug(String.format("attempt %d to rewire small world failed. Trying from scratch!", attempt));
-				// reset values of adjacency matrix:
-				for(int i=0; i<n; i++){
-					System.arraycopy(original.a[i], 0, am.a[i], 0, n);
-				}
-			}
-		}
-		if(fehler){
-			throw new RuntimeException("Something strange happened: could not create small-world network!");
+		if(p<0.0 || p>1.0){
+			throw new IllegalArgumentException("Probability parameter p must be in rang 0 <= p <= 1");
 		}
-		return am;
+		return rewireSmallWorld(makeToroid(numc, numr), p, conf.getRandomStream());
 	}
 
 
 
 
 	/**
-	 * Re-wire network such that the resulting topology is a
-	 * small-world network.
-	 * @param am -- adjacency matrix. INSTANCE IS CHANGED BY THIS METHOD
-	 * @param p  -- re-wiring probability
-	 * @return <code>true</code> if no error was detected
+	 * Re-wire network such that the resulting topology is a small-world
+	 * network, without splitting it into several components.
+	 * <p>
+	 * Every undirected edge (i,j) with i &lt; j of the original network is
+	 * visited once, and it is replaced by an edge from i to a node drawn
+	 * uniformly from the nodes which are neither i nor a current neighbor of
+	 * i. As p is the re-wiring probability of each end of an edge, the edge
+	 * is replaced with probability 1-(1-p)<sup>2</sup>. This takes O(E log d)
+	 * time for E edges and maximum degree d.
+	 * <p>
+	 * The components of the re-wired network are then found by union-find.
+	 * If the network fell apart, removed edges between different components
+	 * are restored until there is a single component, i.e. one edge is
+	 * added back per additional component; since the original network is
+	 * connected, there always is such an edge. This replaces checking the
+	 * distances between all nodes and re-wiring from scratch.
+	 * @param original -- connected network
+	 * @param p        -- re-wiring probability per end of an edge
+	 * @param rand
+	 * @return the re-wired adjacency matrix
 	 */
-	private static boolean rewireSmalWorld(AdjacencyMatrix am, double p)
+	static AdjacencyMatrix rewireSmallWorld(AdjacencyMatrix original, double p, RandomStream rand)
 	{
+		int n = original.size();
+		AdjacencyMatrix.Builder am = new AdjacencyMatrix.Builder(original);
 
-		int n = am.size();
-		int cr = 0;
+		// probability that an edge is re-wired from either end
+		double pEdge = 1.0 - (1.0 - p) * (1.0 - p);
 
-		// key: from node i
-		// value: list of replaced to-nodes <original,new>  
-		HashMap<Integer, List<MyMathHelper.IntPair>> replacedEdges = new HashMap<Integer, List<MyMathHelper.IntPair>>();
-
-		Random rand = new Random();
+		// removed edges, as candidates for repairs
+		EdgeList removed = new EdgeList();
 
 		for(int i=0; i<n; i++){
-			for(int j=0; j<n; j++){
-
-				if( 0 == am.a[i][j] ){
+			for(int k=0; k<original.getDegree(i); k++){
+				int j = original.getNeighbor(i, k);
+				if(j <= i || rand.nextDouble() >= pEdge){
 					continue;
 				}
-
-				if(  rand.nextDouble() <= p  ){
-					// rewire
-					// (1) select new neighbour
-					int k = i;
-					while(k == i){
-						k =  rand.nextInt(n);
-						if(k==j){
-							k=i;
-						}
-					}
-					if( 0 == am.a[i][k] ){
-						Integer iobj = Integer.valueOf(i);
-						if( ! replacedEdges.containsKey(iobj)){
-							replacedEdges.put(iobj, new ArrayList<MyMathHelper.IntPair>());
-						}
-						MyMathHelper.IntPair pair = new MyMathHelper.IntPair(j, k);
-						replacedEdges.get(iobj).add(pair);
-
-						// (2) disconnect i and j
-						am.a[i][j] = 0;
-						am.a[j][i] = 0;
-
-						// (3) connect i with k
-						am.a[i][k] = 1;
-						am.a[k][i] = 1;
-
-						cr++;
-					}
+				if(am.getDegree(i) >= n-1){
+					break;// no other node left
+				}
+				// select new neighbor
+				int x = rand.nextInt(n);
+				while(x == i || am.isConnected(i, x)){
+					x = rand.nextInt(n);
 				}
+				am.disconnect(i, j);
+				am.connect(i, x);
+				removed.set(i, j);
 			}
 		}
 
 		if(LOG.isDebugEnabled()){
-			LOG.debug(String.format(Configuration.DEFAULT_LOCALE,"rewired %d connections with p=%.3f", cr, p));
+			LOG.debug(String.format(Configuration.DEFAULT_LOCALE,"rewired %d connections with p=%.3f", removed.size(), p));
 		}
 
-		am.d = null;// re-set distance matrix
-
-		// make sure the network does not fall apart!
-		// compute distance matrix
-		// check if there is more than one network component:
-		// -- find a row with all zeros
-		// -- select one node randomly from that row
-		// -- select one of its neighbours randomly
-		// -- connect the two nodes
-		// -- remove one long-distance connection from one of these two nodes
-
-		int maxAttempts = 2*n;
-
-		for(int i=0; i<n; i++){
-			for(int j=0; j<n; j++){
-				if(i!=j){
-					int distance = am.getDistance(i, j);
-					if(distance == AdjacencyMatrix.NO_CONNECTION){
-						// there is no path between nodes i and j
-						// there are at least two network components which are not connected
-
-						if(LOG.isDebugEnabled()){
-							LOG.debug(String.format("Re-connecting two unreachable network components between nodes %d and %d", i, j));
-						}
-
-						if(maxAttempts>0 && 0==maxAttempts%2){
-							// just connect the two unreachable nodes
-							// (the problem is usually just a single node which
-							// has lost all its edges)
-							am.a[i][j] = 1;
-							am.a[j][i] = 1;
-							if(LOG.isTraceEnabled()){
-								LOG.trace(String.format("added connection: %3d - %3d", i, j));
-							}
-						} else {
-							// reconnect i with one of its original neighbours:
-							int from = i;
-
-							Integer key = Integer.valueOf(i);
-							List<MyMathHelper.IntPair> pairs = replacedEdges.get(key);
-							if(pairs==null){
-								key = Integer.valueOf(j);
-								pairs = replacedEdges.get(key);
-								from = j;
-							}
-							if(pairs==null){
-								// still null??
-								// select one pair at random:
-								Integer[] keys = replacedEdges.keySet().toArray(new Integer[replacedEdges.size()]);
-								key = keys[rand.nextInt(keys.length)];
-								pairs = replacedEdges.get(key);
-								from = key.intValue();
-							}
-							int sz = pairs.size();
-							int pairx = rand.nextInt(sz);
-							MyMathHelper.IntPair pair = pairs.get(pairx);
-
-							am.a[from][pair.b] = 0;
-							am.a[pair.b][from] = 0;
-
-							am.a[from][pair.a] = 1;
-							am.a[pair.a][from] = 1;
-							if(LOG.isTraceEnabled()){
-								LOG.trace(String.format("disconnected: %3d - %3d\treconnected: %3d - %3d", from, pair.b, from, pair.a));
-							}
-
-							pairs.remove(pairx);
-							if(pairs.isEmpty()){
-								replacedEdges.remove(key);
-							}
-							if(replacedEdges.isEmpty()){
-								return false;
-							}
-						}
-
-						// start again:
-						am.d = null;// force re-calculation of distances
-
-						i=0;
-						j=0;
-						maxAttempts--;
-						if(maxAttempts<0){
-							return false;
-						}
-					}
+		// make sure the network does not fall apart
+		int[] parent = new int[n];
+		for(int i=0; i<n; i++) {
+			parent[i] = i;
+		}
+		for(int i=0; i<n; i++) {
+			for(int j=am.nextNeighbor(i, i); j != -1; j=am.nextNeighbor(i, j)) {
+				union(parent, i, j);
+			}
+		}
+		int restored = 0;
+		for(int e=0; e<removed.size(); e++) {
+			int i = removed.getFrom(e);
+			int j = removed.getTo(e);
+			if(findRoot(parent, i) != findRoot(parent, j)) {
+				am.connect(i, j);
+				union(parent, i, j);
+				restored++;
+				if(LOG.isTraceEnabled()){
+					LOG.trace(String.format("reconnected: %3d - %3d", i, j));
 				}
 			}
 		}
-		replacedEdges.clear();
+		if(restored > 0 && LOG.isDebugEnabled()){
+			LOG.debug(String.format("Re-connected %d network components", restored + 1));
+		}
 
-		return true;
+		return am.build();
 	}
 
 
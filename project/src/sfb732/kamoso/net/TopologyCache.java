@@ -0,0 +1,473 @@
+package sfb732.kamoso.net;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+
+/**
+ * Cache of the data derived from a network topology in binary files, so that
+ * it has to be computed only once for any number of runs on the same
+ * topology.
+ * <p>
+ * Files are named by the SHA-256 hash of the adjacency lists (the node IDs
+ * of all edges, without weights):<br/>
+ * - <code>topology-&lt;HASH&gt;.dist</code>: the adjacency lists and the
+ *   {@link DistanceStore} of all hop distances<br/>
+ * - <code>topology-&lt;HASH&gt;.idx</code>: the {@link DistanceIndex}, written
+ *   when it is used for the first time<br/>
+ * Each file starts with a header of {@value #HEADER_BYTES} bytes: the magic
+ * number, the format version and the type of the file, followed by the sizes
+ * of the sections. All numbers are big-endian. Files are written to a
+ * temporary file first and then renamed, so that concurrent runs never see
+ * incomplete files. Existing files are memory-mapped read-only; files with a
+ * different version, or which do not match the topology, are rebuilt.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+class TopologyCache {
+
+	private static final Logger LOG = LogManager.getLogger(TopologyCache.class.getCanonicalName());
+
+	/** "KMTC" */
+	private static final int MAGIC = 0x4B4D5443;
+
+	/** version of the file format; increment on every change */
+	static final int VERSION = 1;
+
+	private static final int TYPE_DISTANCES = 1;
+	private static final int TYPE_INDEX     = 2;
+
+	private static final int HEADER_BYTES = 64;
+
+	private static final String PREFIX = "topology-";
+	private static final String SUFFIX_DISTANCES = ".dist";
+	private static final String SUFFIX_INDEX     = ".idx";
+
+	/** number of integers per block when reading and writing arrays */
+	private static final int BLOCK = 1 << 16;
+
+
+	private final File dir;
+
+	private final AdjacencyMatrix am;
+
+	private final String key;
+
+
+	/**
+	 * Constructor.
+	 * @param dir -- cache directory; created if necessary
+	 * @param am  -- topology
+	 */
+	TopologyCache(File dir, AdjacencyMatrix am)
+	{
+		this.dir = dir;
+		this.am  = am;
+		this.key = getKey(am);
+		if(!dir.isDirectory() && !dir.mkdirs()) {
+			LOG.warn(String.format("Could not create cache directory: %s", dir.getAbsolutePath()));
+		}
+	}
+
+
+	/**
+	 * Get the hex encoded SHA-256 hash of the adjacency lists.
+	 * @param am
+	 * @return
+	 */
+	static String getKey(AdjacencyMatrix am)
+	{
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+		ByteBuffer b = ByteBuffer.allocate(4 * BLOCK);
+		digest(md, b, am.size());
+		digest(md, b, am.getRowPointers());
+		digest(md, b, am.getColumnIndices());
+		b.flip();
+		md.update(b);
+
+		StringBuilder sb = new StringBuilder();
+		for(byte x : md.digest()) {
+			sb.append(String.format("%02x", x & 0xFF));
+		}
+		return sb.toString();
+	}
+
+
+	private static void digest(MessageDigest md, ByteBuffer b, int[] a)
+	{
+		digest(md, b, a.length);
+		for(int v : a) {
+			digest(md, b, v);
+		}
+	}
+
+
+	private static void digest(MessageDigest md, ByteBuffer b, int v)
+	{
+		if(!b.hasRemaining()) {
+			b.flip();
+			md.update(b);
+			b.clear();
+		}
+		b.putInt(v);
+	}
+
+
+	/**
+	 * Set the distances of the topology from the cache, or compute and cache
+	 * them if they have not been cached before.
+	 */
+	void initDistances()
+	{
+		File f = this.getFile(SUFFIX_DISTANCES);
+		if(f.isFile()) {
+			try {
+				if(this.loadDistances(f)) {
+					LOG.info(String.format("Distances mapped from cache: %s", f.getAbsolutePath()));
+					return;
+				}
+			} catch (IOException e) {
+				LOG.warn(String.format("Could not read cached distances: %s", f.getAbsolutePath()), e);
+			}
+		}
+
+		this.am.computeDistances(null);
+		try {
+			this.storeDistances(f);
+			// continue with the mapped distances to release the heap
+			if(!this.loadDistances(f)) {
+				throw new IOException("Cache file does not match topology after writing");
+			}
+			LOG.info(String.format("Distances written to cache: %s", f.getAbsolutePath()));
+		} catch (IOException e) {
+			LOG.warn(String.format("Could not write distances to cache: %s", f.getAbsolutePath()), e);
+		}
+	}
+
+
+	/**
+	 * Get the distance index of the topology from the cache, or build and
+	 * cache it if it has not been cached before. The distances must have
+	 * been initialized.
+	 * @return
+	 */
+	DistanceIndex getDistanceIndex()
+	{
+		File f = this.getFile(SUFFIX_INDEX);
+		if(f.isFile()) {
+			try {
+				DistanceIndex index = this.loadIndex(f);
+				if(null!=index) {
+					LOG.info(String.format("Distance index mapped from cache: %s", f.getAbsolutePath()));
+					return index;
+				}
+			} catch (IOException e) {
+				LOG.warn(String.format("Could not read cached distance index: %s", f.getAbsolutePath()), e);
+			}
+		}
+
+		DistanceIndex index = new DistanceIndex(this.am);
+		try {
+			this.storeIndex(f, index);
+			DistanceIndex mapped = this.loadIndex(f);
+			if(null!=mapped) {
+				index = mapped;
+			}
+			LOG.info(String.format("Distance index written to cache: %s", f.getAbsolutePath()));
+		} catch (IOException e) {
+			LOG.warn(String.format("Could not write distance index to cache: %s", f.getAbsolutePath()), e);
+		}
+		return index;
+	}
+
+
+	File getFile(String suffix) {
+		return new File(this.dir, PREFIX + this.key + suffix);
+	}
+
+
+	// ===================================================================
+	//                                                           DISTANCES
+	// ===================================================================
+
+	private void storeDistances(File f) throws IOException
+	{
+		DistanceStore dist = this.am.getDistanceStore();
+		int[] rowPtr = this.am.getRowPointers();
+		int[] colIdx = this.am.getColumnIndices();
+
+		ByteBuffer header = this.getHeader(TYPE_DISTANCES);
+		header.putInt(dist.isSymmetric() ? 1 : 0);
+		header.putInt(dist.getWidth());
+		header.putInt(this.am.getMaximumDistance());
+		header.putDouble(this.am.getMeanDistance());
+
+		File tmp = File.createTempFile(f.getName(), ".tmp", this.dir);
+		boolean ok = false;
+		FileOutputStream out = new FileOutputStream(tmp);
+		try {
+			FileChannel channel = out.getChannel();
+			write(channel, header);
+			writeInts(channel, rowPtr);
+			writeInts(channel, colIdx);
+			dist.writeTo(channel);
+			channel.force(false);
+			ok = true;
+		} finally {
+			out.close();
+			if(!ok) {
+				tmp.delete();
+			}
+		}
+		move(tmp, f);
+	}
+
+
+	/**
+	 * @return <code>false</code> if the file does not match
+	 */
+	private boolean loadDistances(File f) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = this.readHeader(channel, TYPE_DISTANCES, f);
+			if(null==header) {
+				return false;
+			}
+			boolean symmetric = header.getInt() != 0;
+			int width         = header.getInt();
+			int maxDist       = header.getInt();
+			double meanDist   = header.getDouble();
+
+			int[] rowPtr = this.am.getRowPointers();
+			int[] colIdx = this.am.getColumnIndices();
+			long pos = HEADER_BYTES;
+			if(!equalInts(channel, pos, rowPtr)) {
+				LOG.warn(String.format("Cached topology does not match network: %s", f.getAbsolutePath()));
+				return false;
+			}
+			pos += 4L * rowPtr.length;
+			if(!equalInts(channel, pos, colIdx)) {
+				LOG.warn(String.format("Cached topology does not match network: %s", f.getAbsolutePath()));
+				return false;
+			}
+			pos += 4L * colIdx.length;
+
+			long n = this.am.size();
+			long entries = symmetric ? n * (n - 1) / 2 : n * (n - 1);
+			if(pos + entries * width != channel.size()) {
+				LOG.warn(String.format("Size of cache file does not match network: %s", f.getAbsolutePath()));
+				return false;
+			}
+			DistanceStore dist = DistanceStore.map(channel, pos, this.am.size(), symmetric, width, FileChannel.MapMode.READ_ONLY);
+			this.am.setDistances(dist, maxDist, meanDist);
+			return true;
+		} finally {
+			// the mappings remain valid after the channel has been closed
+			raf.close();
+		}
+	}
+
+
+	// ===================================================================
+	//                                                      DISTANCE INDEX
+	// ===================================================================
+
+	private void storeIndex(File f, DistanceIndex index) throws IOException
+	{
+		ByteBuffer header = this.getHeader(TYPE_INDEX);
+		header.putInt(index.getMaximumDistance());
+		header.putLong(index.getNodeEntries());
+		header.putLong(index.getStartEntries());
+
+		File tmp = File.createTempFile(f.getName(), ".tmp", this.dir);
+		boolean ok = false;
+		FileOutputStream out = new FileOutputStream(tmp);
+		try {
+			FileChannel channel = out.getChannel();
+			write(channel, header);
+			index.writeNodes(channel);
+			index.writeStart(channel);
+			channel.force(false);
+			ok = true;
+		} finally {
+			out.close();
+			if(!ok) {
+				tmp.delete();
+			}
+		}
+		move(tmp, f);
+	}
+
+
+	/**
+	 * @return <code>null</code> if the file does not match
+	 */
+	private DistanceIndex loadIndex(File f) throws IOException
+	{
+		RandomAccessFile raf = new RandomAccessFile(f, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer header = this.readHeader(channel, TYPE_INDEX, f);
+			if(null==header) {
+				return null;
+			}
+			int maxDist       = header.getInt();
+			long nodeEntries  = header.getLong();
+			long startEntries = header.getLong();
+			int n = this.am.size();
+			if(maxDist != this.am.getMaximumDistance()
+					|| nodeEntries != (long) n * Math.max(0, n-1)
+					|| startEntries != (long) n * (maxDist + 2)
+					|| HEADER_BYTES + 4 * (nodeEntries + startEntries) != channel.size()) {
+				LOG.warn(String.format("Cached distance index does not match network: %s", f.getAbsolutePath()));
+				return null;
+			}
+			IntPages nodes = IntPages.map(channel, HEADER_BYTES, nodeEntries, FileChannel.MapMode.READ_ONLY);
+			IntPages start = IntPages.map(channel, HEADER_BYTES + 4 * nodeEntries, startEntries, FileChannel.MapMode.READ_ONLY);
+			return new DistanceIndex(this.am, nodes, start);
+		} finally {
+			raf.close();
+		}
+	}
+
+
+	// ===================================================================
+	//                                                             HELPERS
+	// ===================================================================
+
+	/**
+	 * Get a header buffer with the common fields; the caller appends the
+	 * fields of the file type.
+	 */
+	private ByteBuffer getHeader(int type)
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.putInt(MAGIC);
+		header.putInt(VERSION);
+		header.putInt(type);
+		header.putInt(this.am.size());
+		header.putLong(this.am.getNumberOfEdges());
+		return header;
+	}
+
+
+	/**
+	 * Read the header and check the common fields.
+	 * @return the header positioned at the fields of the file type, or
+	 *   <code>null</code> if the file does not match
+	 */
+	private ByteBuffer readHeader(FileChannel channel, int type, File f) throws IOException
+	{
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		while(header.hasRemaining()) {
+			if(channel.read(header, header.position()) < 0) {
+				LOG.warn(String.format("Cache file too short: %s", f.getAbsolutePath()));
+				return null;
+			}
+		}
+		header.flip();
+		if(header.getInt() != MAGIC) {
+			LOG.warn(String.format("Not a cache file: %s", f.getAbsolutePath()));
+			return null;
+		}
+		int version = header.getInt();
+		if(version != VERSION) {
+			LOG.info(String.format("Cache file version %d differs from %d: %s", version, VERSION, f.getAbsolutePath()));
+			return null;
+		}
+		if(header.getInt() != type || header.getInt() != this.am.size() || header.getLong() != this.am.getNumberOfEdges()) {
+			LOG.warn(String.format("Cache file does not match network: %s", f.getAbsolutePath()));
+			return null;
+		}
+		return header;
+	}
+
+
+	private static void write(FileChannel channel, ByteBuffer b) throws IOException
+	{
+		b.clear();
+		while(b.hasRemaining()) {
+			channel.write(b);
+		}
+	}
+
+
+	private static void writeInts(FileChannel channel, int[] a) throws IOException
+	{
+		ByteBuffer b = ByteBuffer.allocate(4 * BLOCK);
+		IntBuffer ib = b.asIntBuffer();
+		for(int off=0; off<a.length; off+=BLOCK) {
+			int len = Math.min(BLOCK, a.length - off);
+			ib.clear();
+			ib.put(a, off, len);
+			b.clear();
+			b.limit(4 * len);
+			while(b.hasRemaining()) {
+				channel.write(b);
+			}
+		}
+	}
+
+
+	/**
+	 * Compare an array with the integers in a file at the given position.
+	 */
+	private static boolean equalInts(FileChannel channel, long pos, int[] a) throws IOException
+	{
+		if(pos + 4L * a.length > channel.size()) {
+			return false;
+		}
+		ByteBuffer b = ByteBuffer.allocate(4 * BLOCK);
+		for(int off=0; off<a.length; off+=BLOCK) {
+			int len = Math.min(BLOCK, a.length - off);
+			b.clear();
+			b.limit(4 * len);
+			while(b.hasRemaining()) {
+				if(channel.read(b, pos + b.position()) < 0) {
+					return false;
+				}
+			}
+			b.flip();
+			for(int k=0; k<len; k++) {
+				if(b.getInt() != a[off + k]) {
+					return false;
+				}
+			}
+			pos += 4L * len;
+		}
+		return true;
+	}
+
+
+	private static void move(File from, File to) throws IOException
+	{
+		try {
+			Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			if(!from.delete()) {
+				from.deleteOnExit();
+			}
+			throw e;
+		}
+	}
+
+}
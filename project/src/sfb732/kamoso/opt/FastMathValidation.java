@@ -0,0 +1,217 @@
+package sfb732.kamoso.opt;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Properties;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import sfb732.kamoso.ParochialSimulation;
+import sfb732.kamoso.conf.Configuration;
+import sfb732.kamoso.mem.Exemplar;
+import sfb732.kamoso.mem.Lexicon;
+import sfb732.kamoso.net.Network;
+import sfb732.kamoso.net.NetworkFactory;
+import sfb732.kamoso.net.NetworkType;
+import sfb732.kamoso.pop.Agent;
+import sfb732.kamoso.pop.PopulationFactory;
+import sfb732.kamoso.util.FastExp;
+import sfb732.kamoso.util.StatsFileReader;
+
+
+
+/**
+ * Validation of the fast math mode (configuration key <code>x.fastmath</code>).
+ * <p>
+ * For each of a list of fixed random seeds, the simulation of the given
+ * configuration is run twice: with exact exponential functions and with the
+ * approximation of {@link FastExp}. The per-epoch ratios of variant A of both
+ * runs are compared, and the maximum and mean absolute divergence of the
+ * trajectories is printed per seed and over all seeds.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+public class FastMathValidation {
+
+	private static final Logger LOG = LogManager.getLogger(FastMathValidation.class.getCanonicalName());
+
+	private static final String ARG_SEEDS = "-seeds";
+
+	private static final String KEY_RANDOM_SEED = "random.seed";
+	private static final String KEY_FASTMATH    = "x.fastmath";
+
+
+	public static void main(String[] args)
+	{
+		File outDir   = new File(Configuration.DEFAULT_OUPUT_DIR);
+		File confFile = null;
+		int maxEpochs = 100;
+		long[] seeds  = new long[]{ 1L, 2L, 3L, 4L, 5L };
+
+		try{
+
+			for(int ax=0; ax<args.length; ax++)
+			{
+				if(args[ax].equals(Configuration.ARG_HELP1) || args[ax].equals(Configuration.ARG_HELP2)){
+					printMainHelpAndExit(System.out, 0);
+				} else if (args[ax].equals(Configuration.ARG_FILE_CONF)) {
+					confFile = new File(args[++ax]);
+					continue;
+				} else if (args[ax].equals(Configuration.ARG_FILE_OUT)) {
+					outDir = new File(args[++ax]);
+					continue;
+				} else if (args[ax].equals(Configuration.ARG_RUN_EPOCHS)) {
+					maxEpochs = Integer.parseInt(args[++ax]);
+					continue;
+				} else if (args[ax].equals(ARG_SEEDS)) {
+					String[] s = args[++ax].split(",");
+					seeds = new long[s.length];
+					for(int i=0; i<s.length; i++) {
+						seeds[i] = Long.parseLong(s[i].trim());
+					}
+					continue;
+				} else {
+					System.err.printf("Unknown program argument: %s", args[ax]);
+					printMainHelpAndExit(System.err, 1);
+				}
+			}
+
+		} catch (Exception e) {
+			System.err.println("Could not parse program arguments.");
+			e.printStackTrace();
+			printMainHelpAndExit(System.err, 1);
+		}
+
+		double[][] divergence = validate(confFile, outDir, maxEpochs, seeds);
+
+		PrintStream p = System.out;
+		p.println("seed,max_abs_diff,mean_abs_diff");
+		double max = 0.0;
+		double sum = 0.0;
+		for(int i=0; i<seeds.length; i++) {
+			p.printf("%d,%.8f,%.8f\n", seeds[i], getMax(divergence[i]), getMean(divergence[i]));
+			max  = Math.max(max, getMax(divergence[i]));
+			sum += getMean(divergence[i]);
+		}
+		p.printf("all,%.8f,%.8f\n", max, sum / seeds.length);
+	}
+
+
+	/**
+	 * Run the simulations in exact and in fast math mode for each seed.
+	 * @param confFile  -- configuration file, or <code>null</code> for the default configuration
+	 * @param outDir    -- output directory of all runs
+	 * @param maxEpochs
+	 * @param seeds
+	 * @return absolute differences of the ratios of variant A per seed and epoch
+	 */
+	public static double[][] validate(File confFile, File outDir, int maxEpochs, long[] seeds)
+	{
+		double[][] divergence = new double[seeds.length][];
+		for(int i=0; i<seeds.length; i++)
+		{
+			double[] exact = run(confFile, new File(outDir, String.format("seed%d_exact/", seeds[i])), maxEpochs, seeds[i], false);
+			double[] fast  = run(confFile, new File(outDir, String.format("seed%d_fast/", seeds[i])), maxEpochs, seeds[i], true);
+			divergence[i] = new double[maxEpochs];
+			for(int e=0; e<maxEpochs; e++) {
+				divergence[i][e] = Math.abs(exact[e] - fast[e]);
+			}
+			LOG.info(String.format("Seed %d: max. divergence of A-ratio %.8f", seeds[i], getMax(divergence[i])));
+		}
+		return divergence;
+	}
+
+
+	/**
+	 * Run one simulation.
+	 * @return the ratio of variant A per epoch
+	 */
+	private static double[] run(File confFile, File runOut, int maxEpochs, long seed, boolean fastMath)
+	{
+		Properties overrides = new Properties();
+		overrides.setProperty(KEY_RANDOM_SEED, Long.toString(seed));
+		overrides.setProperty(KEY_FASTMATH, Boolean.toString(fastMath));
+		Configuration conf = Configuration.init(confFile, runOut, overrides);
+
+		Network net = getNet(conf);
+		ParochialSimulation.runParochialSimulationMT(conf, runOut, net, maxEpochs);
+		File epochs = new File(runOut, String.format("%s%s", conf.getOutputPrefix(), Configuration.FILE_SUFFIX_EPOCHS));
+		return StatsFileReader.getARatio(epochs, maxEpochs);
+	}
+
+
+	private static Network getNet(Configuration conf) {
+
+		File prototypesCSV = conf.getExemplarPrototypeFile();
+		if(null==prototypesCSV) {
+			throw new RuntimeException("Missing exemplar prototype file");
+		}
+		Exemplar[] lex = Lexicon.readPrototypes(conf, prototypesCSV, 2);
+
+		File agentsCSV = conf.getAgentsFile();
+		if(null==agentsCSV) {
+			throw new RuntimeException("Generation of agents not implemented");
+		}
+		Agent[] agents = PopulationFactory.readCSV(conf, agentsCSV, lex[0], lex[1]);
+
+		// initialize network:
+		File edgesCSV = conf.getNetworkFile();
+		Network net;
+		if(null==edgesCSV) {
+			NetworkType type = conf.getNetworkType();
+			int ncols = conf.getNetworkColumns();
+			int nrows = conf.getNetworkRows();
+			int pars  = conf.getNetworkParishes();
+			double p  = conf.getNetworkProbability();
+			net = NetworkFactory.makeNetwork(conf, type, ncols, nrows, pars, p, agents);
+		} else {
+			// read network edges from file
+			net = Network.readEdgelistCSV(conf, edgesCSV);
+		}
+		net.setAgents(agents);
+		return net;
+	}
+
+
+	private static double getMax(double[] x) {
+		double m = 0.0;
+		for(double v : x) {
+			m = Math.max(m, v);
+		}
+		return m;
+	}
+
+
+	private static double getMean(double[] x) {
+		double s = 0.0;
+		for(double v : x) {
+			s += v;
+		}
+		return x.length > 0 ? s / x.length : 0.0;
+	}
+
+
+	/**
+	 * Print help message and exit.
+	 * @param p
+	 * @param exitCode
+	 */
+	private static void printMainHelpAndExit(PrintStream p, int exitCode)
+	{
+		p.println("Compare A-ratio trajectories of exact and fast math simulations. Usage:");
+		p.print(FastMathValidation.class.getCanonicalName());
+		p.println(" [OPTIONS]");
+
+		p.println("Optional arguments:");
+		p.printf("  %-9s [FILE]   -- configuration file\n", Configuration.ARG_FILE_CONF);
+		p.printf("  %-9s [DIR]    -- output directory\n", Configuration.ARG_FILE_OUT);
+		p.printf("  %-9s [NUM]    -- Maximum number of epochs (default: 100)\n", Configuration.ARG_RUN_EPOCHS);
+		p.printf("  %-9s [LIST]   -- comma separated random seeds (default: 1,2,3,4,5)\n", ARG_SEEDS);
+		p.printf("  %-9s          -- show this help message and exit\n", Configuration.ARG_HELP1);
+		p.printf("  %-9s\n", Configuration.ARG_HELP2);
+
+		System.exit(exitCode);
+	}
+
+}
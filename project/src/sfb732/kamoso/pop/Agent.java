@@ -7,6 +7,8 @@ import sfb732.kamoso.conf.Configuration;
 import sfb732.kamoso.mem.Exemplar;
 import sfb732.kamoso.mem.Exemplar.Type;
 import sfb732.kamoso.mem.Lexicon;
+import sfb732.kamoso.mem.LexiconSnapshot;
+import sfb732.kamoso.util.RandomStream;
 
 
 /**
@@ -132,6 +134,20 @@ public class Agent {
 		return this.lexicon.getVariantARatio();
 	}
 
+	/**
+	 * Freeze the lexicon of this agent for speaking.
+	 * @param maxWrites -- maximum number of exemplars this agent will perceive
+	 *   before {@link #thawLexicon()} is called
+	 * @see Lexicon#freeze(int)
+	 */
+	public void freezeLexicon(int maxWrites) {
+		this.lexicon.freeze(maxWrites);
+	}
+
+	public void thawLexicon() {
+		this.lexicon.thaw();
+	}
+
 	public void writeLexiconToCSV(File outFile){
 		this.lexicon.writeCSV(outFile);
 	}
@@ -140,6 +156,31 @@ public class Agent {
 		this.lexicon.writeToStream(out);
 	}
 
+	/**
+	 * @see Lexicon#snapshot()
+	 */
+	public LexiconSnapshot getLexiconSnapshot() {
+		return this.lexicon.snapshot();
+	}
+
+	/**
+	 * @see Lexicon#snapshot(long)
+	 */
+	public LexiconSnapshot getLexiconSnapshot(long writeCount) {
+		return this.lexicon.snapshot(writeCount);
+	}
+
+	/**
+	 * @see Lexicon#getWriteCount()
+	 */
+	public long getLexiconWriteCount() {
+		return this.lexicon.getWriteCount();
+	}
+
+	public int getLexiconDimensions() {
+		return this.lexicon.getDimensions();
+	}
+
 
 	/**
 	 * Add a given exemplar to the lexicon of this agent:
@@ -187,16 +228,24 @@ public class Agent {
 		this.producedExemplars = 0;
 	}
 
+	public void addProducedExemplars(int n) {
+		this.producedExemplars += n;
+	}
+
 	/**
 	 * Get exemplars spoken by this agent.
+	 * <p>
+	 * This method does not count the produced exemplars, see
+	 * {@link #addProducedExemplars(int)}. It may be called concurrently if the
+	 * lexicon of this agent is frozen.
+	 * @param rand -- random stream of the calling thread
 	 * @return array of exemplars
 	 */
-	public Exemplar[] speak() {
+	public Exemplar[] speak(RandomStream rand) {
 		Exemplar[] utt = new Exemplar[this.conf.getUtteranceSize()];
 		for(int i=0; i<utt.length; i++){
-			Exemplar target = this.lexicon.getGoodExemplar();
-			utt[i] = this.conf.getNoisyCopy(this, target);
-			this.producedExemplars++;
+			Exemplar target = this.lexicon.getGoodExemplar(rand);
+			utt[i] = this.conf.getNoisyCopy(this, target, rand);
 		}
 		return utt;
 	}
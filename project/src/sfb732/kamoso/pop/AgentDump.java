@@ -0,0 +1,320 @@
+package sfb732.kamoso.pop;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Deflater;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import sfb732.kamoso.conf.Configuration;
+import sfb732.kamoso.mem.LexiconSnapshot;
+import sfb732.kamoso.util.ColumnWriter;
+import sfb732.kamoso.util.ParallelZipWriter;
+
+
+/**
+ * Snapshots of the agents (and their lexicons) of a population.
+ * <p>
+ * Two formats are available (see {@link Format}):
+ * <ul>
+ * <li>{@link Format#csv}: one ZIP file per dump, containing one
+ *     <tt>%09d_lexicon.csv</tt> entry per agent and <tt>agents.csv</tt>;
+ *     the entries are compressed in parallel (see {@link ParallelZipWriter})</li>
+ * <li>{@link Format#binary}: one columnar binary file per dump, which can be
+ *     read with {@link AgentDumpReader} and converted into the ZIP format
+ *     with {@link AgentDumpReader#exportCSV(File)}</li>
+ * </ul>
+ * Binary dumps may hold lexicon deltas (see {@link PopulationSnapshot#isDelta()}):
+ * the lexicon block of an agent then contains only the ring positions
+ * written since the base dump, i.e. the previous lexicon dump, unless the
+ * agent was replaced in the meantime. {@link AgentDumpReader#readComplete(File)}
+ * rebuilds the complete lexicons from the chain of dumps.
+ * Dumps are written from {@link PopulationSnapshot}s, i.e. the simulation
+ * may continue while a dump is written (see {@link AgentDumpWriter}).
+ * <p>
+ * The binary format is written in little-endian byte order; every section
+ * starts at a multiple of 8 bytes (padded with zeros):
+ * <pre>
+ * header:
+ *   int    magic ({@link #MAGIC}, "KDMP")
+ *   int    format version ({@link #VERSION})
+ *   int    epoch
+ *   int    n, the number of agents
+ *   int    DIM, the number of phonetic dimensions
+ *   int    largest lexicon capacity
+ *   int    flags (bit 0: lexicons included, bit 1: lexicon deltas)
+ *   int    epoch of the base dump of a delta (-1 otherwise)
+ *   long   total number of exemplars in the lexicon blocks
+ *   long   file offset of the first lexicon block
+ *   int    length of the timestamp in bytes (-1 for null), UTF-8 bytes
+ * agent table, one column after the other, n values each:
+ *   long   agent ID
+ *   int    node ID
+ *   int    age
+ *   byte   gender (ordinal of {@link Agent.Gender})
+ *   double status
+ *   double ratio of variant A
+ *   int    received exemplars
+ *   int    discarded percepts
+ *   int    produced exemplars
+ *   int    lexicon size
+ *   int    lexicon capacity
+ *   int    ring position of the first entry of a delta block (-1 for complete lexicons)
+ *   int    number of entries in the lexicon block
+ *   long   file offset of the lexicon block (-1 if lexicons are not included)
+ * lexicon blocks, one per agent in table order (s entries):
+ *   byte   exemplar type[s] (ordinal, -1 for null)
+ *   byte   speaker gender[s] (ordinal, -1 for null)
+ *   double speaker status[s]
+ *   double closeness[s]
+ *   double phonetic features[DIM][s] (dimension-major)
+ * </pre>
+ * Version 1 files lack the columns of ring positions and entries (the blocks
+ * hold complete lexicons).
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+public final class AgentDump {
+
+	private static final Logger LOG = LogManager.getLogger(AgentDump.class.getCanonicalName());
+
+	/**
+	 * Output format of agent dumps.
+	 */
+	public enum Format {
+		/** zipped CSV files */
+		csv,
+		/** columnar binary files */
+		binary
+	}
+
+	public static final String SUFFIX_CSV    = ".zip";
+	public static final String SUFFIX_BINARY = ".kdump";
+
+	public static final String ENTRY_AGENTS  = "agents.csv";
+	public static final String ENTRY_LEXICON = "%09d_lexicon.csv";
+
+	/** "KDMP" in little-endian byte order */
+	public static final int MAGIC   = 0x504D444B;
+	public static final int VERSION = 2;
+
+	public static final int FLAG_LEXICONS = 1;
+	public static final int FLAG_DELTA    = 2;
+
+	/** size of the fixed part of the header in bytes */
+	static final int HEADER_SIZE = 48;
+
+	static final Charset CHARSET = Charset.forName(Configuration.DEFAULT_ENCODING);
+
+
+	private AgentDump() {}
+
+
+	/**
+	 * Write a snapshot in the given format.
+	 * @param format
+	 * @param outDir
+	 * @param pfx -- file name prefix
+	 * @param snapshot
+	 * @param zipLevel -- compression level of CSV dumps (see {@link ParallelZipWriter})
+	 * @param zipExecutor -- executor for compressing the entries of CSV dumps
+	 *   in parallel, or null
+	 * @return the written file
+	 * @throws IOException
+	 */
+	public static File write(Format format, File outDir, String pfx, PopulationSnapshot snapshot,
+			int zipLevel, ExecutorService zipExecutor) throws IOException
+	{
+		switch (format) {
+		case binary:
+			File binFile = new File(outDir, String.format("%s%05d%s", pfx, snapshot.getEpoch(), SUFFIX_BINARY));
+			writeBinary(snapshot, binFile);
+			return binFile;
+		case csv:
+			File lexZip = new File(outDir, String.format("%s%05d%s", pfx, snapshot.getEpoch(), SUFFIX_CSV));
+			writeCSV(snapshot, lexZip, zipLevel, zipExecutor);
+			return lexZip;
+		default:
+			throw new IllegalArgumentException("Unsupported dump format: " + format);
+		}
+	}
+
+
+	/**
+	 * Write a snapshot to a ZIP file with CSV entries, compressed with the
+	 * default level on the calling thread.
+	 * @param snapshot
+	 * @param lexZip
+	 * @throws IOException
+	 */
+	public static void writeCSV(PopulationSnapshot snapshot, File lexZip) throws IOException {
+		writeCSV(snapshot, lexZip, Deflater.DEFAULT_COMPRESSION, null);
+	}
+
+
+	/**
+	 * Write a snapshot to a ZIP file with CSV entries: one entry per lexicon
+	 * in the order of the snapshot, followed by the agent table. The lexicon
+	 * entries are formatted and compressed in parallel.
+	 * @param snapshot
+	 * @param lexZip
+	 * @param level -- compression level (see {@link ParallelZipWriter})
+	 * @param executor -- executor for compressing the entries, or null to
+	 *   compress on the calling thread
+	 * @throws IOException
+	 */
+	public static void writeCSV(final PopulationSnapshot snapshot, File lexZip, int level, ExecutorService executor) throws IOException
+	{
+		if(snapshot.isDelta()) {
+			throw new IllegalArgumentException("Lexicon deltas cannot be written as CSV");
+		}
+		LOG.debug("Writing agent information to zipped CSV...");
+
+		ParallelZipWriter zipOut = new ParallelZipWriter(lexZip, level, executor);
+		try {
+			final AgentStatisticsRaw agentStats = new AgentStatisticsRaw(snapshot.getTimestamp(), ",");
+			int epoch = snapshot.getEpoch();
+			for(int i=0; i<snapshot.size(); i++) {
+				agentStats.addRow(epoch, snapshot.getNodeId(i), snapshot.getAgentId(i), snapshot.getAge(i),
+						snapshot.getGender(i), snapshot.getStatus(i), snapshot.getVariantARatio(i),
+						snapshot.getReceivedExemplars(i), snapshot.getDiscardedPercepts(i), snapshot.getProducedExemplars(i));
+				if(snapshot.hasLexicons()) {
+					final LexiconSnapshot lexicon = snapshot.getLexicon(i);
+					zipOut.putEntry(String.format(ENTRY_LEXICON, snapshot.getAgentId(i)), new ParallelZipWriter.Content() {
+						@Override
+						public void writeTo(OutputStream out) throws IOException {
+							lexicon.writeCSV(out);
+						}
+					});
+				}
+			}
+			zipOut.putEntry(ENTRY_AGENTS, new ParallelZipWriter.Content() {
+				@Override
+				public void writeTo(OutputStream out) throws IOException {
+					agentStats.writeToStream(out);
+				}
+			});
+		} finally {
+			zipOut.close();
+		}
+	}
+
+
+	/**
+	 * Write a snapshot to a columnar binary file.
+	 * @param snapshot
+	 * @param outFile
+	 * @throws IOException
+	 */
+	public static void writeBinary(PopulationSnapshot snapshot, File outFile) throws IOException
+	{
+		LOG.debug("Writing agent information to binary file...");
+
+		int n = snapshot.size();
+		int dim = snapshot.getDimensions();
+		boolean dumpLexicon = snapshot.hasLexicons();
+
+		String timeStamp = snapshot.getTimestamp();
+		long tableStart = ColumnWriter.align(HEADER_SIZE + 4 + (null==timeStamp ? 0 : timeStamp.getBytes(CHARSET).length));
+		long lexStart   = tableStart + tableLength(VERSION, n);
+
+		// the lexicon blocks follow the agent table, i.e. their offsets are
+		// known in advance
+		int[] firsts   = new int[n];
+		int[] counts   = new int[n];
+		long[] offsets = new long[n];
+		long numExemplars = 0L;
+		long offset = lexStart;
+		for(int i=0; i<n; i++) {
+			if(dumpLexicon) {
+				LexiconSnapshot lexicon = snapshot.getLexicon(i);
+				firsts[i]  = lexicon.getFirstSlot();
+				counts[i]  = lexicon.size();
+				offsets[i] = offset;
+				offset += LexiconSnapshot.getColumnsLength(counts[i], dim);
+				numExemplars += counts[i];
+			} else {
+				firsts[i]  = -1;
+				offsets[i] = -1L;
+			}
+		}
+		int flags = (dumpLexicon ? FLAG_LEXICONS : 0) | (snapshot.isDelta() ? FLAG_DELTA : 0);
+
+		ColumnWriter out = new ColumnWriter(new FileOutputStream(outFile).getChannel());
+		try {
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putInt(snapshot.getEpoch());
+			out.putInt(n);
+			out.putInt(dim);
+			out.putInt(snapshot.getCapacity());
+			out.putInt(flags);
+			out.putInt(snapshot.getBaseEpoch());
+			out.putLong(numExemplars);
+			out.putLong(lexStart);
+			out.putString(timeStamp, CHARSET);
+			out.pad();
+
+			out.putLongs(snapshot.getAgentIds(), 0, n);
+			out.putInts(snapshot.getNodeIds(), 0, n);
+			out.pad();
+			out.putInts(snapshot.getAges(), 0, n);
+			out.pad();
+			out.putBytes(snapshot.getGenders(), 0, n);
+			out.pad();
+			out.putDoubles(snapshot.getStatuses(), 0, n);
+			out.putDoubles(snapshot.getVariantARatios(), 0, n);
+			out.putInts(snapshot.getReceivedExemplars(), 0, n);
+			out.pad();
+			out.putInts(snapshot.getDiscardedPercepts(), 0, n);
+			out.pad();
+			out.putInts(snapshot.getProducedExemplars(), 0, n);
+			out.pad();
+			out.putInts(snapshot.getLexiconSizes(), 0, n);
+			out.pad();
+			out.putInts(snapshot.getLexiconCapacities(), 0, n);
+			out.pad();
+			out.putInts(firsts, 0, n);
+			out.pad();
+			out.putInts(counts, 0, n);
+			out.pad();
+			out.putLongs(offsets, 0, n);
+
+			if(dumpLexicon) {
+				for(int i=0; i<n; i++) {
+					snapshot.getLexicon(i).writeColumns(out);
+					out.pad();
+				}
+			}
+			if(out.position() != offset) {
+				throw new IllegalStateException(String.format(
+						"Binary dump has %d bytes, expected %d", out.position(), offset));
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+
+	/**
+	 * @param version -- format version
+	 * @param n -- number of agents
+	 * @return length of the agent table in bytes
+	 */
+	static long tableLength(int version, int n) {
+		long i = ColumnWriter.align(4L * n);
+		return 8L * n // agent ID
+				+ 2 * i // node ID, age
+				+ ColumnWriter.align(n) // gender
+				+ 2 * 8L * n // status, ratio A
+				+ 5 * i // received, discarded, produced, size, capacity
+				+ (version >= 2 ? 2 * i : 0L) // first slot, entries
+				+ 8L * n; // offset
+	}
+
+}
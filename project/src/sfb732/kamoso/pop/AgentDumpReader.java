@@ -0,0 +1,413 @@
+package sfb732.kamoso.pop;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import sfb732.kamoso.mem.LexiconSnapshot;
+import sfb732.kamoso.util.ColumnWriter;
+
+
+/**
+ * Reader for binary agent dumps written by {@link AgentDump}. The header and
+ * the agent table are read on construction, lexicon blocks are read on
+ * demand.
+ * <p>
+ * Dumps with lexicon deltas are merged with their base dumps by
+ * {@link #readComplete(File)}; the base dumps are expected next to the
+ * delta, with the same file name prefix.
+ * <p>
+ * The main method converts binary dumps into the zipped CSV format, e.g. for
+ * the R scripts.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+public class AgentDumpReader implements Closeable {
+
+	private static final Logger LOG = LogManager.getLogger(AgentDumpReader.class.getCanonicalName());
+
+	private final File file;
+	private final FileChannel channel;
+
+	private final boolean hasLexicons;
+	private final long numExemplars;
+	private final int[] lexFirsts;
+	private final int[] lexCounts;
+	private final long[] lexOffsets;
+
+	/** header and agent table, without lexicons */
+	private final PopulationSnapshot agents;
+
+
+	/**
+	 * Open a binary dump and read the agent table.
+	 * @param file
+	 * @throws IOException if the file cannot be read or is not a binary dump
+	 */
+	public AgentDumpReader(File file) throws IOException
+	{
+		this.file = file;
+		this.channel = new FileInputStream(file).getChannel();
+		try {
+			ByteBuffer head = this.read(0L, AgentDump.HEADER_SIZE + 4);
+			if(head.getInt() != AgentDump.MAGIC) {
+				throw new IOException("Not a binary agent dump: " + file);
+			}
+			int version = head.getInt();
+			if(version < 1 || version > AgentDump.VERSION) {
+				throw new IOException(String.format("Unsupported version %d of binary agent dump: %s", version, file));
+			}
+			int epoch         = head.getInt();
+			int n             = head.getInt();
+			int dim           = head.getInt();
+			int capacity      = head.getInt();
+			int flags         = head.getInt();
+			this.hasLexicons  = (flags & AgentDump.FLAG_LEXICONS) != 0;
+			int baseEpoch     = head.getInt();// reserved in version 1
+			if((flags & AgentDump.FLAG_DELTA) == 0) {
+				baseEpoch = -1;
+			}
+			this.numExemplars = head.getLong();
+			head.getLong();// start of the lexicon blocks
+			int tsLength      = head.getInt();
+
+			long pos = AgentDump.HEADER_SIZE + 4;
+			String timeStamp = null;
+			if(tsLength >= 0) {
+				ByteBuffer ts = this.read(pos, tsLength);
+				timeStamp = new String(ts.array(), 0, tsLength, AgentDump.CHARSET);
+				pos += tsLength;
+			}
+			pos = ColumnWriter.align(pos);
+
+			ByteBuffer table = this.read(pos, (int) AgentDump.tableLength(version, n));
+			long[] agentIds     = new long[n];
+			int[] nodeIds       = new int[n];
+			int[] ages          = new int[n];
+			byte[] genders      = new byte[n];
+			double[] statuses   = new double[n];
+			double[] ratiosA    = new double[n];
+			int[] received      = new int[n];
+			int[] discarded     = new int[n];
+			int[] produced      = new int[n];
+			int[] lexSizes      = new int[n];
+			int[] lexCapacities = new int[n];
+			this.lexFirsts      = new int[n];
+			this.lexCounts      = new int[n];
+			this.lexOffsets     = new long[n];
+
+			getLongs(table, agentIds);
+			getInts(table, nodeIds);
+			getInts(table, ages);
+			table.get(genders);
+			align(table);
+			getDoubles(table, statuses);
+			getDoubles(table, ratiosA);
+			getInts(table, received);
+			getInts(table, discarded);
+			getInts(table, produced);
+			getInts(table, lexSizes);
+			getInts(table, lexCapacities);
+			if(version >= 2) {
+				getInts(table, this.lexFirsts);
+				getInts(table, this.lexCounts);
+			} else {
+				// complete lexicons only
+				Arrays.fill(this.lexFirsts, -1);
+				System.arraycopy(lexSizes, 0, this.lexCounts, 0, n);
+			}
+			getLongs(table, this.lexOffsets);
+
+			this.agents = new PopulationSnapshot(epoch, baseEpoch, timeStamp, dim, capacity,
+					agentIds, nodeIds, ages, genders, statuses, ratiosA,
+					received, discarded, produced, lexSizes, lexCapacities, null, null);
+		} catch (IOException e) {
+			this.channel.close();
+			throw e;
+		} catch (RuntimeException e) {
+			this.channel.close();
+			throw new IOException("Corrupt binary agent dump: " + file, e);
+		}
+	}
+
+
+	public File getFile() {
+		return this.file;
+	}
+
+	public int getEpoch() {
+		return this.agents.getEpoch();
+	}
+
+	/**
+	 * @return number of agents
+	 */
+	public int size() {
+		return this.agents.size();
+	}
+
+	public boolean hasLexicons() {
+		return this.hasLexicons;
+	}
+
+	/**
+	 * @return true if the lexicons of this dump are deltas
+	 * @see #getBaseFile()
+	 */
+	public boolean isDelta() {
+		return this.agents.isDelta();
+	}
+
+	/**
+	 * @return the dump the lexicon deltas of this dump are relative to, or
+	 *   null if this dump is not a delta
+	 */
+	public File getBaseFile()
+	{
+		if(! this.isDelta()) {
+			return null;
+		}
+		String name = this.file.getName();
+		String pfx = name.substring(0, name.length() - AgentDump.SUFFIX_BINARY.length()).replaceFirst("\\d+$", "");
+		return new File(this.file.getParentFile(),
+				String.format("%s%05d%s", pfx, this.agents.getBaseEpoch(), AgentDump.SUFFIX_BINARY));
+	}
+
+	/**
+	 * @return total number of exemplars in all lexicons (0 if the lexicons
+	 *   are not included)
+	 */
+	public long getNumberOfExemplars() {
+		return this.numExemplars;
+	}
+
+
+	/**
+	 * @return the header and the agent table of this dump, without lexicons
+	 */
+	public PopulationSnapshot getAgents() {
+		return this.agents;
+	}
+
+
+	/**
+	 * Read the lexicon of agent i.
+	 * @param i -- index of the agent in the dump
+	 * @return the lexicon contents, possibly a delta (see
+	 *   {@link LexiconSnapshot#isComplete()})
+	 * @throws IOException
+	 * @throws IllegalStateException if the dump does not include lexicons
+	 */
+	public LexiconSnapshot getLexicon(int i) throws IOException
+	{
+		if(! this.hasLexicons) {
+			throw new IllegalStateException("Binary agent dump does not include lexicons: " + this.file);
+		}
+		int count = this.lexCounts[i];
+		int dim   = this.agents.getDimensions();
+		return LexiconSnapshot.readColumns(this.read(this.lexOffsets[i], (int) LexiconSnapshot.getColumnsLength(count, dim)),
+				count, dim, this.agents.getLexiconCapacity(i), this.agents.getLexiconSize(i), this.lexFirsts[i]);
+	}
+
+
+	/**
+	 * Read the complete dump.
+	 * @return a snapshot including the lexicons (or lexicon deltas), if
+	 *   available
+	 * @throws IOException
+	 * @see #readComplete(File)
+	 */
+	public PopulationSnapshot read() throws IOException
+	{
+		if(! this.hasLexicons) {
+			return this.agents;
+		}
+		int n = this.agents.size();
+		LexiconSnapshot[] lexicons = new LexiconSnapshot[n];
+		for(int i=0; i<n; i++) {
+			lexicons[i] = this.getLexicon(i);
+		}
+		PopulationSnapshot a = this.agents;
+		return new PopulationSnapshot(a.getEpoch(), a.getBaseEpoch(), a.getTimestamp(), a.getDimensions(), a.getCapacity(),
+				a.getAgentIds(), a.getNodeIds(), a.getAges(), a.getGenders(), a.getStatuses(), a.getVariantARatios(),
+				a.getReceivedExemplars(), a.getDiscardedPercepts(), a.getProducedExemplars(),
+				a.getLexiconSizes(), a.getLexiconCapacities(), lexicons, null);
+	}
+
+
+	/**
+	 * Read a dump and merge its lexicon deltas with the chain of base dumps.
+	 * @param file
+	 * @return a snapshot with complete lexicons (if available)
+	 * @throws IOException if the dump or one of its base dumps cannot be read
+	 */
+	public static PopulationSnapshot readComplete(File file) throws IOException {
+		return readComplete(file, null);
+	}
+
+
+	/**
+	 * @param file
+	 * @param previous -- a complete snapshot which may be the base of the
+	 *   dump, or null
+	 */
+	private static PopulationSnapshot readComplete(File file, PopulationSnapshot previous) throws IOException
+	{
+		PopulationSnapshot snapshot;
+		File baseFile;
+		AgentDumpReader reader = new AgentDumpReader(file);
+		try {
+			snapshot = reader.read();
+			baseFile = reader.getBaseFile();
+		} finally {
+			reader.close();
+		}
+		if(! snapshot.isDelta()) {
+			return snapshot;
+		}
+		PopulationSnapshot base = previous;
+		if(null==base || base.getEpoch() != snapshot.getBaseEpoch()) {
+			if(! baseFile.isFile()) {
+				throw new IOException(String.format("Base dump of %s is missing: %s", file, baseFile));
+			}
+			base = readComplete(baseFile, null);
+		}
+		return snapshot.apply(base);
+	}
+
+
+	/**
+	 * Convert this dump into a ZIP file with CSV entries, as written by
+	 * {@link AgentDump#writeCSV(PopulationSnapshot, File)}. Lexicon deltas
+	 * are merged with their base dumps.
+	 * @param zipFile
+	 * @throws IOException
+	 */
+	public void exportCSV(File zipFile) throws IOException {
+		AgentDump.writeCSV(readComplete(this.file), zipFile);
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+
+	// ===================================================================
+	//                                                             HELPERS
+	// ===================================================================
+
+	private ByteBuffer read(long position, int length) throws IOException
+	{
+		ByteBuffer buf = ByteBuffer.allocate(length).order(ColumnWriter.ORDER);
+		while(buf.hasRemaining()) {
+			if(this.channel.read(buf, position + buf.position()) < 0) {
+				throw new EOFException("Unexpected end of binary agent dump: " + this.file);
+			}
+		}
+		buf.flip();
+		return buf;
+	}
+
+	private static void align(ByteBuffer buf) {
+		buf.position((int) ColumnWriter.align(buf.position()));
+	}
+
+	private static void getInts(ByteBuffer buf, int[] dst) {
+		buf.asIntBuffer().get(dst);
+		buf.position(buf.position() + 4*dst.length);
+		align(buf);
+	}
+
+	private static void getLongs(ByteBuffer buf, long[] dst) {
+		buf.asLongBuffer().get(dst);
+		buf.position(buf.position() + 8*dst.length);
+	}
+
+	private static void getDoubles(ByteBuffer buf, double[] dst) {
+		buf.asDoubleBuffer().get(dst);
+		buf.position(buf.position() + 8*dst.length);
+	}
+
+
+	// ===================================================================
+	//                                                                MAIN
+	// ===================================================================
+
+	/**
+	 * Convert binary dumps into zipped CSV files next to them. The dumps of
+	 * a directory are converted in the order of their epochs, i.e. each
+	 * lexicon delta is merged with the previously converted dump.
+	 * @param args -- binary dump files or directories containing them
+	 */
+	public static void main(String[] args)
+	{
+		if(args.length == 0) {
+			printMainHelpAndExit(System.out, 1);
+		}
+		int errors = 0;
+		for(String arg : args) {
+			File f = new File(arg);
+			List<File> files = new ArrayList<File>();
+			if(f.isDirectory()) {
+				for(File dump : f.listFiles()) {
+					if(dump.getName().endsWith(AgentDump.SUFFIX_BINARY)) {
+						files.add(dump);
+					}
+				}
+				// epochs are zero-padded, but may have more than 5 digits
+				Collections.sort(files, new Comparator<File>() {
+					@Override
+					public int compare(File a, File b) {
+						int c = a.getName().length() - b.getName().length();
+						return c != 0 ? c : a.getName().compareTo(b.getName());
+					}
+				});
+			} else if(f.getName().endsWith(AgentDump.SUFFIX_BINARY)) {
+				files.add(f);
+			}
+			PopulationSnapshot previous = null;
+			for(File dump : files) {
+				String name = dump.getName();
+				File zipFile = new File(dump.getParentFile(),
+						name.substring(0, name.length()-AgentDump.SUFFIX_BINARY.length()) + AgentDump.SUFFIX_CSV);
+				try {
+					PopulationSnapshot snapshot = readComplete(dump, previous);
+					AgentDump.writeCSV(snapshot, zipFile);
+					if(snapshot.hasLexicons()) {
+						previous = snapshot;
+					}
+					LOG.info(String.format("Exported %s to %s", dump.getAbsolutePath(), zipFile.getAbsolutePath()));
+				} catch (IOException e) {
+					LOG.error("Could not export binary agent dump " + dump.getAbsolutePath(), e);
+					errors++;
+				}
+			}
+		}
+		System.exit(errors > 0 ? 1 : 0);
+	}
+
+
+	private static void printMainHelpAndExit(PrintStream out, int status)
+	{
+		out.printf("usage: java %s DUMP|DIR ...%n", AgentDumpReader.class.getCanonicalName());
+		out.printf("  Converts binary agent dumps (*%s) into zipped CSV files (*%s).%n",
+				AgentDump.SUFFIX_BINARY, AgentDump.SUFFIX_CSV);
+		System.exit(status);
+	}
+
+}
@@ -0,0 +1,262 @@
+package sfb732.kamoso.pop;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import sfb732.kamoso.conf.Configuration;
+import sfb732.kamoso.net.Network;
+
+
+/**
+ * Background output stage for agent dumps. A call to
+ * {@link #dump(int, Network, boolean)} takes a {@link PopulationSnapshot} on
+ * the calling thread and hands it to a pool of writer threads, i.e. the
+ * simulation continues with the next epoch while the dump is compressed and
+ * written.
+ * <p>
+ * The number of pending snapshots is bounded: if all writer threads are busy
+ * and the queue is full, {@link #dump(int, Network, boolean)} blocks until a
+ * dump is finished. {@link #close()} waits for all pending dumps.
+ * With 0 writer threads, dumps are written synchronously.
+ * <p>
+ * The entries of zipped CSV dumps are compressed in parallel by a separate
+ * pool of threads, shared by all writer threads.
+ * <p>
+ * Binary lexicon dumps may be written as deltas of the previous lexicon
+ * dump (see {@link Configuration#getOutputDumpDeltaBase()}); every
+ * (base+1)-th lexicon dump is complete.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+public class AgentDumpWriter implements Closeable {
+
+	private static final Logger LOG = LogManager.getLogger(AgentDumpWriter.class.getCanonicalName());
+
+	private final Configuration conf;
+	private final AgentDump.Format format;
+	private final File outDir;
+	private final String pfx;
+
+	private final ExecutorService executor;// null for synchronous output
+	private final Semaphore slots;
+
+	private final int zipLevel;
+	private final ExecutorService zipExecutor;// null: compress on the writer thread
+
+	private final int deltaBase;// max. number of consecutive deltas, 0: no deltas
+	private int deltas = 0;// since the last complete lexicon dump
+	// base of the next delta: the last lexicon dump, without its lexicons
+	private int baseEpoch = -1;
+	private long[] baseIds = null;
+	private long[] baseWrites = null;
+
+	/** first failure of a writer thread */
+	private volatile IOException failure = null;
+
+	// the same epoch may be dumped twice (same file): the last dump wins
+	private int lastEpoch = -1;
+	private Future<?> lastDump = null;
+
+
+	/**
+	 * Constructor.
+	 * @param conf -- the current configuration
+	 * @param outDir -- output directory
+	 * @param pfx -- file name prefix
+	 * @see Configuration#getOutputDumpThreads()
+	 * @see Configuration#getOutputDumpQueueSize()
+	 * @see Configuration#getOutputDumpDeltaBase()
+	 * @throws IllegalArgumentException if deltas are requested for CSV dumps
+	 */
+	public AgentDumpWriter(Configuration conf, File outDir, String pfx)
+	{
+		this.conf   = conf;
+		this.format = conf.getOutputDumpFormat();
+		this.outDir = outDir;
+		this.pfx    = pfx;
+
+		this.deltaBase = Math.max(0, conf.getOutputDumpDeltaBase());
+		if(this.deltaBase > 0 && this.format != AgentDump.Format.binary) {
+			throw new IllegalArgumentException("Lexicon deltas require the binary dump format");
+		}
+
+		int threads = conf.getOutputDumpThreads();
+		if(threads > 0) {
+			this.executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("dump-writer-"));
+			this.slots = new Semaphore(threads + Math.max(0, conf.getOutputDumpQueueSize()));
+		} else {
+			this.executor = null;
+			this.slots = null;
+		}
+
+		this.zipLevel = conf.getOutputDumpZipLevel();
+		int zipThreads = this.format == AgentDump.Format.csv ? conf.getOutputDumpZipThreads() : 1;
+		if(zipThreads > 1) {
+			this.zipExecutor = Executors.newFixedThreadPool(zipThreads, new DaemonThreadFactory("dump-zip-"));
+		} else {
+			this.zipExecutor = null;
+		}
+		LOG.debug(String.format("Agent dumps: format %s, %d writer threads, %d compression threads", this.format, threads, zipThreads));
+	}
+
+
+	private static class DaemonThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+		private final AtomicInteger count = new AtomicInteger();
+
+		DaemonThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, this.prefix + this.count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+
+	/**
+	 * Dump the current state of the population. Must not be called while
+	 * interactions are running.
+	 * @param epoch
+	 * @param pop
+	 * @param dumpLexicon -- include the lexicons of all agents
+	 * @throws IOException if a previous dump failed, or if this dump fails
+	 *   (synchronous output only)
+	 */
+	public void dump(int epoch, Network pop, boolean dumpLexicon) throws IOException
+	{
+		this.checkFailure();
+
+		int base = -1;
+		if(this.deltaBase > 0 && this.baseEpoch >= 0) {
+			if(epoch == this.baseEpoch) {
+				// the file of the last lexicon dump is replaced: keep the
+				// lexicons, but write them completely
+				dumpLexicon = true;
+				this.deltas = 0;
+			} else if(dumpLexicon && this.deltas < this.deltaBase) {
+				base = this.baseEpoch;
+			}
+		}
+
+		final PopulationSnapshot snapshot = PopulationSnapshot.take(this.conf, epoch, pop, dumpLexicon,
+				base, this.baseIds, this.baseWrites);
+		if(dumpLexicon && this.deltaBase > 0) {
+			this.deltas = snapshot.isDelta() ? this.deltas+1 : 0;
+			this.baseEpoch = epoch;
+			this.baseIds = snapshot.getAgentIds();
+			this.baseWrites = snapshot.getLexiconWriteCounts();
+		}
+		if(null==this.executor) {
+			AgentDump.write(this.format, this.outDir, this.pfx, snapshot, this.zipLevel, this.zipExecutor);
+			return;
+		}
+
+		if(epoch == this.lastEpoch && null!=this.lastDump) {
+			awaitUninterruptibly(this.lastDump);
+		}
+
+		// backpressure: wait for a free slot
+		this.slots.acquireUninterruptibly();
+		try {
+			this.lastDump = this.executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						AgentDump.write(format, outDir, pfx, snapshot, zipLevel, zipExecutor);
+					} catch (IOException e) {
+						LOG.error(String.format("Could not write agent dump for epoch %d", snapshot.getEpoch()), e);
+						if(null==failure) {
+							failure = e;
+						}
+					} catch (RuntimeException e) {
+						LOG.error(String.format("Could not write agent dump for epoch %d", snapshot.getEpoch()), e);
+						if(null==failure) {
+							failure = new IOException(e);
+						}
+					} finally {
+						slots.release();
+					}
+				}
+			});
+		} catch (RuntimeException e) {
+			this.slots.release();
+			throw e;
+		}
+		this.lastEpoch = epoch;
+	}
+
+
+	private static void awaitUninterruptibly(Future<?> f)
+	{
+		boolean interrupted = false;
+		while(true) {
+			try {
+				f.get();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			} catch (ExecutionException e) {
+				break;// reported by the task itself
+			}
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	private void checkFailure() throws IOException {
+		if(null!=this.failure) {
+			throw new IOException("Agent dump failed", this.failure);
+		}
+	}
+
+
+	/**
+	 * Wait until all pending dumps are written and stop the writer threads.
+	 * @throws IOException if a dump failed
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if(null!=this.executor) {
+			this.executor.shutdown();
+			boolean interrupted = false;
+			while(true) {
+				try {
+					if(this.executor.awaitTermination(1, TimeUnit.MINUTES)) {
+						break;
+					}
+					LOG.info("Waiting for pending agent dumps...");
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if(interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if(null!=this.zipExecutor) {
+			this.zipExecutor.shutdown();
+		}
+		this.checkFailure();
+	}
+
+}
@@ -1,16 +1,18 @@
 package sfb732.kamoso.pop;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import sfb732.kamoso.conf.Configuration;
+import sfb732.kamoso.util.CSVEncoder;
 
 /**
- * Helper class for collecting / writing output data.
+ * Helper class for collecting / writing output data. Rows are formatted
+ * into a single in-memory buffer (see {@link CSVEncoder}).
  * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
  */
 public class AgentStatisticsRaw {
@@ -25,7 +27,8 @@ public class AgentStatisticsRaw {
 	private final String timeStamp;
 	private final String colsep;
 
-	private ArrayList<byte[]> writer;
+	private final ByteArrayOutputStream rows;
+	private final CSVEncoder writer;
 
 	/**
 	 * Constructor.
@@ -39,69 +42,78 @@ public class AgentStatisticsRaw {
 
 
 	public AgentStatisticsRaw (Configuration conf, String sep) throws IOException
+	{
+		this(conf.getTimestamp(), sep);
+	}
+
+
+	/**
+	 * Constructor.
+	 * @param timeStamp -- value of the timestamp column
+	 * @param sep -- column separator
+	 */
+	public AgentStatisticsRaw (String timeStamp, String sep)
 	{
 		this.colsep = sep;
-		this.writer = new ArrayList<byte[]>();
-		this.timeStamp = conf.getTimestamp();
+		this.rows = new ByteArrayOutputStream(1 << 14);
+		this.writer = new CSVEncoder(this.rows);
+		this.timeStamp = timeStamp;
 
 		// write header:
-		this.writer.add(String.format("timestamp%sepoch%snodeID%sagentID%sage%sgender%sstatus"
-				+ "%sratioA"
-				+ "%sexemplars.received%sexemplars.discarded%sexemplars.produced"
-				+ "%s",
-				colsep, colsep, colsep, colsep, colsep, colsep, colsep, colsep, colsep, colsep, END).getBytes() );
+		try {
+			this.writer.append(String.format("timestamp%sepoch%snodeID%sagentID%sage%sgender%sstatus"
+					+ "%sratioA"
+					+ "%sexemplars.received%sexemplars.discarded%sexemplars.produced"
+					+ "%s",
+					colsep, colsep, colsep, colsep, colsep, colsep, colsep, colsep, colsep, colsep, END));
+		} catch (IOException e) {
+			// not thrown by ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
 	}
 
 
 	public void addRow(int epoch, Agent a)
 	{
-		StringBuilder sb = new StringBuilder();
-
-		sb.append(this.timeStamp);
-		sb.append(colsep);
-
-		sb.append(String.valueOf(epoch));
-		sb.append(colsep);
-
-		sb.append(String.valueOf(a.getNodeId()));
-		sb.append(colsep);
-
-		sb.append(String.valueOf(a.getId()));
-		sb.append(colsep);
-
-		sb.append(String.valueOf(a.getAge()));
-		sb.append(colsep);
-
-		sb.append(a.getGender().toString());
-		sb.append(colsep);
-
-		sb.append(String.format(Configuration.DEFAULT_LOCALE, "%f", a.getStatus()));
-		sb.append(colsep);
-
-		sb.append(String.format(Configuration.DEFAULT_LOCALE, "%f", a.getVariantARatio()));
-		sb.append(colsep);
-
-		sb.append(String.format(Configuration.DEFAULT_LOCALE, "%d", a.getReceivedExemplars()));
-		sb.append(colsep);
-
-		sb.append(String.format(Configuration.DEFAULT_LOCALE, "%d", a.getDiscardedPercepts()));
-		sb.append(colsep);
-
-		sb.append(String.format(Configuration.DEFAULT_LOCALE, "%d", a.getProducedExemplars()));	
+		this.addRow(epoch, a.getNodeId(), a.getId(), a.getAge(), a.getGender(),
+				a.getStatus(), a.getVariantARatio(), a.getReceivedExemplars(),
+				a.getDiscardedPercepts(), a.getProducedExemplars());
+	}
 
-		sb.append(END);
 
-		this.writer.add( sb.toString().getBytes() );
+	/**
+	 * Add a row with the given agent properties, e.g. as read from a binary
+	 * dump (see {@link AgentDumpReader}).
+	 */
+	public void addRow(int epoch, int nodeId, long agentId, int age, Agent.Gender gender,
+			double status, double ratioA, int received, int discarded, int produced)
+	{
+		try {
+			CSVEncoder w = this.writer;
+			w.append(this.timeStamp).append(colsep);
+			w.append(epoch).append(colsep);
+			w.append(nodeId).append(colsep);
+			w.append(agentId).append(colsep);
+			w.append(age).append(colsep);
+			w.append(gender.toString()).append(colsep);
+			w.appendFixed(status, 6).append(colsep);
+			w.appendFixed(ratioA, 6).append(colsep);
+			w.append(received).append(colsep);
+			w.append(discarded).append(colsep);
+			w.append(produced);
+			w.append(END);
+		} catch (IOException e) {
+			// not thrown by ByteArrayOutputStream
+			throw new IllegalStateException(e);
+		}
 	}
 
 
 
 	public void writeToStream(OutputStream out) {
 		try {
-			int sz=this.writer.size();
-			for(int i=0; i<sz; i++) {
-				out.write(this.writer.get(i));
-			}
+			this.writer.flush();
+			this.rows.writeTo(out);
 			out.flush();
 		} catch (IOException e) {
 			LOG.error("Could not write agent statistics to output stream", e);
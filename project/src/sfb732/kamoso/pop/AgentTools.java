@@ -3,7 +3,6 @@ package sfb732.kamoso.pop;
 import sfb732.kamoso.conf.Configuration;
 import sfb732.kamoso.mem.Exemplar;
 import sfb732.kamoso.pop.Agent.Gender;
-import sfb732.kamoso.util.MyMathHelper;
 
 
 /**
@@ -48,7 +47,7 @@ public class AgentTools {
 	public Agent getNewborn(int nodeID, boolean isStar, int lexCapacity)
 	{
 		Agent.Gender gender;
-		if(MyMathHelper.randomDouble() < FEMALE_PROB) {
+		if(conf.randomDouble() < FEMALE_PROB) {
 			gender = Gender.f;
 		} else {
 			gender = Gender.m;
@@ -57,7 +56,7 @@ public class AgentTools {
 		if(isStar) {
 			status = STATUS_HYP;
 		} else {
-			status = MyMathHelper.randomDouble(STATUS_MIN, STATUS_MAX);
+			status = STATUS_MIN + (STATUS_MAX - STATUS_MIN) * conf.randomDouble();
 		}
 		return new Agent(conf, ++NEXT_ID, nodeID, 0, gender, status, isStar, new Exemplar[lexCapacity]);
 	}
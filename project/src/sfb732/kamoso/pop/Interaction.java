@@ -2,18 +2,17 @@ package sfb732.kamoso.pop;
 
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import sfb732.kamoso.conf.Configuration;
 import sfb732.kamoso.mem.Exemplar;
 import sfb732.kamoso.net.EpochStatistics;
 import sfb732.kamoso.net.Network;
+import sfb732.kamoso.util.RandomStream;
 
 /**
  * 
@@ -52,6 +51,21 @@ public class Interaction {
 	}
 
 
+	/**
+	 * Scheduling of speaking and listening within one epoch.
+	 * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+	 */
+	public enum Mode {
+		/** collect all productions first, then distribute them to listeners */
+		twoPhase,
+
+		/** each listener perceives the productions of its speakers directly;
+		 * speakers draw from the lexicon state at the start of the epoch
+		 */
+		fused,
+	}
+
+
 
 	// ===================================================================
 	//                                                          UTTERANCES
@@ -78,50 +92,79 @@ public class Interaction {
 
 
 	// ===================================================================
-	// CALLABLES
+	//                                                       NODE HANDLERS
 	// ===================================================================
 
-	private class InputCollector implements Callable<Productions>
+	/**
+	 * Work to be done for a single network node within one epoch.
+	 */
+	private interface NodeHandler {
+		/**
+		 * @param node -- the network node
+		 * @param ps   -- statistics to be updated by this handler
+		 * @throws Exception
+		 */
+		public void handle(int node, ProductionStats ps) throws Exception;
+	}
+
+
+	/**
+	 * Collect productions of all speakers of a listener (phase 1 of
+	 * {@link Mode#twoPhase}).
+	 */
+	private class InputCollector implements NodeHandler
 	{
-		private final Agent listener;
+		private final Productions[] productions;
+		private final int epoch;
 
-		public InputCollector(Agent listener) {
-			this.listener = listener;
+		public InputCollector(Productions[] productions, int epoch) {
+			this.productions = productions;
+			this.epoch = epoch;
 		}
 
 		@Override
-		public Productions call() throws Exception
+		public void handle(int node, ProductionStats ps) throws Exception
 		{
-			Productions prods= new Productions(listener);
-			Iterator<Agent> it = pop.getSpeakerIterator(prods.listener, type);
+			Productions prods= new Productions(pop.getAgentAtNode(node));
+			RandomStream rand = conf.getRandomStream(this.epoch, prods.listener.getId());
+			Iterator<Agent> it = pop.getSpeakerIterator(prods.listener, type, rand);
+			int[] produced = ps.getProduced(pop.size());
 			while(it.hasNext()){
 				Agent speaker = it.next();
-				Exemplar[] utt = speaker.speak();
+				Exemplar[] utt = speaker.speak(rand);
 				prods.addAll(speaker, utt);
+				produced[speaker.getNodeId()] += utt.length;
 			}
-			return prods;
+			this.productions[node] = prods;
 		}
 	}
 
 
-
-	private class PerceptionHandler implements Callable<ProductionStats>
+	/**
+	 * Distribute collected productions to a listener (phase 2 of
+	 * {@link Mode#twoPhase}).
+	 */
+	private class PerceptionHandler implements NodeHandler
 	{
-		private final Productions prod;
+		private final Productions[] productions;
 
-		public PerceptionHandler(Productions p) {
-			this.prod = p;
+		public PerceptionHandler(Productions[] productions) {
+			this.productions = productions;
 		}
 
 		@Override
-		public ProductionStats call() throws Exception
+		public void handle(int node, ProductionStats ps) throws Exception
 		{
-			ProductionStats ps = new ProductionStats();
-			Agent listener = this.prod.listener;
-			int sz = this.prod.exemplars.size();
+			Productions prod = this.productions[node];
+			this.productions[node] = null;
+			if(null==prod) {
+				return;
+			}
+			Agent listener = prod.listener;
+			int sz = prod.exemplars.size();
 			for(int i=0; i<sz; i++) {
-				Agent speaker = this.prod.speakers.get(i);
-				Exemplar ex   = this.prod.exemplars.get(i);
+				Agent speaker = prod.speakers.get(i);
+				Exemplar ex   = prod.exemplars.get(i);
 				double sc = pop.getSocialCloseness(listener, speaker);
 				listener.listen(ex, sc);
 				if(ex.getType()==Exemplar.Type.A) {
@@ -130,17 +173,167 @@ public class Interaction {
 					ps.productionsB++;
 				}
 			}
+		}
+	}
+
+
+	/**
+	 * Speaking and listening in one pass for a single listener. Speakers must
+	 * have frozen lexicons.
+	 */
+	private class FusedHandler implements NodeHandler
+	{
+		private final int epoch;
+
+		public FusedHandler(int epoch) {
+			this.epoch = epoch;
+		}
+
+		@Override
+		public void handle(int node, ProductionStats ps) throws Exception
+		{
+			Agent listener = pop.getAgentAtNode(node);
+			RandomStream rand = conf.getRandomStream(this.epoch, listener.getId());
+			Iterator<Agent> it = pop.getSpeakerIterator(listener, type, rand);
+			int[] produced = ps.getProduced(pop.size());
+			while(it.hasNext()){
+				Agent speaker = it.next();
+				Exemplar[] utt = speaker.speak(rand);
+				produced[speaker.getNodeId()] += utt.length;
+				double sc = pop.getSocialCloseness(listener, speaker);
+				for(int i=0; i<utt.length; i++) {
+					listener.listen(utt[i], sc);
+					if(utt[i].getType()==Exemplar.Type.A) {
+						ps.productionsA++;
+					} else {
+						ps.productionsB++;
+					}
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Prepare lexicons for speaking (freeze) or release them (thaw).
+	 */
+	private class LexiconFreezer implements NodeHandler
+	{
+		private final boolean freeze;
+		private final int maxWrites;
+
+		public LexiconFreezer(boolean freeze, int maxWrites) {
+			this.freeze = freeze;
+			this.maxWrites = maxWrites;
+		}
+
+		@Override
+		public void handle(int node, ProductionStats ps) throws Exception
+		{
+			Agent agent = pop.getAgentAtNode(node);
+			if(this.freeze) {
+				agent.freezeLexicon(this.maxWrites);
+			} else {
+				agent.thawLexicon();
+			}
+		}
+	}
+
+
+	// ===================================================================
+	//                                                          SCHEDULING
+	// ===================================================================
+
+	/**
+	 * Apply a {@link NodeHandler} to a range of network nodes. The range is
+	 * split in halves until it is not larger than the grain size of this
+	 * interaction; idle worker threads steal the pending halves. The
+	 * statistics of both halves are summed up on the way back.
+	 */
+	private class RangeTask extends RecursiveTask<ProductionStats>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final NodeHandler handler;
+		private final int from;// inclusive
+		private final int to;// exclusive
+
+		public RangeTask(NodeHandler handler, int from, int to) {
+			this.handler = handler;
+			this.from = from;
+			this.to   = to;
+		}
+
+		@Override
+		protected ProductionStats compute()
+		{
+			if(this.to - this.from <= grain) {
+				return handleRange(this.handler, this.from, this.to);
+			}
+			int mid = (this.from + this.to) >>> 1;
+			RangeTask left  = new RangeTask(this.handler, this.from, mid);
+			RangeTask right = new RangeTask(this.handler, mid, this.to);
+			left.fork();
+			ProductionStats ps = right.compute();
+			ps.add(left.join());
 			return ps;
 		}
 	}
 
 
 	/**
-	 * Container for bookkeeping.
+	 * Apply handler to nodes <code>from</code> (inclusive) to <code>to</code>
+	 * (exclusive) in the calling thread.
+	 * @param handler
+	 * @param from
+	 * @param to
+	 * @return the statistics collected by the handler
+	 */
+	private static ProductionStats handleRange(NodeHandler handler, int from, int to)
+	{
+		ProductionStats ps = new ProductionStats();
+		for(int node=from; node<to; node++) {
+			try {
+				handler.handle(node, ps);
+			} catch (Exception e) {
+				LOG.error("Unexpected exception", e);
+			}
+		}
+		return ps;
+	}
+
+
+	/**
+	 * Container for bookkeeping. The number of produced exemplars by speaker
+	 * node is only allocated by handlers that let agents speak; it is summed
+	 * up with the other statistics when tasks are joined.
 	 */
-	private class ProductionStats {
+	private static class ProductionStats {
 		public int productionsA;
 		public int productionsB;
+		private int[] produced;
+
+		public int[] getProduced(int n) {
+			if(null == this.produced) {
+				this.produced = new int[n];
+			}
+			return this.produced;
+		}
+
+		public void add(ProductionStats other) {
+			this.productionsA += other.productionsA;
+			this.productionsB += other.productionsB;
+			if(null == other.produced) {
+				return;
+			}
+			if(null == this.produced) {
+				this.produced = other.produced;
+			} else {
+				for(int node=0; node<this.produced.length; node++) {
+					this.produced[node] += other.produced[node];
+				}
+			}
+		}
 
 		public double getARatio() {
 			return (double)this.productionsA / (double)(this.productionsA + this.productionsB);
@@ -151,23 +344,40 @@ public class Interaction {
 	//
 	// ===================================================================
 
+	/** number of chunks per worker thread the node range is split into */
+	private static final int CHUNKS_PER_THREAD = 8;
 
-	private final ExecutorService executor ;
+	private final ForkJoinPool executor ;
+	private final Configuration conf;
 	private final Network pop;
 	private final Type type;
+	private final Mode mode;
+
+	/** maximum number of nodes handled in one chunk */
+	private final int grain;
+
+	/** maximum number of exemplars one listener receives per epoch */
+	private final int maxReceived;
 
 	private int lastFinishedEpoch = -1;
 
-	public Interaction(Interaction.Type type, Network pop)
+	public Interaction(Configuration conf, Network pop)
 	{
-		this.type = type;
+		this.conf = conf;
+		this.type = conf.getInteractionType();
+		this.mode = conf.getEpochMode();
 		this.pop = pop;
-		this.executor = Executors.newCachedThreadPool();
+		this.maxReceived = conf.getNumberOfTeachers() * conf.getUtteranceSize();
+		int threads = conf.getSimulationThreads();
+		this.executor = new ForkJoinPool(threads);
+		this.grain = Math.max(1, pop.size() / (threads * CHUNKS_PER_THREAD));
+		LOG.debug(String.format("Interaction: %d threads, %d nodes per chunk", threads, this.grain));
 	}
 
 
 	/**
-	 * 
+	 * Multi-threaded version, scheduled according to the configured
+	 * {@link Mode}.
 	 * @return
 	 */
 	public double runInteractionsMT(EpochStatistics epochStats, int epoch)
@@ -177,55 +387,25 @@ public class Interaction {
 			throw new RuntimeException("this method must not be called twice per epoch");
 		}
 
-		// collect all productions from speakers:
-		ArrayList<Future<Productions>> futuresP = new ArrayList<Future<Productions>>();
-
-		Iterator<Agent> it = this.pop.iterator();
-		while(it.hasNext()) {
-			Agent listener = it.next();
-			InputCollector ic = new InputCollector(listener);
-			futuresP.add( this.executor.submit(ic) );
-		}
-
-		int sz = futuresP.size();
-		ArrayList<Productions> allProductions = new ArrayList<Productions>(sz);
-
-		for(int i=0; i<sz; i++) {
-			Future<Productions> f = futuresP.get(i);
-			try {
-				Productions p = f.get();
-				allProductions.add(p);
-			} catch (InterruptedException e) {
-				LOG.error("Unexpected exception", e);
-			} catch (ExecutionException e) {
-				LOG.error("Unexpected exception", e);
-			}
-		}
-		futuresP.clear();
-
-		// distribute all productions to listeners:
-		ArrayList<Future<ProductionStats>> futuresS = new ArrayList<Future<ProductionStats>>();
-
-		for(int i=0; i<sz; i++) {
-			Productions prod = allProductions.get(i);
-			PerceptionHandler ph = new PerceptionHandler(prod);
-			Future<ProductionStats> f = this.executor.submit(ph);
-			futuresS.add(f);
-		}
-
-		ProductionStats statsGlobal = new ProductionStats();
-		for(int i=0; i<sz; i++) {
-			Future<ProductionStats> f = futuresS.get(i);
-			try {
-				ProductionStats ps = f.get();
-				statsGlobal.productionsA += ps.productionsA;
-				statsGlobal.productionsB += ps.productionsB;
-			} catch (InterruptedException e) {
-				LOG.error("Unexpected exception", e);
-			} catch (ExecutionException e) {
-				LOG.error("Unexpected exception", e);
-			}
+		int n = this.pop.size();
+		ProductionStats statsGlobal;
+
+		if(this.mode == Mode.fused) {
+			// speakers draw from the lexicon state at the start of the epoch:
+			this.executor.invoke(new RangeTask(new LexiconFreezer(true, this.maxReceived), 0, n));
+			statsGlobal = this.executor.invoke(new RangeTask(new FusedHandler(epoch), 0, n));
+			this.executor.invoke(new RangeTask(new LexiconFreezer(false, 0), 0, n));
+		} else {
+			// prepare speakers and collect all productions:
+			Productions[] allProductions = new Productions[n];
+			this.executor.invoke(new RangeTask(new LexiconFreezer(true, 0), 0, n));
+			ProductionStats statsSpeakers = this.executor.invoke(new RangeTask(new InputCollector(allProductions, epoch), 0, n));
+			this.executor.invoke(new RangeTask(new LexiconFreezer(false, 0), 0, n));
+			// distribute all productions to listeners:
+			statsGlobal = this.executor.invoke(new RangeTask(new PerceptionHandler(allProductions), 0, n));
+			statsGlobal.add(statsSpeakers);
 		}
+		this.mergeProductionCounts(statsGlobal);
 
 		// store statistics
 		epochStats.addRow(epoch, statsGlobal.productionsA, statsGlobal.productionsB);
@@ -237,8 +417,6 @@ public class Interaction {
 
 
 
-
-
 	/**
 	 * Single-threadded version
 	 * @return
@@ -250,49 +428,18 @@ public class Interaction {
 			throw new RuntimeException("this method must not be called twice per epoch");
 		}
 
-		// collect all productions from speakers:
-		ArrayList<InputCollector> presentsP = new ArrayList<Interaction.InputCollector>();
-
-		Iterator<Agent> it = this.pop.iterator();
-		while(it.hasNext()) {
-			Agent listener = it.next();
-			InputCollector ic = new InputCollector(listener);
-			presentsP.add(ic);
-		}
-
-		int sz = presentsP.size();
-		ArrayList<Productions> allProductions = new ArrayList<Productions>(sz);
+		int n = this.pop.size();
 
-		for(int i=0; i<sz; i++) {
-			InputCollector ic = presentsP.get(i);
-			try {
-				Productions p = ic.call();
-				allProductions.add(p);
-			} catch (Exception e) {
-				LOG.error("Unexpected exception", e);
-			}
-		}
+		// prepare speakers and collect all productions:
+		Productions[] allProductions = new Productions[n];
+		handleRange(new LexiconFreezer(true, 0), 0, n);
+		ProductionStats statsSpeakers = handleRange(new InputCollector(allProductions, epoch), 0, n);
+		handleRange(new LexiconFreezer(false, 0), 0, n);
 
 		// distribute all productions to listeners:
-		ArrayList<PerceptionHandler> presentsPH = new ArrayList<Interaction.PerceptionHandler>();
-
-		for(int i=0; i<sz; i++) {
-			Productions prod = allProductions.get(i);
-			PerceptionHandler ph = new PerceptionHandler(prod);
-			presentsPH.add(ph);
-		}
-
-		ProductionStats statsGlobal = new ProductionStats();
-		for(int i=0; i<sz; i++) {
-			PerceptionHandler ph = presentsPH.get(i);
-			try {
-				ProductionStats ps = ph.call();
-				statsGlobal.productionsA += ps.productionsA;
-				statsGlobal.productionsB += ps.productionsB;
-			} catch (Exception e) {
-				LOG.error("Unexpected exception", e);
-			}
-		}
+		ProductionStats statsGlobal = handleRange(new PerceptionHandler(allProductions), 0, n);
+		statsGlobal.add(statsSpeakers);
+		this.mergeProductionCounts(statsGlobal);
 
 		// store statistics
 		epochStats.addRow(epoch, statsGlobal.productionsA, statsGlobal.productionsB);
@@ -306,6 +453,25 @@ public class Interaction {
 
 
 
+	/**
+	 * Add the production counts collected in one epoch to the speakers. Must
+	 * be called when no interactions are running.
+	 * @param stats -- the joined statistics of the epoch
+	 */
+	private void mergeProductionCounts(ProductionStats stats)
+	{
+		int[] counts = stats.produced;
+		if(null == counts) {
+			return;
+		}
+		for(int node=0; node<counts.length; node++) {
+			if(counts[node] != 0) {
+				this.pop.getAgentAtNode(node).addProducedExemplars(counts[node]);
+			}
+		}
+	}
+
+
 	public void shutdown() {
 		this.executor.shutdown();
 	}
@@ -0,0 +1,376 @@
+package sfb732.kamoso.pop;
+
+import java.util.Iterator;
+
+import sfb732.kamoso.conf.Configuration;
+import sfb732.kamoso.mem.LexiconSnapshot;
+import sfb732.kamoso.net.Network;
+
+
+/**
+ * Immutable copy of the state of all agents (and optionally their lexicons)
+ * at the end of an epoch. Snapshots are taken on the simulation thread and
+ * written to files by {@link AgentDump}, possibly in the background (see
+ * {@link AgentDumpWriter}).
+ * <p>
+ * The lexicons of a delta snapshot hold only the exemplars added since an
+ * earlier snapshot (the base, see {@link #getBaseEpoch()}), except for
+ * agents which were replaced in the meantime. Deltas are merged into the
+ * complete base with {@link #apply(PopulationSnapshot)}.
+ * <p>
+ * All agents are indexed in the iteration order of the network, i.e.
+ * 0..{@link #size()}-1.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+public final class PopulationSnapshot {
+
+	private static final Agent.Gender[] GENDERS = Agent.Gender.values();
+
+	private final int epoch;
+	private final int baseEpoch;// -1 unless the lexicons are deltas
+	private final String timeStamp;
+	private final int dim;
+	private final int capacity;
+
+	private final long[] agentIds;
+	private final int[] nodeIds;
+	private final int[] ages;
+	private final byte[] genders;// ordinal of Agent.Gender, -1 for null
+	private final double[] statuses;
+	private final double[] ratiosA;
+	private final int[] received;
+	private final int[] discarded;
+	private final int[] produced;
+	private final int[] lexSizes;
+	private final int[] lexCapacities;
+	private final LexiconSnapshot[] lexicons;// null if not included
+	private final long[] lexWrites;// lexicon write counts, null unless taken from a network
+
+
+	/**
+	 * Constructor. The arrays are not copied.
+	 */
+	PopulationSnapshot(int epoch, int baseEpoch, String timeStamp, int dim, int capacity,
+			long[] agentIds, int[] nodeIds, int[] ages, byte[] genders, double[] statuses, double[] ratiosA,
+			int[] received, int[] discarded, int[] produced, int[] lexSizes, int[] lexCapacities,
+			LexiconSnapshot[] lexicons, long[] lexWrites)
+	{
+		this.epoch         = epoch;
+		this.baseEpoch     = baseEpoch;
+		this.timeStamp     = timeStamp;
+		this.dim           = dim;
+		this.capacity      = capacity;
+		this.agentIds      = agentIds;
+		this.nodeIds       = nodeIds;
+		this.ages          = ages;
+		this.genders       = genders;
+		this.statuses      = statuses;
+		this.ratiosA       = ratiosA;
+		this.received      = received;
+		this.discarded     = discarded;
+		this.produced      = produced;
+		this.lexSizes      = lexSizes;
+		this.lexCapacities = lexCapacities;
+		this.lexicons      = lexicons;
+		this.lexWrites     = lexWrites;
+	}
+
+
+	/**
+	 * Copy the current state of the population. Must not be called while
+	 * interactions are running.
+	 * @param conf
+	 * @param epoch
+	 * @param pop
+	 * @param withLexicons -- include the lexicons of all agents
+	 * @return a new snapshot
+	 */
+	public static PopulationSnapshot take(Configuration conf, int epoch, Network pop, boolean withLexicons) {
+		return take(conf, epoch, pop, withLexicons, -1, null, null);
+	}
+
+
+	/**
+	 * Copy the current state of the population; the lexicons are copied
+	 * only in part if an earlier snapshot is given. Must not be called while
+	 * interactions are running.
+	 * @param conf
+	 * @param epoch
+	 * @param pop
+	 * @param withLexicons -- include the lexicons of all agents
+	 * @param baseEpoch -- epoch of an earlier snapshot of the same network
+	 *   with lexicons, or -1 for complete lexicons
+	 * @param baseIds -- agent IDs of the earlier snapshot (see
+	 *   {@link #getAgentIds()}), or null
+	 * @param baseWrites -- lexicon write counts of the earlier snapshot (see
+	 *   {@link #getLexiconWriteCounts()}), or null
+	 * @return a new snapshot, whose lexicons are deltas relative to the
+	 *   earlier snapshot
+	 */
+	static PopulationSnapshot take(Configuration conf, int epoch, Network pop, boolean withLexicons,
+			int baseEpoch, long[] baseIds, long[] baseWrites)
+	{
+		boolean delta = withLexicons && baseEpoch >= 0;
+		if(delta && (null==baseIds || null==baseWrites || baseIds.length != pop.size() || baseWrites.length != pop.size())) {
+			throw new IllegalArgumentException("Delta base must hold the agents of the same network");
+		}
+		int n = pop.size();
+		long[] agentIds      = new long[n];
+		int[] nodeIds        = new int[n];
+		int[] ages           = new int[n];
+		byte[] genders       = new byte[n];
+		double[] statuses    = new double[n];
+		double[] ratiosA     = new double[n];
+		int[] received       = new int[n];
+		int[] discarded      = new int[n];
+		int[] produced       = new int[n];
+		int[] lexSizes       = new int[n];
+		int[] lexCapacities  = new int[n];
+		LexiconSnapshot[] lexicons = withLexicons ? new LexiconSnapshot[n] : null;
+		long[] lexWrites     = new long[n];
+
+		int dim = conf.getExemplarPhonDim();
+		int capacity = 0;
+		int i = 0;
+		Iterator<Agent> it = pop.iterator();
+		while(it.hasNext()) {
+			Agent a = it.next();
+			if(i==0) {
+				dim = a.getLexiconDimensions();
+			} else if(a.getLexiconDimensions() != dim) {
+				throw new IllegalStateException(String.format(
+						"Agent %d has %d phonetic dimensions, expected %d", a.getId(), a.getLexiconDimensions(), dim));
+			}
+			agentIds[i]      = a.getId();
+			nodeIds[i]       = a.getNodeId();
+			ages[i]          = a.getAge();
+			genders[i]       = null==a.getGender() ? -1 : (byte) a.getGender().ordinal();
+			statuses[i]      = a.getStatus();
+			ratiosA[i]       = a.getVariantARatio();
+			received[i]      = a.getReceivedExemplars();
+			discarded[i]     = a.getDiscardedPercepts();
+			produced[i]      = a.getProducedExemplars();
+			lexSizes[i]      = a.getLexiconSize();
+			lexCapacities[i] = a.getLexiconCapacity();
+			lexWrites[i]     = a.getLexiconWriteCount();
+			if(withLexicons) {
+				if(delta && baseIds[i] == agentIds[i]) {
+					lexicons[i] = a.getLexiconSnapshot(baseWrites[i]);
+				} else {
+					// new agent (or no base): complete lexicon
+					lexicons[i] = a.getLexiconSnapshot();
+				}
+			}
+			capacity = Math.max(capacity, lexCapacities[i]);
+			i++;
+		}
+		if(i != n) {
+			throw new IllegalStateException(String.format("Network has %d agents, expected %d", i, n));
+		}
+		return new PopulationSnapshot(epoch, delta ? baseEpoch : -1, conf.getTimestamp(), dim, capacity,
+				agentIds, nodeIds, ages, genders, statuses, ratiosA,
+				received, discarded, produced, lexSizes, lexCapacities, lexicons, lexWrites);
+	}
+
+
+	/**
+	 * Merge this delta into its complete base.
+	 * @param base -- complete snapshot of epoch {@link #getBaseEpoch()}
+	 * @return a new snapshot with complete lexicons, or this snapshot if it
+	 *   is not a delta
+	 * @throws IllegalArgumentException if base does not match
+	 */
+	public PopulationSnapshot apply(PopulationSnapshot base)
+	{
+		if(! this.isDelta()) {
+			return this;
+		}
+		if(base.epoch != this.baseEpoch || base.isDelta() || !base.hasLexicons() || base.size() != this.size()) {
+			throw new IllegalArgumentException(String.format(
+					"Delta of epoch %d requires the complete lexicons of epoch %d", this.epoch, this.baseEpoch));
+		}
+		int n = this.size();
+		LexiconSnapshot[] complete = new LexiconSnapshot[n];
+		for(int i=0; i<n; i++) {
+			if(this.lexicons[i].isComplete()) {
+				complete[i] = this.lexicons[i];
+			} else if(base.agentIds[i] == this.agentIds[i]) {
+				complete[i] = base.lexicons[i].apply(this.lexicons[i]);
+			} else {
+				throw new IllegalArgumentException(String.format(
+						"Delta of epoch %d: agent %d is not in the base snapshot", this.epoch, this.agentIds[i]));
+			}
+		}
+		return new PopulationSnapshot(this.epoch, -1, this.timeStamp, this.dim, this.capacity,
+				this.agentIds, this.nodeIds, this.ages, this.genders, this.statuses, this.ratiosA,
+				this.received, this.discarded, this.produced, this.lexSizes, this.lexCapacities,
+				complete, this.lexWrites);
+	}
+
+
+	public int getEpoch() {
+		return this.epoch;
+	}
+
+	/**
+	 * @return epoch of the snapshot this delta is relative to, or -1 if the
+	 *   lexicons are complete (or not included)
+	 */
+	public int getBaseEpoch() {
+		return this.baseEpoch;
+	}
+
+	public boolean isDelta() {
+		return this.baseEpoch >= 0;
+	}
+
+	public String getTimestamp() {
+		return this.timeStamp;
+	}
+
+	/**
+	 * @return number of agents
+	 */
+	public int size() {
+		return this.agentIds.length;
+	}
+
+	/**
+	 * @return number of phonetic dimensions
+	 */
+	public int getDimensions() {
+		return this.dim;
+	}
+
+	/**
+	 * @return largest lexicon capacity of all agents
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	public boolean hasLexicons() {
+		return null!=this.lexicons;
+	}
+
+
+	// ===================================================================
+	//                                                              AGENTS
+	// ===================================================================
+
+	public long getAgentId(int i) {
+		return this.agentIds[i];
+	}
+
+	public int getNodeId(int i) {
+		return this.nodeIds[i];
+	}
+
+	public int getAge(int i) {
+		return this.ages[i];
+	}
+
+	public Agent.Gender getGender(int i) {
+		byte g = this.genders[i];
+		return g < 0 ? null : GENDERS[g];
+	}
+
+	public double getStatus(int i) {
+		return this.statuses[i];
+	}
+
+	public double getVariantARatio(int i) {
+		return this.ratiosA[i];
+	}
+
+	public int getReceivedExemplars(int i) {
+		return this.received[i];
+	}
+
+	public int getDiscardedPercepts(int i) {
+		return this.discarded[i];
+	}
+
+	public int getProducedExemplars(int i) {
+		return this.produced[i];
+	}
+
+	public int getLexiconSize(int i) {
+		return this.lexSizes[i];
+	}
+
+	public int getLexiconCapacity(int i) {
+		return this.lexCapacities[i];
+	}
+
+	/**
+	 * @param i
+	 * @return the lexicon of agent i
+	 * @throws IllegalStateException if the lexicons are not included
+	 */
+	public LexiconSnapshot getLexicon(int i) {
+		if(null==this.lexicons) {
+			throw new IllegalStateException("Snapshot does not include lexicons");
+		}
+		return this.lexicons[i];
+	}
+
+
+	// ===================================================================
+	//                                               COLUMNS (package-only)
+	// ===================================================================
+
+	long[] getAgentIds() {
+		return this.agentIds;
+	}
+
+	int[] getNodeIds() {
+		return this.nodeIds;
+	}
+
+	int[] getAges() {
+		return this.ages;
+	}
+
+	byte[] getGenders() {
+		return this.genders;
+	}
+
+	double[] getStatuses() {
+		return this.statuses;
+	}
+
+	double[] getVariantARatios() {
+		return this.ratiosA;
+	}
+
+	int[] getReceivedExemplars() {
+		return this.received;
+	}
+
+	int[] getDiscardedPercepts() {
+		return this.discarded;
+	}
+
+	int[] getProducedExemplars() {
+		return this.produced;
+	}
+
+	int[] getLexiconSizes() {
+		return this.lexSizes;
+	}
+
+	int[] getLexiconCapacities() {
+		return this.lexCapacities;
+	}
+
+	/**
+	 * @return lexicon write counts (see {@link Agent#getLexiconWriteCount()}),
+	 *   null unless taken from a network
+	 */
+	long[] getLexiconWriteCounts() {
+		return this.lexWrites;
+	}
+
+}
@@ -0,0 +1,107 @@
+package sfb732.kamoso.util;
+
+
+/**
+ * Alias table for sampling from a discrete distribution in constant time
+ * (Vose's alias method).
+ * <p>
+ * Instances are immutable and may be shared by several threads.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+public final class AliasTable {
+
+	private final double[] prob;
+	private final int[] alias;
+
+
+	/**
+	 * Constructor.
+	 * @param weights -- non-negative weights, at least one of them positive
+	 */
+	public AliasTable(double[] weights)
+	{
+		int k = weights.length;
+		double sum = 0.0;
+		int positive = -1;
+		for(int i=0; i<k; i++) {
+			if(weights[i] > 0.0) {
+				positive = i;
+			}
+			if(!(weights[i] >= 0.0) || Double.isInfinite(weights[i])) {
+				throw new IllegalArgumentException("Weights must be finite and non-negative: " + weights[i]);
+			}
+			sum += weights[i];
+		}
+		if(!(sum > 0.0)) {
+			throw new IllegalArgumentException("At least one weight must be positive");
+		}
+
+		this.prob  = new double[k];
+		this.alias = new int[k];
+
+		double[] scaled = new double[k];
+		int[] small = new int[k];
+		int[] large = new int[k];
+		int ns = 0;
+		int nl = 0;
+		for(int i=0; i<k; i++) {
+			scaled[i] = weights[i] * k / sum;
+			if(scaled[i] < 1.0) {
+				small[ns++] = i;
+			} else {
+				large[nl++] = i;
+			}
+		}
+		while(ns > 0 && nl > 0) {
+			int s = small[--ns];
+			int l = large[--nl];
+			this.prob[s]  = scaled[s];
+			this.alias[s] = l;
+			scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+			if(scaled[l] < 1.0) {
+				small[ns++] = l;
+			} else {
+				large[nl++] = l;
+			}
+		}
+		// remaining entries are 1 up to rounding errors
+		while(nl > 0) {
+			int l = large[--nl];
+			this.prob[l]  = 1.0;
+			this.alias[l] = l;
+		}
+		while(ns > 0) {
+			int s = small[--ns];
+			this.prob[s]  = 1.0;
+			this.alias[s] = s;
+			if(weights[s] == 0.0) {
+				// never select entries without weight
+				this.prob[s] = 0.0;
+				this.alias[s] = positive;
+			}
+		}
+	}
+
+
+	/**
+	 * Draw an index with probability proportional to its weight.
+	 * @param rand
+	 * @return an index in the range <code>[0 size())</code>
+	 */
+	public int sample(RandomStream rand)
+	{
+		double u = rand.nextDouble() * this.prob.length;
+		int i = (int) u;
+		return (u - i) < this.prob[i] ? i : this.alias[i];
+	}
+
+
+	/**
+	 * @return number of entries
+	 */
+	public int size() {
+		return this.prob.length;
+	}
+
+}
@@ -0,0 +1,292 @@
+package sfb732.kamoso.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+
+import sfb732.kamoso.conf.Configuration;
+
+
+/**
+ * Encoder for CSV output which formats numbers directly into a byte buffer,
+ * i.e. without creating strings. The buffer is written to the target stream
+ * whenever it is full and by {@link #flush()}.
+ * <p>
+ * Doubles are formatted with a fixed number of decimals, exactly as
+ * <tt>String.format(Configuration.DEFAULT_LOCALE, "%.{decimals}f", v)</tt>.
+ * {@link java.util.Formatter} rounds the shortest decimal representation of
+ * a double half-up, which may differ from rounding its exact binary value:
+ * values which are too close to a rounding tie to decide, as well as very
+ * large values, NaN and infinity, are passed to the Formatter (rare).
+ * <p>
+ * Buffers are pooled per thread, i.e. an encoder should be released with
+ * {@link #finish()}. Instances are not thread-safe.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+public final class CSVEncoder {
+
+	public static final int BUFFER_SIZE = 1 << 13;
+
+	/** maximum number of decimals of {@link #appendFixed(double, int)} */
+	public static final int MAX_DECIMALS = 9;
+
+	/** maximum number of pooled buffers per thread */
+	private static final int POOL_SIZE = 4;
+
+	private static final Charset CHARSET = Charset.forName(Configuration.DEFAULT_ENCODING);
+
+	private static final long[] POW10 = new long[MAX_DECIMALS + 1];
+	private static final String[] FORMATS = new String[MAX_DECIMALS + 1];
+	static {
+		long p = 1L;
+		for(int d=0; d<=MAX_DECIMALS; d++) {
+			POW10[d] = p;
+			FORMATS[d] = "%." + d + "f";
+			p *= 10L;
+		}
+	}
+
+	/** scaled values must be exact integers in double precision */
+	private static final double MAX_SCALED = 1e15;
+
+	private static final ThreadLocal<ArrayDeque<byte[]>> POOL = new ThreadLocal<ArrayDeque<byte[]>>() {
+		@Override
+		protected ArrayDeque<byte[]> initialValue() {
+			return new ArrayDeque<byte[]>(POOL_SIZE);
+		}
+	};
+
+
+	private OutputStream out;
+	private byte[] buf;
+	private int pos = 0;
+
+
+	/**
+	 * Constructor. Takes a buffer from the pool of the calling thread.
+	 * @param out -- target stream, which is not closed by this encoder
+	 */
+	public CSVEncoder(OutputStream out)
+	{
+		this.out = out;
+		byte[] b = POOL.get().poll();
+		this.buf = null==b ? new byte[BUFFER_SIZE] : b;
+	}
+
+
+	/**
+	 * Write the buffered bytes to the target stream and flush it.
+	 * @throws IOException
+	 */
+	public void flush() throws IOException
+	{
+		this.drain();
+		this.out.flush();
+	}
+
+
+	/**
+	 * Flush and return the buffer to the pool of the calling thread. The
+	 * encoder cannot be used afterwards; the target stream remains open.
+	 * @throws IOException
+	 */
+	public void finish() throws IOException
+	{
+		if(null==this.buf) {
+			return;
+		}
+		try {
+			this.flush();
+		} finally {
+			ArrayDeque<byte[]> pool = POOL.get();
+			if(pool.size() < POOL_SIZE) {
+				pool.push(this.buf);
+			}
+			this.buf = null;
+			this.out = null;
+		}
+	}
+
+
+	// ===================================================================
+	//                                                              APPEND
+	// ===================================================================
+
+	/**
+	 * @param c -- a character, e.g. a separator; non-ASCII characters are
+	 *   encoded in {@link Configuration#DEFAULT_ENCODING}
+	 * @return this encoder
+	 * @throws IOException
+	 */
+	public CSVEncoder append(char c) throws IOException
+	{
+		if(c >= 0x80) {
+			return this.append(String.valueOf(c));
+		}
+		this.ensure(1);
+		this.buf[this.pos++] = (byte) c;
+		return this;
+	}
+
+
+	/**
+	 * @param s -- a string, "null" for null (as {@link StringBuilder#append(String)})
+	 * @return this encoder
+	 * @throws IOException
+	 */
+	public CSVEncoder append(String s) throws IOException
+	{
+		if(null==s) {
+			s = "null";
+		}
+		int n = s.length();
+		for(int i=0; i<n; i++) {
+			if(s.charAt(i) >= 0x80) {
+				return this.append(s.getBytes(CHARSET));
+			}
+		}
+		// ASCII: one byte per character
+		for(int done=0; done<n; ) {
+			this.ensure(1);
+			int len = Math.min(n - done, this.buf.length - this.pos);
+			for(int i=0; i<len; i++) {
+				this.buf[this.pos++] = (byte) s.charAt(done + i);
+			}
+			done += len;
+		}
+		return this;
+	}
+
+
+	/**
+	 * @param b -- raw bytes
+	 * @return this encoder
+	 * @throws IOException
+	 */
+	public CSVEncoder append(byte[] b) throws IOException
+	{
+		if(b.length > this.buf.length) {
+			this.drain();
+			this.out.write(b);
+			return this;
+		}
+		this.ensure(b.length);
+		System.arraycopy(b, 0, this.buf, this.pos, b.length);
+		this.pos += b.length;
+		return this;
+	}
+
+
+	/**
+	 * @param v
+	 * @return this encoder, with v appended as by {@link String#valueOf(int)}
+	 * @throws IOException
+	 */
+	public CSVEncoder append(int v) throws IOException {
+		return this.append((long) v);
+	}
+
+
+	/**
+	 * @param v
+	 * @return this encoder, with v appended as by {@link String#valueOf(long)}
+	 * @throws IOException
+	 */
+	public CSVEncoder append(long v) throws IOException
+	{
+		if(v == Long.MIN_VALUE) {
+			return this.append(String.valueOf(v));
+		}
+		this.ensure(20);
+		if(v < 0) {
+			this.buf[this.pos++] = '-';
+			v = -v;
+		}
+		this.putDigits(v, 0);
+		return this;
+	}
+
+
+	/**
+	 * Append a double with a fixed number of decimals, as
+	 * <tt>String.format(Configuration.DEFAULT_LOCALE, "%.{decimals}f", v)</tt>.
+	 * @param v
+	 * @param decimals -- 0 to {@link #MAX_DECIMALS}
+	 * @return this encoder
+	 * @throws IOException
+	 */
+	public CSVEncoder appendFixed(double v, int decimals) throws IOException
+	{
+		if(decimals < 0 || decimals > MAX_DECIMALS) {
+			throw new IllegalArgumentException("Illegal number of decimals: " + decimals);
+		}
+		double scaled = Math.abs(v) * POW10[decimals];
+		if(!(scaled < MAX_SCALED)) {
+			// large, NaN or infinite
+			return this.append(String.format(Configuration.DEFAULT_LOCALE, FORMATS[decimals], v));
+		}
+		double floor = Math.floor(scaled);
+		double frac = scaled - floor;// exact
+		// the scaled shortest representation of v differs from the
+		// computed value by less than 1.5 ulps
+		if(Math.abs(frac - 0.5) <= 4 * Math.ulp(scaled)) {
+			return this.append(String.format(Configuration.DEFAULT_LOCALE, FORMATS[decimals], v));
+		}
+		long r = (long) floor;
+		if(frac > 0.5) {
+			r++;
+		}
+		this.ensure(24);
+		if(Double.doubleToRawLongBits(v) < 0) {
+			this.buf[this.pos++] = '-';// also for -0.0, as the Formatter
+		}
+		this.putDigits(r / POW10[decimals], 0);
+		if(decimals > 0) {
+			this.buf[this.pos++] = '.';
+			this.putDigits(r % POW10[decimals], decimals);
+		}
+		return this;
+	}
+
+
+	// ===================================================================
+	//                                                             HELPERS
+	// ===================================================================
+
+	/**
+	 * @param v -- non-negative value
+	 * @param width -- minimum number of digits (padded with zeros)
+	 */
+	private void putDigits(long v, int width)
+	{
+		int n = 1;
+		for(long t=v; t>=10; t/=10) {
+			n++;
+		}
+		n = Math.max(n, width);
+		int end = this.pos + n;
+		for(int i=end-1; i>=this.pos; i--) {
+			this.buf[i] = (byte) ('0' + (int) (v % 10));
+			v /= 10;
+		}
+		this.pos = end;
+	}
+
+
+	private void ensure(int n) throws IOException {
+		if(this.buf.length - this.pos < n) {
+			this.drain();
+		}
+	}
+
+
+	private void drain() throws IOException {
+		if(this.pos > 0) {
+			this.out.write(this.buf, 0, this.pos);
+			this.pos = 0;
+		}
+	}
+
+}
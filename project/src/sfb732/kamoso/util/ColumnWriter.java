@@ -0,0 +1,210 @@
+package sfb732.kamoso.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+
+/**
+ * Buffered writer for binary columns of primitive values. Arrays are copied
+ * into the buffer in bulk and the buffer is drained to the channel whenever
+ * it is full, i.e. no per-value objects are created.
+ * <p>
+ * All values are written in little-endian byte order ({@link #ORDER}).
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+public class ColumnWriter implements Closeable {
+
+	public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+	/** columns written with {@link #pad()} start at multiples of this */
+	public static final int ALIGNMENT = 8;
+
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer;
+
+	/** number of bytes drained to the channel */
+	private long drained = 0L;
+
+
+	/**
+	 * @param channel -- the output channel (closed by {@link #close()})
+	 */
+	public ColumnWriter(WritableByteChannel channel)
+	{
+		this(channel, DEFAULT_BUFFER_SIZE);
+	}
+
+
+	/**
+	 * @param channel -- the output channel (closed by {@link #close()})
+	 * @param bufferSize -- size of the internal buffer in bytes
+	 */
+	public ColumnWriter(WritableByteChannel channel, int bufferSize)
+	{
+		this.channel = channel;
+		this.buffer  = ByteBuffer.allocate(Math.max(bufferSize, 64) & ~(ALIGNMENT-1)).order(ORDER);
+	}
+
+
+	/**
+	 * @return number of bytes written so far (including buffered bytes)
+	 */
+	public long position() {
+		return this.drained + this.buffer.position();
+	}
+
+
+	public void putByte(byte v) throws IOException {
+		this.ensure(1);
+		this.buffer.put(v);
+	}
+
+	public void putInt(int v) throws IOException {
+		this.ensure(4);
+		this.buffer.putInt(v);
+	}
+
+	public void putLong(long v) throws IOException {
+		this.ensure(8);
+		this.buffer.putLong(v);
+	}
+
+	public void putDouble(double v) throws IOException {
+		this.ensure(8);
+		this.buffer.putDouble(v);
+	}
+
+
+	public void putBytes(byte[] a, int off, int len) throws IOException
+	{
+		while(len > 0) {
+			this.ensure(1);
+			int k = Math.min(len, this.buffer.remaining());
+			this.buffer.put(a, off, k);
+			off += k;
+			len -= k;
+		}
+	}
+
+
+	public void putInts(int[] a, int off, int len) throws IOException
+	{
+		while(len > 0) {
+			this.ensure(4);
+			int k = Math.min(len, this.buffer.remaining() >> 2);
+			this.buffer.asIntBuffer().put(a, off, k);
+			this.buffer.position(this.buffer.position() + (k << 2));
+			off += k;
+			len -= k;
+		}
+	}
+
+
+	public void putLongs(long[] a, int off, int len) throws IOException
+	{
+		while(len > 0) {
+			this.ensure(8);
+			int k = Math.min(len, this.buffer.remaining() >> 3);
+			this.buffer.asLongBuffer().put(a, off, k);
+			this.buffer.position(this.buffer.position() + (k << 3));
+			off += k;
+			len -= k;
+		}
+	}
+
+
+	public void putDoubles(double[] a, int off, int len) throws IOException
+	{
+		while(len > 0) {
+			this.ensure(8);
+			int k = Math.min(len, this.buffer.remaining() >> 3);
+			this.buffer.asDoubleBuffer().put(a, off, k);
+			this.buffer.position(this.buffer.position() + (k << 3));
+			off += k;
+			len -= k;
+		}
+	}
+
+
+	/**
+	 * Write a string as its length in bytes followed by the bytes, or
+	 * length -1 for null.
+	 * @param s -- may be null
+	 * @param cs -- character set
+	 * @throws IOException
+	 */
+	public void putString(String s, Charset cs) throws IOException
+	{
+		if(null==s) {
+			this.putInt(-1);
+		} else {
+			byte[] b = s.getBytes(cs);
+			this.putInt(b.length);
+			this.putBytes(b, 0, b.length);
+		}
+	}
+
+
+	/**
+	 * Write zeros up to the next multiple of {@link #ALIGNMENT}.
+	 * @throws IOException
+	 */
+	public void pad() throws IOException
+	{
+		int k = (int) (this.position() & (ALIGNMENT-1));
+		if(k > 0) {
+			for(; k<ALIGNMENT; k++) {
+				this.putByte((byte) 0);
+			}
+		}
+	}
+
+
+	/**
+	 * @param n -- number of bytes
+	 * @return n rounded up to the next multiple of {@link #ALIGNMENT}
+	 */
+	public static long align(long n) {
+		return (n + ALIGNMENT - 1) & ~((long) ALIGNMENT-1);
+	}
+
+
+	private void ensure(int bytes) throws IOException {
+		if(this.buffer.remaining() < bytes) {
+			this.flush();
+		}
+	}
+
+
+	/**
+	 * Drain the buffer to the channel.
+	 * @throws IOException
+	 */
+	public void flush() throws IOException
+	{
+		this.buffer.flip();
+		while(this.buffer.hasRemaining()) {
+			this.drained += this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+
+	@Override
+	public void close() throws IOException
+	{
+		try {
+			this.flush();
+		} finally {
+			this.channel.close();
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+package sfb732.kamoso.util;
+
+
+/**
+ * Table-based approximation of <code>exp(-x)</code> for non-negative x.
+ * <p>
+ * The function is tabulated on <code>[0 max]</code> with step size
+ * h = 2<sup>-10</sup> and evaluated by linear interpolation between the two
+ * neighbouring table entries. Since exp(-x) is convex, the interpolated value
+ * is never smaller than the exact value, and the relative error is bounded
+ * by h<sup>2</sup>/8 &middot; e<sup>h</sup> &lt; 1.2&middot;10<sup>-7</sup>
+ * (the absolute error is at most 1.2&middot;10<sup>-7</sup> &middot; exp(-x)).
+ * Arguments outside the table (including negative values and NaN) are
+ * passed to {@link Math#exp(double)}.
+ * <p>
+ * Instances are immutable and may be shared by several threads.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+public final class FastExp {
+
+	/** number of table entries per unit interval */
+	public static final int STEPS = 1024;
+
+	/** upper bound on the relative error of {@link #expNeg(double)} */
+	public static final double MAX_REL_ERROR = 1.2e-7;
+
+	/** largest supported table range (exp(-64) is about 1.6E-28) */
+	private static final double MAX_RANGE = 64.0;
+
+	private final double[] table;
+	private final double max;
+
+
+	/**
+	 * Constructor.
+	 * @param max -- upper end of the tabulated range; values larger than
+	 *   {@value #MAX_RANGE} are truncated
+	 */
+	public FastExp(double max)
+	{
+		if(!(max > 0.0)) {
+			throw new IllegalArgumentException("Range of exp table must be positive: " + max);
+		}
+		int n = (int) Math.ceil(Math.min(max, MAX_RANGE) * STEPS);
+		this.table = new double[n + 2];
+		for(int i=0; i<this.table.length; i++) {
+			this.table[i] = Math.exp(- (double) i / STEPS);
+		}
+		this.max = (double) n / STEPS;
+	}
+
+
+	/**
+	 * Approximation of <code>exp(-x)</code>.
+	 * @param x
+	 * @return
+	 */
+	public double expNeg(double x)
+	{
+		if(x >= 0.0 && x < this.max) {
+			double t = x * STEPS;
+			int i = (int) t;
+			double y0 = this.table[i];
+			return y0 + (t - i) * (this.table[i+1] - y0);
+		}
+		return Math.exp(-x);
+	}
+
+}
@@ -143,13 +143,32 @@ public class MyMathHelper {
 	 * @return
 	 */
 	public static int getRandomIntForFunction(double[] funValues)
+	{
+		return getRandomIntForFunction(funValues, RAND.nextDouble());
+	}
+
+
+	/**
+	 * Same as {@link #getRandomIntForFunction(double[])} but drawing from the
+	 * given random stream.
+	 * @param funValues
+	 * @param rand
+	 * @return
+	 */
+	public static int getRandomIntForFunction(double[] funValues, RandomStream rand)
+	{
+		return getRandomIntForFunction(funValues, rand.nextDouble());
+	}
+
+
+	private static int getRandomIntForFunction(double[] funValues, double r)
 	{
 		double randomMultiplier = 0;
 		for (int i = 0; i < funValues.length; i++) {
 			randomMultiplier += funValues[i];
 		}
 		//double randomDouble = RND.nextDouble() * randomMultiplier;
-		double randomDouble = RAND.nextDouble() * randomMultiplier;
+		double randomDouble = r * randomMultiplier;
 
 		int yourFunctionRandomNumber = 0;
 		randomDouble = randomDouble - funValues[yourFunctionRandomNumber];
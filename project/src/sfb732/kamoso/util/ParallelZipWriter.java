@@ -0,0 +1,369 @@
+package sfb732.kamoso.util;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+
+/**
+ * Writer for standard ZIP files whose entries are serialized and compressed
+ * in parallel. The contents of each entry are written into an independent
+ * buffer and deflated by a task of the given executor; the finished entries
+ * are appended to the file in the order they were added. At most
+ * {@link #MAX_PENDING} entries are held in memory.
+ * <p>
+ * Entries are written with known sizes (no data descriptors); ZIP64 records
+ * are added only if the file has more than 65535 entries or exceeds 4 GiB.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+public class ParallelZipWriter implements Closeable {
+
+	/** compression level: entries are stored without compression */
+	public static final int STORE = -2;
+
+	/** maximum number of entries which are compressed but not yet written */
+	public static final int MAX_PENDING = 256;
+
+	private static final Charset NAMES = Charset.forName("UTF-8");
+
+	private static final int METHOD_STORED   = 0;
+	private static final int METHOD_DEFLATED = 8;
+
+	private static final int SIG_LOCAL       = 0x04034b50;
+	private static final int SIG_CENTRAL     = 0x02014b50;
+	private static final int SIG_END         = 0x06054b50;
+	private static final int SIG_ZIP64_END   = 0x06064b50;
+	private static final int SIG_ZIP64_LOC   = 0x07064b50;
+
+	private static final int VERSION_DEFAULT = 20;
+	private static final int VERSION_ZIP64   = 45;
+	private static final int FLAG_UTF8       = 0x0800;
+
+	private static final long MAX_32 = 0xFFFFFFFFL;
+	private static final int  MAX_16 = 0xFFFF;
+
+
+	/**
+	 * Contents of a single entry.
+	 */
+	public interface Content {
+		void writeTo(OutputStream out) throws IOException;
+	}
+
+
+	private final int level;
+	private final ExecutorService executor;// null: compress on the calling thread
+	private final OutputStream out;
+	private final int dosTime;
+
+	private final ArrayDeque<Future<Entry>> pending = new ArrayDeque<Future<Entry>>();
+	private final ArrayList<Entry> written = new ArrayList<Entry>();
+
+	/** number of bytes written to the file */
+	private long position = 0L;
+
+	private final byte[] scratch = new byte[64];
+
+
+	/**
+	 * Constructor.
+	 * @param file -- the output file
+	 * @param level -- {@link #STORE}, {@link Deflater#DEFAULT_COMPRESSION} or 0-9
+	 * @param executor -- executor for compressing the entries, or null to
+	 *   compress on the calling thread
+	 * @throws IOException
+	 */
+	public ParallelZipWriter(File file, int level, ExecutorService executor) throws IOException
+	{
+		if(level != STORE && (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)) {
+			throw new IllegalArgumentException("Illegal compression level: " + level);
+		}
+		this.level    = level;
+		this.executor = executor;
+		this.out      = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		this.dosTime  = dosTime(Calendar.getInstance());
+	}
+
+
+	/**
+	 * Add an entry. The contents are written and compressed in the
+	 * background; this method blocks only if too many entries are pending.
+	 * @param name -- entry name
+	 * @param content -- called exactly once, possibly by another thread
+	 * @throws IOException
+	 */
+	public void putEntry(final String name, final Content content) throws IOException
+	{
+		if(null==this.executor) {
+			this.write(compress(name, content, this.level));
+			return;
+		}
+		while(this.pending.size() >= MAX_PENDING) {
+			this.write(get(this.pending.poll()));
+		}
+		this.pending.add(this.executor.submit(new Callable<Entry>() {
+			@Override
+			public Entry call() throws IOException {
+				return compress(name, content, level);
+			}
+		}));
+	}
+
+
+	/**
+	 * Write all pending entries and the central directory, and close the file.
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		try {
+			while(! this.pending.isEmpty()) {
+				this.write(get(this.pending.poll()));
+			}
+			this.writeCentralDirectory();
+			this.out.flush();
+		} finally {
+			for(Future<Entry> f : this.pending) {
+				f.cancel(true);
+			}
+			this.pending.clear();
+			this.out.close();
+		}
+	}
+
+
+	// ===================================================================
+	//                                                         COMPRESSION
+	// ===================================================================
+
+	/**
+	 * A compressed entry.
+	 */
+	private static final class Entry {
+		byte[] name;
+		int method;
+		int crc;
+		long size;// uncompressed
+		byte[] data;// compressed
+		int dataLength;
+		long offset;// of the local header
+	}
+
+
+	/** exposes the internal buffer, i.e. no copy is needed */
+	private static final class Buffer extends ByteArrayOutputStream {
+		Buffer() {
+			super(1 << 14);
+		}
+		byte[] array() {
+			return this.buf;
+		}
+	}
+
+
+	private static Entry compress(String name, Content content, int level) throws IOException
+	{
+		Buffer raw = new Buffer();
+		content.writeTo(raw);
+		int n = raw.size();
+
+		CRC32 crc = new CRC32();
+		crc.update(raw.array(), 0, n);
+
+		Entry e = new Entry();
+		e.name = name.getBytes(NAMES);
+		e.crc  = (int) crc.getValue();
+		e.size = n;
+
+		if(level == STORE) {
+			e.method     = METHOD_STORED;
+			e.data       = raw.array();
+			e.dataLength = n;
+		} else {
+			Deflater deflater = new Deflater(level, true);
+			try {
+				deflater.setInput(raw.array(), 0, n);
+				deflater.finish();
+				byte[] buf = new byte[Math.max(64, n / 2)];
+				int len = 0;
+				while(! deflater.finished()) {
+					if(len == buf.length) {
+						buf = Arrays.copyOf(buf, buf.length + (buf.length >> 1));
+					}
+					len += deflater.deflate(buf, len, buf.length - len);
+				}
+				e.method     = METHOD_DEFLATED;
+				e.data       = buf;
+				e.dataLength = len;
+			} finally {
+				deflater.end();
+			}
+		}
+		return e;
+	}
+
+
+	private static Entry get(Future<Entry> f) throws IOException
+	{
+		try {
+			return f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing ZIP entries", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+
+	// ===================================================================
+	//                                                              FORMAT
+	// ===================================================================
+
+	private void write(Entry e) throws IOException
+	{
+		e.offset = this.position;
+
+		this.putInt(SIG_LOCAL);
+		this.putShort(VERSION_DEFAULT);
+		this.putShort(FLAG_UTF8);
+		this.putShort(e.method);
+		this.putInt(this.dosTime);
+		this.putInt(e.crc);
+		this.putInt(e.dataLength);
+		this.putInt((int) e.size);
+		this.putShort(e.name.length);
+		this.putShort(0);
+		this.putBytes(e.name, e.name.length);
+		this.putBytes(e.data, e.dataLength);
+
+		// keep only what the central directory needs
+		e.data = null;
+		this.written.add(e);
+	}
+
+
+	private void writeCentralDirectory() throws IOException
+	{
+		long cdStart = this.position;
+		for(Entry e : this.written) {
+			boolean zip64 = e.offset >= MAX_32;
+			this.putInt(SIG_CENTRAL);
+			this.putShort(VERSION_ZIP64);
+			this.putShort(zip64 ? VERSION_ZIP64 : VERSION_DEFAULT);
+			this.putShort(FLAG_UTF8);
+			this.putShort(e.method);
+			this.putInt(this.dosTime);
+			this.putInt(e.crc);
+			this.putInt(e.dataLength);
+			this.putInt((int) e.size);
+			this.putShort(e.name.length);
+			this.putShort(zip64 ? 12 : 0);// extra field
+			this.putShort(0);// comment
+			this.putShort(0);// disk
+			this.putShort(0);// internal attributes
+			this.putInt(0);// external attributes
+			this.putInt(zip64 ? (int) MAX_32 : (int) e.offset);
+			this.putBytes(e.name, e.name.length);
+			if(zip64) {
+				this.putShort(0x0001);
+				this.putShort(8);
+				this.putLong(e.offset);
+			}
+		}
+		long cdSize = this.position - cdStart;
+		long entries = this.written.size();
+
+		if(entries >= MAX_16 || cdStart >= MAX_32 || cdSize >= MAX_32) {
+			long zip64End = this.position;
+			this.putInt(SIG_ZIP64_END);
+			this.putLong(44L);
+			this.putShort(VERSION_ZIP64);
+			this.putShort(VERSION_ZIP64);
+			this.putInt(0);
+			this.putInt(0);
+			this.putLong(entries);
+			this.putLong(entries);
+			this.putLong(cdSize);
+			this.putLong(cdStart);
+
+			this.putInt(SIG_ZIP64_LOC);
+			this.putInt(0);
+			this.putLong(zip64End);
+			this.putInt(1);
+		}
+
+		this.putInt(SIG_END);
+		this.putShort(0);
+		this.putShort(0);
+		this.putShort((int) Math.min(entries, MAX_16));
+		this.putShort((int) Math.min(entries, MAX_16));
+		this.putInt((int) Math.min(cdSize, MAX_32));
+		this.putInt((int) Math.min(cdStart, MAX_32));
+		this.putShort(0);
+	}
+
+
+	/**
+	 * @param c
+	 * @return date and time in MS-DOS format (date in the upper 16 bits)
+	 */
+	private static int dosTime(Calendar c)
+	{
+		int year = Math.max(c.get(Calendar.YEAR), 1980);
+		return ((year - 1980) << 25) | ((c.get(Calendar.MONTH) + 1) << 21) | (c.get(Calendar.DAY_OF_MONTH) << 16)
+				| (c.get(Calendar.HOUR_OF_DAY) << 11) | (c.get(Calendar.MINUTE) << 5) | (c.get(Calendar.SECOND) >> 1);
+	}
+
+
+	// little-endian output:
+
+	private void putShort(int v) throws IOException {
+		this.scratch[0] = (byte) v;
+		this.scratch[1] = (byte) (v >>> 8);
+		this.putBytes(this.scratch, 2);
+	}
+
+	private void putInt(int v) throws IOException {
+		this.scratch[0] = (byte) v;
+		this.scratch[1] = (byte) (v >>> 8);
+		this.scratch[2] = (byte) (v >>> 16);
+		this.scratch[3] = (byte) (v >>> 24);
+		this.putBytes(this.scratch, 4);
+	}
+
+	private void putLong(long v) throws IOException {
+		this.putInt((int) v);
+		this.putInt((int) (v >>> 32));
+	}
+
+	private void putBytes(byte[] b, int len) throws IOException {
+		this.out.write(b, 0, len);
+		this.position += len;
+	}
+
+}
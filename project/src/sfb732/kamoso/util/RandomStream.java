@@ -0,0 +1,168 @@
+package sfb732.kamoso.util;
+
+
+/**
+ * A small, fast pseudo-random number generator (xoshiro256**).
+ * <p>
+ * Instances are <i>not</i> thread-safe. The intended use is one stream per
+ * unit of work (e.g. per listener and epoch) which is derived from the global
+ * random seed by {@link #RandomStream(long, long, long)}. Streams derived
+ * from different keys are statistically independent, and the numbers drawn
+ * from a stream do not depend on which thread does the work or in which order
+ * the work is scheduled.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+public final class RandomStream {
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+	private long s0;
+	private long s1;
+	private long s2;
+	private long s3;
+
+	private double nextGaussian;
+	private boolean haveNextGaussian = false;
+
+
+	/**
+	 * Stream initialized from a single seed.
+	 * @param seed
+	 */
+	public RandomStream(long seed)
+	{
+		// expand the seed with SplitMix64 (the state must not be all zero)
+		long x = seed;
+		this.s0 = mix64(x += GOLDEN_GAMMA);
+		this.s1 = mix64(x += GOLDEN_GAMMA);
+		this.s2 = mix64(x += GOLDEN_GAMMA);
+		this.s3 = mix64(x += GOLDEN_GAMMA);
+	}
+
+
+	/**
+	 * Stream derived from a global seed and two keys, e.g. the epoch and the
+	 * ID of an agent.
+	 * @param seed
+	 * @param key1
+	 * @param key2
+	 */
+	public RandomStream(long seed, long key1, long key2)
+	{
+		this(mix64(mix64(seed + GOLDEN_GAMMA * key1) ^ key2));
+	}
+
+
+	/**
+	 * SplitMix64 finalizer (a bijective 64 bit hash function).
+	 * @param z
+	 * @return
+	 */
+	private static long mix64(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+
+	// ===================================================================
+
+	/**
+	 * @return the next pseudo-random, uniformly distributed long value
+	 */
+	public long nextLong()
+	{
+		final long result = Long.rotateLeft(this.s1 * 5, 7) * 9;
+		final long t = this.s1 << 17;
+		this.s2 ^= this.s0;
+		this.s3 ^= this.s1;
+		this.s1 ^= this.s2;
+		this.s0 ^= this.s3;
+		this.s2 ^= t;
+		this.s3 = Long.rotateLeft(this.s3, 45);
+		return result;
+	}
+
+
+	/**
+	 * @return the next pseudo-random, uniformly distributed integer
+	 */
+	public int nextInt()
+	{
+		return (int) (this.nextLong() >>> 32);
+	}
+
+
+	/**
+	 * Pseudo-random integer drawn from a uniform distribution in the range
+	 * <code>[0 n)</code>
+	 * @param n -- upper bound (exclusive), must be positive
+	 * @return a random integer between 0 (inclusive) and n (exclusive)
+	 */
+	public int nextInt(int n)
+	{
+		if(n <= 0) {
+			throw new IllegalArgumentException("bound must be positive");
+		}
+		// rejection sampling on 31 bits to avoid modulo bias
+		int r = (int) (this.nextLong() >>> 33);
+		int m = n - 1;
+		if((n & m) == 0) {
+			return (int) ((n * (long) r) >> 31);
+		}
+		for(int u = r; u - (r = u % n) + m < 0; u = (int) (this.nextLong() >>> 33)) {
+			// reject
+		}
+		return r;
+	}
+
+
+	/**
+	 * Pseudo-random integer between specified minimum and maximum values
+	 * @param min -- inclusive
+	 * @param max -- inclusive
+	 * @return a random integer
+	 */
+	public int nextInt(int min, int max)
+	{
+		return this.nextInt((max - min) + 1) + min;
+	}
+
+
+	/**
+	 * @return a pseudo-random double in the range <code>[0.0 1.0)</code>
+	 */
+	public double nextDouble()
+	{
+		return (this.nextLong() >>> 11) * DOUBLE_UNIT;
+	}
+
+
+	/**
+	 * Pseudo-random number drawn from a normal distribution with mean 0.0 and
+	 * standard deviation 1.0 (polar method).
+	 * @return a random double
+	 */
+	public double nextGaussian()
+	{
+		if(this.haveNextGaussian) {
+			this.haveNextGaussian = false;
+			return this.nextGaussian;
+		}
+		double v1, v2, s;
+		do {
+			v1 = 2.0 * this.nextDouble() - 1.0;
+			v2 = 2.0 * this.nextDouble() - 1.0;
+			s = v1 * v1 + v2 * v2;
+		} while(s >= 1.0 || s == 0.0);
+		double multiplier = StrictMath.sqrt(-2.0 * StrictMath.log(s) / s);
+		this.nextGaussian = v2 * multiplier;
+		this.haveNextGaussian = true;
+		return v1 * multiplier;
+	}
+
+}
@@ -0,0 +1,135 @@
+package sfb732.kamoso.util;
+
+
+/**
+ * Binary indexed tree (Fenwick tree) of non-negative weights, for weighted
+ * sampling from a distribution which changes over time.
+ * <p>
+ * Updating a weight, computing a prefix sum and finding the entry which
+ * covers a given cumulative weight take O(log n) time each, independently
+ * of the distribution of the weights. Only the tree itself is stored
+ * (n doubles); single weights are derived from prefix sums.
+ * <p>
+ * Instances are not synchronized: concurrent reads are safe, but updates
+ * must not overlap with other operations.
+ *
+ * @author Daniel Duran, Institut für Maschinelle Sprachverarbeitung, Universität Stuttgart, SFB 732 (A2)
+ */
+public final class SumTree {
+
+	private final double[] tree;// 1-based
+	private final int top;// highest power of two <= n
+
+
+	/**
+	 * Constructor for a tree with all weights set to zero.
+	 * @param n -- number of entries
+	 */
+	public SumTree(int n)
+	{
+		if(n < 0) {
+			throw new IllegalArgumentException("Size must not be negative: " + n);
+		}
+		this.tree = new double[n + 1];
+		this.top  = Integer.highestOneBit(n);
+	}
+
+
+	/**
+	 * Constructor; builds the tree in O(n) time.
+	 * @param weights -- initial weights
+	 */
+	public SumTree(double[] weights)
+	{
+		this(weights.length);
+		int n = weights.length;
+		for(int i=1; i<=n; i++) {
+			this.tree[i] += weights[i-1];
+			int parent = i + (i & -i);
+			if(parent <= n) {
+				this.tree[parent] += this.tree[i];
+			}
+		}
+	}
+
+
+	/**
+	 * Add delta to the weight of entry i.
+	 * @param i
+	 * @param delta
+	 */
+	public void add(int i, double delta)
+	{
+		for(int k=i+1; k<this.tree.length; k += k & -k) {
+			this.tree[k] += delta;
+		}
+	}
+
+
+	/**
+	 * Get the sum of the weights of the entries <code>[0 end)</code>.
+	 * @param end
+	 * @return
+	 */
+	public double sum(int end)
+	{
+		double s = 0.0;
+		for(int k=end; k>0; k -= k & -k) {
+			s += this.tree[k];
+		}
+		return s;
+	}
+
+
+	/**
+	 * Get the sum of the weights of the entries <code>[from to)</code>.
+	 * @param from
+	 * @param to
+	 * @return
+	 */
+	public double sum(int from, int to)
+	{
+		return this.sum(to) - this.sum(from);
+	}
+
+
+	/**
+	 * @return sum of all weights
+	 */
+	public double total() {
+		return this.sum(this.tree.length - 1);
+	}
+
+
+	/**
+	 * Find the entry which covers the cumulative weight u, i.e. the smallest
+	 * i with <code>sum(i+1) &gt; u</code>. For u in <code>[0 total())</code>,
+	 * entry i is found with probability proportional to its weight if u is
+	 * uniformly distributed. Rounding errors may yield an entry with zero
+	 * weight next to the target entry; callers should check the result.
+	 * @param u -- cumulative weight
+	 * @return an index in the range <code>[0 size())</code>
+	 */
+	public int find(double u)
+	{
+		int pos = 0;
+		for(int step=this.top; step>0; step >>= 1) {
+			int next = pos + step;
+			if(next < this.tree.length && this.tree[next] <= u) {
+				pos = next;
+				u -= this.tree[next];
+			}
+		}
+		// pos entries have a cumulative weight <= u
+		return Math.min(pos, this.tree.length - 2);
+	}
+
+
+	/**
+	 * @return number of entries
+	 */
+	public int size() {
+		return this.tree.length - 1;
+	}
+
+}